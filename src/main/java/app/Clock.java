@@ -0,0 +1,36 @@
+package app;
+
+/**
+ * Часы приложения.
+ *
+ * В live — это System.currentTimeMillis(). В режиме воспроизведения журнала время
+ * двигает {@link ReplayRunner}: оно равно времени приёма последнего проигранного кадра,
+ * так что кулдауны, прогрев, окна разворота и снимки статистики идут по записанному времени.
+ */
+public final class Clock {
+
+    private static volatile boolean replay = false;
+    private static volatile long replayNowMs = 0L;
+
+    private Clock() {
+    }
+
+    public static long now() {
+        return replay ? replayNowMs : System.currentTimeMillis();
+    }
+
+    public static boolean isReplay() {
+        return replay;
+    }
+
+    /** Переключить часы на время журнала, начиная с startMs. */
+    public static void useReplay(long startMs) {
+        replayNowMs = startMs;
+        replay = true;
+    }
+
+    /** Сдвинуть время воспроизведения вперёд (назад не ходит). */
+    public static void advanceTo(long ms) {
+        if (ms > replayNowMs) replayNowMs = ms;
+    }
+}
@@ -1,20 +1,37 @@
 package app;
 
+import core.IngestPipeline;
 import core.MetricsProviderInit;
 import core.PumpLiquidityAnalyzer;
+import journal.JournalReplay;
+import journal.MarketJournal;
 import market.MarketRegimeDetector;
-import net.BybitRest;
+import net.BybitHttp;
 import net.BybitWsClient;
+import net.HistoryBootstrap;
+import net.InstrumentCatalog;
 import net.OiRestUpdater;
+import net.SubscriptionTiers;
+import net.TradeBars;
+import net.TradeDedup;
 import output.ConsoleSignalPrinter;
 import output.SignalPrinter;
+import sim.MarketSimulator;
 import signal.TradeSignal;
+import state.MarketColumns;
+import state.StateCheckpoint;
 import state.SymbolState;
 import stats.SignalStatsService;
 import store.MarketDataStore;
+import store.SymbolRegistry;
+import store.TickerStore;
 
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -49,24 +66,169 @@ public class Main {
             System.err.println("⚠ Не удалось загрузить settings.properties: " + e.getMessage());
         }
 
+        // Режим воспроизведения журнала: часы переключаем до создания анализатора
+        if (args.length > 0 && "replay".equalsIgnoreCase(args[0])) {
+            Settings.REPLAY_ENABLED = true;
+        }
+        if (args.length > 0 && "sim".equalsIgnoreCase(args[0])) {
+            Settings.SIM_ENABLED = true;
+        }
+        // Бары из сделок: kline-поток не нужен, а уровням активности без него нечего включать
+        final boolean barsFromTrades = "trades".equalsIgnoreCase(Settings.BARS_SOURCE);
+        if (barsFromTrades && Settings.SUBS_TIERS_ENABLED) {
+            System.err.println("⚠ subs.tiers.enabled игнорируется при bars.source=trades");
+            Settings.SUBS_TIERS_ENABLED = false;
+        }
+        JournalReplay replay = null;
+        if (Settings.REPLAY_ENABLED) {
+            replay = JournalReplay.open(Paths.get(Settings.REPLAY_DIR), Settings.REPLAY_FROM_MS, Settings.REPLAY_TO_MS);
+            if (replay.firstWallMs() == 0L) {
+                System.err.println("⚠ Журнал пуст: " + Paths.get(Settings.REPLAY_DIR).toAbsolutePath());
+                return;
+            }
+            Clock.useReplay(replay.firstWallMs());
+        }
+
+        // Колонки по ID символа: до чекпоинта и каталога, чтобы ID из файла колонок совпали с прошлым запуском
+        if (Settings.COLUMNS_ENABLED) {
+            boolean persist = !Settings.COLUMNS_FILE.isBlank() && replay == null && !Settings.SIM_ENABLED;
+            MarketColumns.open(Settings.COLUMNS_CAPACITY, Settings.COLUMNS_SERIES,
+                    persist ? Paths.get(Settings.COLUMNS_FILE) : null);
+        }
+
         Map<String, SymbolState> symbols = new ConcurrentHashMap<>();
+
+        // Чекпоинт состояния символов: рестарт без прогрева (не для replay/sim — там свой рынок)
+        final boolean useCheckpoint = Settings.CHECKPOINT_ENABLED && replay == null && !Settings.SIM_ENABLED;
+        final Path checkpointFile = Paths.get(Settings.CHECKPOINT_FILE);
+        long checkpointAt = useCheckpoint
+                ? StateCheckpoint.restore(checkpointFile, Settings.CHECKPOINT_MAX_AGE_MIN * 60_000L,
+                        System.currentTimeMillis(), symbols)
+                : 0L;
+
         PumpLiquidityAnalyzer analyzer = new PumpLiquidityAnalyzer(symbols);
         final MarketRegimeDetector regimeDetector = new MarketRegimeDetector(analyzer);
         MetricsProviderInit.init(analyzer);
         SignalStatsService.setMetricsProvider(new stats.AnalyzerMetricsProvider(analyzer));
         SignalPrinter printer = new ConsoleSignalPrinter();
 
+        if (replay != null) {
+            if (barsFromTrades) {
+                TradeBars.start(analyzer, false); // replay без конвейера: водяной знак двигает ReplayRunner
+            }
+            ReplayRunner.run(replay, analyzer, printer);
+            SignalStatsService.getInstance().finishAll();
+            SignalStatsService.getInstance().shutdown();
+            SignalStatsService.getInstance().exportAllToCsv(Paths.get("signal_coin/all_signals.csv"));
+            System.out.println("🚪 Завершение программы...");
+            System.exit(0);
+        }
+
+        // Конвейер: WS-потоки только декодируют, анализатор обновляют воркеры партиций
+        final IngestPipeline pipeline = Settings.PIPELINE_ENABLED
+                ? new IngestPipeline(analyzer, Settings.PIPELINE_PARTITIONS, Settings.PIPELINE_RING_SIZE)
+                : null;
+        if (pipeline != null) {
+            analyzer.ownedBy(pipeline); // состояние символа пишет только воркер его партиции
+            pipeline.start();
+            BybitWsClient.usePipeline(pipeline);
+        }
+        if (barsFromTrades) {
+            // бары — тем же путём, что и сделки: через конвейер, водяной знак — своим продюсером
+            TradeBars.start(pipeline != null ? pipeline.newProducer("trade-bars") : analyzer, true);
+        }
+
+        // Журнал сырых кадров (для разбора инцидентов и последующего воспроизведения)
+        MarketJournal journal = null;
+        if (Settings.JOURNAL_ENABLED) {
+            try {
+                journal = new MarketJournal(Paths.get(Settings.JOURNAL_DIR),
+                        Settings.JOURNAL_SEGMENT_MB * 1024L * 1024L);
+                BybitWsClient.useJournal(journal);
+                System.out.println("▶ Журнал WS-кадров: " + journal.dir().toAbsolutePath());
+            } catch (Exception e) {
+                System.err.println("⚠ Журнал не открыт: " + e.getMessage());
+            }
+        }
+        final MarketJournal marketJournal = journal;
+
+        // Симулятор: локальный WS-сервер с синтетическим рынком вместо Bybit
+        final MarketSimulator simulator = Settings.SIM_ENABLED
+                ? new MarketSimulator(Settings.SIM_PORT, Settings.SIM_SYMBOLS, Settings.SIM_TRADES_PER_SEC,
+                        Settings.SIM_PUMP_EVERY_SEC, Settings.SIM_PUMP_DURATION_SEC)
+                : null;
+
         System.out.println("▶ Запуск WebSocket потоков...");
 
-        // preload symbols
-        BybitRest.preloadSymbols();
-        OiRestUpdater.start();
+        if (simulator != null) {
+            simulator.start(); // символы симулятора регистрируются в MarketDataStore
+            Settings.WS_URL = simulator.url();
+            Settings.BACKFILL_ENABLED = false; // синтетических символов на бирже нет
+            printer = simulator.wrap(printer);
+        } else {
+            // символы: из кэша каталога сразу, с биржи — если кэша нет
+            InstrumentCatalog.load();
+            OiRestUpdater.start();
+
+            // тёплый старт: символы из чекпоинта уже прогреты, пропущенные с него бары догрузит
+            // KlineBackfill; остальным — история баров и OI по REST до подключения потоков
+            Map<String, Long> lastStarts = new HashMap<>();
+            if (checkpointAt > 0) {
+                // бар, закрывшийся за секунды до записи, мог ещё не дойти — считаем его непринятым
+                long lastStart = ((checkpointAt - 5_000L) / 60_000L - 1) * 60_000L;
+                for (String sym : symbols.keySet()) lastStarts.put(sym, lastStart);
+            }
+            // при уровнях активности историю грузит SubscriptionTiers — по мере прихода символов в kline
+            if (Settings.BOOTSTRAP_ENABLED && !Settings.SUBS_TIERS_ENABLED) {
+                List<String> cold = new ArrayList<>(MarketDataStore.allSymbols());
+                cold.removeAll(symbols.keySet());
+                HistoryBootstrap bootstrap = new HistoryBootstrap(analyzer);
+                lastStarts.putAll(bootstrap.run(cold, Settings.BOOTSTRAP_CONCURRENCY, Settings.BOOTSTRAP_TIMEOUT_SEC));
+            }
+            BybitWsClient.seedKlineStarts(lastStarts);
+        }
+        TickerStore.start(Settings.TICKER_DRAIN_MS);
         BybitWsClient.startTickers();
-        Thread.sleep(1000);
-
-        BybitWsClient.startKlines(analyzer);
+        if (!barsFromTrades) {
+            BybitWsClient.startKlines(analyzer);
+        }
         BybitWsClient.startTrades(analyzer);
-//        BybitWsClient.startLiquidations(analyzer);
+        if (Settings.LIQ_ENABLED) {
+            BybitWsClient.startLiquidations(analyzer);
+        }
+
+        if (Settings.SUBS_TIERS_ENABLED) {
+            SubscriptionTiers.start(analyzer);
+        }
+        if (simulator == null) {
+            // после старта пулов: новые листинги досписываются в уже открытые шарды
+            InstrumentCatalog.startReconcile(Settings.CATALOG_REFRESH_MIN);
+        }
+        if (useCheckpoint) {
+            StateCheckpoint.startPeriodic(checkpointFile, analyzer.stateView(), Settings.CHECKPOINT_INTERVAL_SEC);
+        }
+
+        if (Settings.INTRABAR_EVAL_ENABLED) {
+            final SignalPrinter intrabarPrinter = printer;
+            Thread t = new Thread(() -> {
+                while (Settings.RUNNING) {
+                    try {
+                        Thread.sleep(Settings.INTRABAR_EVAL_MS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (stopRequested) continue;
+                    try {
+                        analyzeIntrabar(analyzer, intrabarPrinter);
+                    } catch (Exception e) {
+                        System.err.println("[Intrabar] analyze error: " + e.getMessage());
+                    }
+                }
+            }, "intrabar-eval");
+            t.setDaemon(true);
+            t.start();
+            System.out.println("▶ Intrabar analyze: every " + Settings.INTRABAR_EVAL_MS + " ms");
+        }
 
         System.out.println("Монет получено: " + MarketDataStore.allSymbols().size());
         System.out.println("✅ WebSocket подключены");
@@ -86,6 +248,16 @@ public class Main {
                             System.out.println("⏸ Останавливаем генерацию новых сигналов...");
                             app.Settings.RUNNING = false;
                             stopRequested = true;
+                            if (useCheckpoint) {
+                                try {
+                                    int n = StateCheckpoint.write(checkpointFile, analyzer.stateView(),
+                                            System.currentTimeMillis());
+                                    System.out.println("💾 Состояние сохранено: " + n + " символов → " + checkpointFile);
+                                } catch (Exception e) {
+                                    System.err.println("[Checkpoint] write error: " + e.getMessage());
+                                }
+                            }
+                            MarketColumns.force();
                             return;
 
                         case "help":
@@ -93,6 +265,7 @@ public class Main {
                                     📌 Доступные команды:
                                        help               — показать это меню
                                        status             — текущее состояние фильтров/режимов
+                                       top                — топ символов по объёму бара к среднему (columns.enabled)
                                     
                                        oi:on              — включить OIAccelerationFilter
                                        oi:off             — выключить OIAccelerationFilter
@@ -111,6 +284,9 @@ public class Main {
                                     
                                        train:on           — мягкий режим СРАЗУ для всех фильтров
                                        train:off          — строгий режим СРАЗУ для всех фильтров
+                                    
+                                       decoder:stream     — потоковый декодер WS-кадров (JsonParser)
+                                       decoder:tree       — старый декодер через readTree
                                     """);
                             break;
 
@@ -120,6 +296,35 @@ public class Main {
                             System.out.println("  AGGR:   enabled=" + app.Settings.AGGR_FILTER_ENABLED + ", train=" + app.Settings.AGGR_TRAIN);
                             System.out.println("  BURST:  enabled=" + app.Settings.BURST_FILTER_ENABLED + ", train=" + app.Settings.BURST_TRAIN);
                             System.out.println(regimeDetector.debugSummary());
+                            System.out.println(BybitWsClient.decoderSummary());
+                            System.out.println(BybitWsClient.poolSummary());
+                            System.out.println(BybitWsClient.backfillSummary());
+                            System.out.println(TradeBars.summary());
+                            System.out.println(BybitWsClient.liquidationSummary());
+                            System.out.println(TickerStore.summary());
+                            System.out.println(MarketColumns.summary());
+                            System.out.println(TradeDedup.summary());
+                            System.out.println(InstrumentCatalog.summary());
+                            System.out.println(SubscriptionTiers.summary());
+                            System.out.println(BybitHttp.summary());
+                            if (pipeline != null) System.out.println(pipeline.summary());
+                            if (marketJournal != null) System.out.println(marketJournal.summary());
+                            if (simulator != null) System.out.println(simulator.summary());
+                            break;
+
+                        case "top":
+                            printTop();
+                            break;
+
+                        // ===== Декодер WebSocket =====
+                        case "decoder:stream":
+                            app.Settings.WS_STREAMING_DECODER = true;
+                            System.out.println("✅ [WS] потоковый декодер");
+                            break;
+
+                        case "decoder:tree":
+                            app.Settings.WS_STREAMING_DECODER = false;
+                            System.out.println("🌳 [WS] декодер через readTree");
                             break;
 
                         // ===== OIAccelerationFilter =====
@@ -220,14 +425,7 @@ public class Main {
 
             if (!stopRequested) {
                 // продолжаем нормальную логику
-                for (String sym : MarketDataStore.allSymbols()) {
-                    analyzer.analyze(sym).ifPresent(sig -> {
-                        if (sig.stage() == signal.Stage.ENTER) {
-                            printer.print(sig);
-                            output.FileSignalLogger.log(sig);
-                        }
-                    });
-                }
+                analyzeAll(analyzer, printer);
             } else {
                 // STOP получен — только ждём окончания статистики
                 if (SignalStatsService.getInstance().allCompleted()) {
@@ -244,9 +442,56 @@ public class Main {
         }
 
         BybitWsClient.shutdown();
+        if (simulator != null) simulator.stop();
+        if (pipeline != null) pipeline.stop();
+        if (marketJournal != null) marketJournal.close();
         SignalStatsService.getInstance().shutdown();
         SignalStatsService.getInstance().exportAllToCsv(Paths.get("signal_coin/all_signals.csv"));
         System.out.println("🚪 Завершение программы...");
         System.exit(0);
     }
+
+    /** Топ по всплеску объёма: последний бар к EWMA объёма — один проход по колонкам. */
+    private static void printTop() {
+        if (!MarketColumns.enabled()) {
+            System.out.println("ℹ Колонки выключены (columns.enabled=false)");
+            return;
+        }
+        int[] ids = new int[10];
+        int n = MarketColumns.topBy(MarketColumns.VOLUME_USD, MarketColumns.AVG_VOL_USD, ids);
+        System.out.println("📊 Топ по объёму бара / средний:");
+        for (int i = 0; i < n; i++) {
+            int id = ids[i];
+            double avg = MarketColumns.get(MarketColumns.AVG_VOL_USD, id);
+            double vol = MarketColumns.get(MarketColumns.VOLUME_USD, id);
+            double prev = MarketColumns.close(id, 1);
+            double move = prev > 0 ? (MarketColumns.close(id, 0) / prev - 1.0) * 100.0 : 0.0;
+            System.out.printf("  %2d. %-16s x%.1f  vol=%.0f  bar=%+.2f%%  OI=%.0f%n", i + 1,
+                    SymbolRegistry.symbol(id), avg > 0 ? vol / avg : 0.0, vol, move,
+                    MarketColumns.get(MarketColumns.OI, id));
+        }
+    }
+
+    /** Один проход анализа по всем символам (live — раз в минуту, replay — раз в минуту журнала). */
+    static void analyzeAll(PumpLiquidityAnalyzer analyzer, SignalPrinter printer) {
+        for (String sym : MarketDataStore.allSymbols()) {
+            analyzer.analyze(sym).ifPresent(sig -> emit(sig, printer));
+        }
+    }
+
+    /** Внутрибаровый проход: только символы, по которым пришёл частичный бар с прошлого прохода. */
+    static void analyzeIntrabar(PumpLiquidityAnalyzer analyzer, SignalPrinter printer) {
+        for (String sym : MarketDataStore.allSymbols()) {
+            if (!analyzer.takeIntrabarUpdate(sym)) continue;
+            analyzer.analyze(sym).ifPresent(sig -> emit(sig, printer));
+        }
+    }
+
+    // печатают и минутный, и внутрибаровый проход
+    private static synchronized void emit(TradeSignal sig, SignalPrinter printer) {
+        if (sig.stage() == signal.Stage.ENTER) {
+            printer.print(sig);
+            output.FileSignalLogger.log(sig);
+        }
+    }
 }
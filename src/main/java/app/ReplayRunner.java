@@ -0,0 +1,99 @@
+package app;
+
+import core.PumpLiquidityAnalyzer;
+import journal.FrameHandler;
+import journal.JournalReplay;
+import net.BybitWsClient;
+import net.TradeBars;
+import output.SignalPrinter;
+import stats.SignalStatsService;
+import store.TickerStore;
+
+/**
+ * Воспроизведение журнала сырых кадров через тот же путь, что и live:
+ * декодер → PumpLiquidityAnalyzer.onTrade/onKline → analyze() → SignalStatsService.
+ *
+ * Время ({@link Clock}) равно времени приёма текущего кадра. Анализ всех символов
+ * идёт раз в минуту журнального времени (как Thread.sleep(60_000) в live-цикле),
+ * снимки статистики — по секундам журнального времени. Кадры применяются к анализатору
+ * синхронно в этом же потоке (без конвейера), поэтому прогон детерминирован.
+ */
+final class ReplayRunner {
+
+    private static final long SWEEP_INTERVAL_MS = 60_000L;
+    private static final long STATS_TICK_MS = 1_000L;
+    private static final long PROGRESS_EVERY_MS = 3_600_000L; // прогресс раз в час журнала
+
+    private ReplayRunner() {
+    }
+
+    static void run(JournalReplay replay, PumpLiquidityAnalyzer analyzer, SignalPrinter printer) throws Exception {
+        FrameHandler handler = BybitWsClient.replayHandler(analyzer);
+        SignalStatsService stats = SignalStatsService.getInstance();
+
+        double speed = Settings.REPLAY_SPEED;
+        long startWall = replay.firstWallMs();
+        long nextSweep = startWall + SWEEP_INTERVAL_MS;
+        long nextTick = startWall + STATS_TICK_MS;
+        long nextIntrabar = startWall + Settings.INTRABAR_EVAL_MS;
+        long nextProgress = startWall + PROGRESS_EVERY_MS;
+        long realStart = System.nanoTime();
+        long frames = 0;
+        long errors = 0;
+
+        System.out.printf("▶ Replay: %d серий, speed=%s%n",
+                replay.seriesCount(), speed > 0 ? ("x" + speed) : "max");
+
+        while (Settings.RUNNING && replay.next()) {
+            long wall = replay.wallMs();
+
+            // всё, что в live случилось бы до этого кадра
+            while (nextTick <= wall || nextSweep <= wall) {
+                if (nextTick <= nextSweep) {
+                    Clock.advanceTo(nextTick);
+                    if (TradeBars.enabled()) {
+                        TickerStore.drain(); // OI/funding на закрытии бара — как успел бы дренер в live
+                        TradeBars.advanceWatermark(nextTick);
+                    }
+                    stats.tick(nextTick);
+                    if (Settings.INTRABAR_EVAL_ENABLED && nextTick >= nextIntrabar) {
+                        Main.analyzeIntrabar(analyzer, printer); // с точностью до секунды журнала
+                        nextIntrabar = nextTick + Settings.INTRABAR_EVAL_MS;
+                    }
+                    nextTick += STATS_TICK_MS;
+                } else {
+                    Clock.advanceTo(nextSweep);
+                    Main.analyzeAll(analyzer, printer);
+                    nextSweep += SWEEP_INTERVAL_MS;
+                }
+            }
+            Clock.advanceTo(wall);
+
+            if (speed > 0) {
+                long dueNanos = (long) ((wall - startWall) * 1_000_000.0 / speed);
+                long aheadMs = (dueNanos - (System.nanoTime() - realStart)) / 1_000_000L;
+                if (aheadMs > 0) Thread.sleep(aheadMs);
+            }
+
+            try {
+                handler.onFrame(replay.streamId(), replay.payload());
+            } catch (Exception e) {
+                errors++;
+            }
+            frames++;
+
+            if (wall >= nextProgress) {
+                System.out.printf("[Replay] %s | frames=%d signals=%d%n",
+                        new java.util.Date(wall), frames, stats.totalTracked());
+                nextProgress += PROGRESS_EVERY_MS;
+            }
+        }
+
+        stats.tick(Clock.now());
+
+        double realSec = (System.nanoTime() - realStart) / 1e9;
+        double spanSec = (Clock.now() - startWall) / 1000.0;
+        System.out.printf("✅ Replay завершён: frames=%d errors=%d, журнал %.0f с за %.1f с (x%.0f), сигналов=%d%n",
+                frames, errors, spanSec, realSec, realSec > 0 ? spanSec / realSec : 0.0, stats.totalTracked());
+    }
+}
@@ -64,6 +64,7 @@ public final class Settings {
 
     // История тиков агрессора
     public static int MAX_TRADE_WINDOW = 64;
+    public static final int AGGR_DOM_WINDOW = 30; // сколько последних тиков считать для доминанты (burst-фильтр)
 
     // Флаги включения/выключения фильтров
     public static volatile boolean OI_FILTER_ENABLED      = true;
@@ -188,6 +189,116 @@ public final class Settings {
 
     // ====== Market Regime Detection ======
 
+    // ===== WebSocket: декодирование кадров =====
+    // true  — потоковый JsonParser без дерева (BybitStreamDecoder)
+    // false — старый путь через mapper.readTree(...)
+    public static volatile boolean WS_STREAMING_DECODER = true;
+
+    // ===== WebSocket: адрес (Bybit или локальный симулятор) =====
+    public static String WS_URL = "wss://stream.bybit.com/v5/public/linear";
+
+    // ===== WebSocket: heartbeat =====
+    public static long WS_PING_INTERVAL_MS = 10_000L;  // {"op":"ping"} на каждый сокет; 0 — не пинговать
+    public static long WS_STALE_MS         = 15_000L;  // тишина дольше — принудительный реконнект; 0 — выкл
+
+    // ===== Общий HTTP-слой: токен-бакеты на IP и по эндпоинтам =====
+    public static double HTTP_IP_REQUESTS_PER_SEC = 100.0; // Bybit: 600 запросов / 5 с на IP
+    public static double HTTP_IP_BURST            = 100.0;
+    public static String HTTP_ENDPOINT_LIMITS     =
+            "/v5/market/kline:60,/v5/market/open-interest:40,/v5/market/tickers:10,/v5/market/instruments-info:10";
+
+    // ===== Каталог инструментов (instruments-info) =====
+    public static String CATALOG_CACHE_FILE  = "cache/instruments.json";
+    public static String CATALOG_STATUSES    = "Trading,PreLaunch"; // цепочки страниц грузятся параллельно
+    public static long   CATALOG_REFRESH_MIN = 60L;                 // 0 — сверка только при старте
+
+    // ===== Тёплый старт: история баров и OI по REST до подключения потоков =====
+    public static boolean BOOTSTRAP_ENABLED          = true;
+    public static int     BOOTSTRAP_CONCURRENCY      = 8;
+    public static long    BOOTSTRAP_TIMEOUT_SEC      = 180L;
+
+    // ===== Чекпоинт состояния символов =====
+    public static boolean CHECKPOINT_ENABLED      = true;
+    public static String  CHECKPOINT_FILE         = "cache/state.ckpt";
+    public static long    CHECKPOINT_INTERVAL_SEC = 300L;
+    public static long    CHECKPOINT_MAX_AGE_MIN  = 30L; // старее — не восстанавливаем (прогрев по REST)
+
+    // ===== Колоночное off-heap хранилище рыночных чисел (сканы по всему рынку) =====
+    public static boolean COLUMNS_ENABLED  = false;
+    public static String  COLUMNS_FILE     = "";   // пусто — только память; иначе отображение в файл
+    public static int     COLUMNS_CAPACITY = 4096; // строк (символов)
+    public static int     COLUMNS_SERIES   = 60;   // закрытий в ряду на символ
+
+    // ===== Тикеры: перенос последних значений в CoinInfo (конфлюэнция) =====
+    public static long TICKER_DRAIN_MS = 100L;
+    // publicTrade: отбрасывать повторы сделок по ID + T (реконнекты, перекрывающиеся шарды)
+    public static boolean TRADE_DEDUP_ENABLED = true;
+    // OI по REST — только для символов, чей OI (по биржевому времени) старше порога
+    public static long OI_STALE_MS        = 60_000L;
+    public static int  OI_REST_SINGLE_MAX = 10;     // до стольких устаревших — точечные запросы
+
+    // ===== Внутри бара: незакрытые kline (confirm=false) → слот текущего бара в SymbolState =====
+    public static boolean KLINE_PARTIAL_ENABLED = true;
+    // analyze() по свежим частичным барам чаще, чем раз в минуту (ряды истории — только закрытые бары)
+    public static boolean INTRABAR_EVAL_ENABLED = false;
+    public static long    INTRABAR_EVAL_MS      = 5_000L;
+    public static long    INTRABAR_MAX_AGE_MS   = 15_000L; // старше — слот в analyze не используется
+
+    // ===== Источник минутных баров: kline.1.* или локальная сборка из publicTrade =====
+    public static String BARS_SOURCE         = "kline"; // kline | trades
+    public static long   BARS_TRADE_SEC      = 60L;     // размер бара из сделок, с
+    public static long   BARS_CLOSE_GRACE_MS = 2_000L;  // бар закрывается, когда часы ушли за его конец на столько
+
+    // ===== Уровни активности: kline/trades подписываются только для тёплых/горячих символов =====
+    public static boolean SUBS_TIERS_ENABLED        = false;
+    public static long    SUBS_EVAL_SEC             = 10L;
+    public static double  SUBS_HOT_TURNOVER_RATIO   = 4.0;  // оборот за интервал / средний за сутки
+    public static double  SUBS_HOT_PRICE_MOVE_PCT   = 0.5;  // |Δцены| за интервал, %
+    public static double  SUBS_WARM_TURNOVER_FACTOR = 0.25; // оборот/мин за сутки ≥ MIN_FLOW_FLOOR × factor
+    public static long    SUBS_MIN_DWELL_SEC        = 300L; // не понижать раньше, чем через столько
+
+    // ===== WebSocket: шардирование потоков =====
+    // Число сокетов на поток; 0 — считать автоматически из WS_SYMBOLS_PER_SHARD
+    public static int WS_SHARDS_TRADES       = 0;
+    public static int WS_SHARDS_KLINES       = 0;
+    public static int WS_SHARDS_TICKERS      = 0;
+    public static int WS_SHARDS_LIQUIDATIONS = 0;
+    public static int WS_SYMBOLS_PER_SHARD   = 150;
+
+    // ===== Ликвидации (allLiquidation): скользящие окна 10 с / 1 мин / 5 мин на символ =====
+    public static boolean LIQ_ENABLED                = true;
+    public static long    LIQ_RECONNECT_DELAY_MS     = 5_000L;   // первая пауза после обрыва
+    public static long    LIQ_RECONNECT_DELAY_MAX_MS = 300_000L; // потолок; шард не отключается навсегда
+
+    // ===== Дозагрузка пропущенных минутных баров через REST (после реконнектов) =====
+    public static boolean BACKFILL_ENABLED          = true;
+    public static int     BACKFILL_CONCURRENCY      = 4;     // параллельных запросов
+
+    // ===== Конвейер WS → анализатор (кольцевые буферы по партициям символов) =====
+    public static boolean PIPELINE_ENABLED    = true;
+    public static int     PIPELINE_PARTITIONS = 2;       // воркеров анализа
+    public static int     PIPELINE_RING_SIZE  = 16_384;  // слотов на буфер (степень двойки)
+
+    // ===== Журнал сырых WS-кадров (mmap-сегменты, по серии на шард) =====
+    public static boolean JOURNAL_ENABLED    = false;
+    public static String  JOURNAL_DIR        = "journal";
+    public static int     JOURNAL_SEGMENT_MB = 128;       // размер одного сегмента
+
+    // ===== Воспроизведение журнала (вместо live WebSocket) =====
+    public static boolean REPLAY_ENABLED = false;    // или аргумент запуска "replay"
+    public static String  REPLAY_DIR     = "journal";
+    public static double  REPLAY_SPEED   = 0.0;      // 1 = реальное время, 100 = x100, 0 = максимально быстро
+    public static long    REPLAY_FROM_MS = 0L;       // 0 — с начала журнала
+    public static long    REPLAY_TO_MS   = 0L;       // 0 — до конца журнала
+
+    // ===== Симулятор рынка (локальный WS-сервер вместо Bybit, для нагрузочных тестов) =====
+    public static boolean SIM_ENABLED           = false;   // или аргумент запуска "sim"
+    public static int     SIM_PORT              = 18_080;  // 0 — любой свободный
+    public static int     SIM_SYMBOLS           = 300;
+    public static double  SIM_TRADES_PER_SEC    = 5.0;     // на символ
+    public static int     SIM_PUMP_EVERY_SEC    = 300;     // 0 — без пампов
+    public static int     SIM_PUMP_DURATION_SEC = 180;
+
     static void loadFrom(java.util.Properties p) {
         MIN_OI_HEAVY      = getDouble(p, "min.oi.heavy", MIN_OI_HEAVY);
         MIN_OI_LIGHT      = getDouble(p, "min.oi.light", MIN_OI_LIGHT);
@@ -211,6 +322,83 @@ public final class Settings {
         AGGR_MIN_RATIO_SHORT_MICRO = getDouble(p, "aggr.min.ratio.short.micro", AGGR_MIN_RATIO_SHORT_MICRO);
         AGGR_MIN_USD = getDouble(p, "aggr.min.usd", AGGR_MIN_USD);
         AGGR_MAX_FLOW_USD = getDouble(p, "aggr.max.flow.usd", AGGR_MAX_FLOW_USD);
+
+        // === WebSocket ===
+        WS_URL               = p.getProperty("ws.url", WS_URL);
+        WS_STREAMING_DECODER = getBoolean(p, "ws.streaming.decoder", WS_STREAMING_DECODER);
+        WS_PING_INTERVAL_MS  = getLong(p, "ws.ping.interval.ms", WS_PING_INTERVAL_MS);
+        WS_STALE_MS          = getLong(p, "ws.stale.ms",         WS_STALE_MS);
+        TICKER_DRAIN_MS      = getLong(p, "ticker.drain.ms",     TICKER_DRAIN_MS);
+        TRADE_DEDUP_ENABLED  = getBoolean(p, "trade.dedup.enabled", TRADE_DEDUP_ENABLED);
+        OI_STALE_MS          = getLong(p, "oi.stale.ms",         OI_STALE_MS);
+        OI_REST_SINGLE_MAX   = getInt (p, "oi.rest.single.max",  OI_REST_SINGLE_MAX);
+        KLINE_PARTIAL_ENABLED = getBoolean(p, "kline.partial.enabled", KLINE_PARTIAL_ENABLED);
+        INTRABAR_EVAL_ENABLED = getBoolean(p, "intrabar.eval.enabled", INTRABAR_EVAL_ENABLED);
+        INTRABAR_EVAL_MS      = getLong   (p, "intrabar.eval.ms",      INTRABAR_EVAL_MS);
+        INTRABAR_MAX_AGE_MS   = getLong   (p, "intrabar.max.age.ms",   INTRABAR_MAX_AGE_MS);
+        BARS_SOURCE         = p.getProperty("bars.source", BARS_SOURCE).trim();
+        BARS_TRADE_SEC      = getLong(p, "bars.trade.sec",      BARS_TRADE_SEC);
+        BARS_CLOSE_GRACE_MS = getLong(p, "bars.close.grace.ms", BARS_CLOSE_GRACE_MS);
+        SUBS_TIERS_ENABLED        = getBoolean(p, "subs.tiers.enabled",        SUBS_TIERS_ENABLED);
+        SUBS_EVAL_SEC             = getLong   (p, "subs.eval.sec",             SUBS_EVAL_SEC);
+        SUBS_HOT_TURNOVER_RATIO   = getDouble (p, "subs.hot.turnover.ratio",   SUBS_HOT_TURNOVER_RATIO);
+        SUBS_HOT_PRICE_MOVE_PCT   = getDouble (p, "subs.hot.price.move.pct",   SUBS_HOT_PRICE_MOVE_PCT);
+        SUBS_WARM_TURNOVER_FACTOR = getDouble (p, "subs.warm.turnover.factor", SUBS_WARM_TURNOVER_FACTOR);
+        SUBS_MIN_DWELL_SEC        = getLong   (p, "subs.min.dwell.sec",        SUBS_MIN_DWELL_SEC);
+        HTTP_IP_REQUESTS_PER_SEC = getDouble(p, "http.ip.requests.per.sec", HTTP_IP_REQUESTS_PER_SEC);
+        HTTP_IP_BURST            = getDouble(p, "http.ip.burst",            HTTP_IP_BURST);
+        HTTP_ENDPOINT_LIMITS     = p.getProperty("http.endpoint.limits",    HTTP_ENDPOINT_LIMITS);
+        CATALOG_CACHE_FILE   = p.getProperty("catalog.cache.file", CATALOG_CACHE_FILE);
+        CATALOG_STATUSES     = p.getProperty("catalog.statuses",   CATALOG_STATUSES);
+        CATALOG_REFRESH_MIN  = getLong(p, "catalog.refresh.min",   CATALOG_REFRESH_MIN);
+        CHECKPOINT_ENABLED      = getBoolean(p, "checkpoint.enabled",      CHECKPOINT_ENABLED);
+        CHECKPOINT_FILE         = p.getProperty("checkpoint.file",         CHECKPOINT_FILE);
+        CHECKPOINT_INTERVAL_SEC = getLong   (p, "checkpoint.interval.sec", CHECKPOINT_INTERVAL_SEC);
+        CHECKPOINT_MAX_AGE_MIN  = getLong   (p, "checkpoint.max.age.min",  CHECKPOINT_MAX_AGE_MIN);
+        COLUMNS_ENABLED  = getBoolean(p, "columns.enabled",  COLUMNS_ENABLED);
+        COLUMNS_FILE     = p.getProperty("columns.file",     COLUMNS_FILE);
+        COLUMNS_CAPACITY = getInt    (p, "columns.capacity", COLUMNS_CAPACITY);
+        COLUMNS_SERIES   = getInt    (p, "columns.series",   COLUMNS_SERIES);
+        BOOTSTRAP_ENABLED          = getBoolean(p, "bootstrap.enabled",          BOOTSTRAP_ENABLED);
+        BOOTSTRAP_CONCURRENCY      = getInt    (p, "bootstrap.concurrency",      BOOTSTRAP_CONCURRENCY);
+        BOOTSTRAP_TIMEOUT_SEC      = getLong   (p, "bootstrap.timeout.sec",      BOOTSTRAP_TIMEOUT_SEC);
+        WS_SHARDS_TRADES       = getInt(p, "ws.shards.trades",       WS_SHARDS_TRADES);
+        WS_SHARDS_KLINES       = getInt(p, "ws.shards.klines",       WS_SHARDS_KLINES);
+        WS_SHARDS_TICKERS      = getInt(p, "ws.shards.tickers",      WS_SHARDS_TICKERS);
+        WS_SHARDS_LIQUIDATIONS = getInt(p, "ws.shards.liquidations", WS_SHARDS_LIQUIDATIONS);
+        WS_SYMBOLS_PER_SHARD   = getInt(p, "ws.symbols.per.shard",   WS_SYMBOLS_PER_SHARD);
+        LIQ_ENABLED                = getBoolean(p, "liq.enabled",                LIQ_ENABLED);
+        LIQ_RECONNECT_DELAY_MS     = getLong   (p, "liq.reconnect.delay.ms",     LIQ_RECONNECT_DELAY_MS);
+        LIQ_RECONNECT_DELAY_MAX_MS = getLong   (p, "liq.reconnect.delay.max.ms", LIQ_RECONNECT_DELAY_MAX_MS);
+
+        // === Дозагрузка баров ===
+        BACKFILL_ENABLED          = getBoolean(p, "backfill.enabled",          BACKFILL_ENABLED);
+        BACKFILL_CONCURRENCY      = getInt    (p, "backfill.concurrency",      BACKFILL_CONCURRENCY);
+
+        // === Конвейер ===
+        PIPELINE_ENABLED    = getBoolean(p, "pipeline.enabled",    PIPELINE_ENABLED);
+        PIPELINE_PARTITIONS = getInt    (p, "pipeline.partitions", PIPELINE_PARTITIONS);
+        PIPELINE_RING_SIZE  = getInt    (p, "pipeline.ring.size",  PIPELINE_RING_SIZE);
+
+        // === Журнал ===
+        JOURNAL_ENABLED    = getBoolean(p, "journal.enabled",    JOURNAL_ENABLED);
+        JOURNAL_DIR        = p.getProperty("journal.dir",        JOURNAL_DIR);
+        JOURNAL_SEGMENT_MB = getInt    (p, "journal.segment.mb", JOURNAL_SEGMENT_MB);
+
+        // === Воспроизведение ===
+        REPLAY_ENABLED = getBoolean(p, "replay.enabled", REPLAY_ENABLED);
+        REPLAY_DIR     = p.getProperty("replay.dir",     REPLAY_DIR);
+        REPLAY_SPEED   = getDouble (p, "replay.speed",   REPLAY_SPEED);
+        REPLAY_FROM_MS = getLong   (p, "replay.from.ms", REPLAY_FROM_MS);
+        REPLAY_TO_MS   = getLong   (p, "replay.to.ms",   REPLAY_TO_MS);
+
+        // === Симулятор ===
+        SIM_ENABLED           = getBoolean(p, "sim.enabled",            SIM_ENABLED);
+        SIM_PORT              = getInt    (p, "sim.port",               SIM_PORT);
+        SIM_SYMBOLS           = getInt    (p, "sim.symbols",            SIM_SYMBOLS);
+        SIM_TRADES_PER_SEC    = getDouble (p, "sim.trades.per.sec",     SIM_TRADES_PER_SEC);
+        SIM_PUMP_EVERY_SEC    = getInt    (p, "sim.pump.every.sec",     SIM_PUMP_EVERY_SEC);
+        SIM_PUMP_DURATION_SEC = getInt    (p, "sim.pump.duration.sec",  SIM_PUMP_DURATION_SEC);
     }
 
 
@@ -236,6 +424,16 @@ public final class Settings {
         }
     }
 
+    private static boolean getBoolean(java.util.Properties p, String key, boolean def) {
+        String v = p.getProperty(key);
+        if (v == null) return def;
+        v = v.trim();
+        if (v.equalsIgnoreCase("true")) return true;
+        if (v.equalsIgnoreCase("false")) return false;
+        System.err.println("[Settings] bad boolean for " + key + ": " + v);
+        return def;
+    }
+
     private static int getInt(java.util.Properties p, String key, int def) {
         String v = p.getProperty(key);
         if (v == null) return def;
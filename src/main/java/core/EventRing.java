@@ -0,0 +1,94 @@
+package core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Предвыделенный single-producer / single-consumer кольцевой буфер событий.
+ *
+ * Слоты — параллельные примитивные массивы (без объекта на событие).
+ * Продюсер — поток чтения одного WS-шарда, консюмер — воркер одной партиции.
+ * Публикация через lazySet (release), чтение хвоста через volatile get (acquire).
+ */
+final class EventRing {
+
+    static final byte TRADE = 1;
+    static final byte KLINE = 2;
+    static final byte LIQUIDATION = 3;
+    static final byte KLINE_PARTIAL = 4;
+
+    private final int mask;
+
+    final byte[] type;
+    final String[] symbol;
+    final boolean[] flag;     // isBuy / longSideWasLiquidated
+    final double[] a;         // usd / close
+    final double[] b;         // volumeUsd
+    final double[] c;         // oiUsd / high
+    final double[] d;         // funding / low
+    final double[] e;         // open (частичный бар)
+    final long[] ts;          // биржевое время сделки / ликвидации (T) / start частичного бара
+    final long[] recvNanos;   // момент публикации — для лага
+
+    // tail пишет только продюсер, head — только консюмер
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private long cachedHead = 0;  // копия head у продюсера
+
+    EventRing(int capacityPow2) {
+        int cap = Integer.highestOneBit(Math.max(2, capacityPow2 - 1)) << 1;
+        this.mask = cap - 1;
+        this.type = new byte[cap];
+        this.symbol = new String[cap];
+        this.flag = new boolean[cap];
+        this.a = new double[cap];
+        this.b = new double[cap];
+        this.c = new double[cap];
+        this.d = new double[cap];
+        this.e = new double[cap];
+        this.ts = new long[cap];
+        this.recvNanos = new long[cap];
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    // ===== продюсер =====
+
+    /** @return индекс слота для записи или -1, если буфер полон */
+    long claim() {
+        long t = tail.get();
+        if (t - cachedHead > mask) {
+            cachedHead = head.get();
+            if (t - cachedHead > mask) return -1;
+        }
+        return t;
+    }
+
+    int slot(long seq) {
+        return (int) (seq & mask);
+    }
+
+    void publish(long seq) {
+        tail.lazySet(seq + 1);
+    }
+
+    // ===== консюмер =====
+
+    long readHead() {
+        return head.get();
+    }
+
+    long readTail() {
+        return tail.get();
+    }
+
+    void release(long newHead) {
+        head.lazySet(newHead);
+    }
+
+    /** Текущая глубина очереди (приблизительно, для метрик). */
+    long depth() {
+        return tail.get() - head.get();
+    }
+}
@@ -0,0 +1,429 @@
+package core;
+
+import store.SymbolRegistry;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Конвейер между WS-листенерами и {@link PumpLiquidityAnalyzer}.
+ *
+ * Поток чтения сокета только декодирует кадр и публикует событие в свой
+ * предвыделенный SPSC-буфер нужной партиции (партиция = hash(symbol) % N).
+ * Каждой партицией владеет один воркер: он по очереди выгребает буферы всех
+ * продюсеров и применяет события к анализатору (подряд идущие сделки одного
+ * символа склеиваются обратно в один вызов onTrades). Все события одного символа
+ * обрабатывает один и тот же поток, поэтому чтение сети не ждёт монитор SymbolState.
+ *
+ * Воркер — единственный писатель состояния своих символов ({@link PumpLiquidityAnalyzer#ownedBy}),
+ * и события он применяет без монитора. Редкие записи с других потоков — прогрев истории
+ * (seedHistory) и отметка сигнала из analyze() — уходят воркеру задачей ({@link #callOwner}):
+ * он выполняет их между буферами, а вызывающий ждёт результата. Читатели (analyze(), провайдер
+ * метрик, чекпоинт) берут оптимистичные снимки через SymbolState.read и воркер не задерживают.
+ *
+ * Если буфер переполнен, продюсер немного крутится. Сделки и частичные бары после этого
+ * отбрасываются (счётчик dropped) — их потеря лишь занижает поток минуты. Закрытые бары и
+ * ликвидации не теряются никогда: продюсер ждёт места (парковкой), пока воркер не разгребёт
+ * буфер. Пропавший закрытый бар не увидел бы и KlineBackfill — lastStart символа уже сдвинут,
+ * а ряды и EWMA сместились бы на минуту без всякой починки.
+ */
+public final class IngestPipeline {
+
+    private static final int PRODUCER_SPIN_LIMIT = 10_000;
+    private static final int WORKER_BATCH = 256;
+    private static final long WORKER_PARK_NANOS = 50_000L;
+    private static final long PRODUCER_PARK_NANOS = 50_000L;
+    private static final long OWNER_WAIT_MS = 100L;
+
+    private final MarketEventSink target;
+    private final int ringSize;
+    private final Partition[] partitions;
+    private volatile boolean running = false;
+
+    public IngestPipeline(MarketEventSink target, int partitions, int ringSize) {
+        this.target = target;
+        this.ringSize = ringSize;
+        this.partitions = new Partition[Math.max(1, partitions)];
+        for (int i = 0; i < this.partitions.length; i++) {
+            this.partitions[i] = new Partition(i);
+        }
+    }
+
+    public void start() {
+        running = true;
+        for (Partition p : partitions) {
+            Thread t = new Thread(p::runLoop, "ingest-p" + p.index);
+            t.setDaemon(true);
+            p.thread = t;
+            t.start();
+        }
+        System.out.println("▶ Ingest pipeline: " + partitions.length + " partition(s), ring=" + ringSize);
+    }
+
+    public void stop() {
+        running = false;
+        for (Partition p : partitions) {
+            if (p.thread != null) LockSupport.unpark(p.thread);
+        }
+    }
+
+    /**
+     * Партиция по ID символа: плотные ID раскладываются по партициям ровно по кругу.
+     * Незнакомый символ регистрируется здесь же, чтобы его партиция не сменилась позже.
+     */
+    int partitionOf(String symbol) {
+        return SymbolRegistry.register(symbol) % partitions.length;
+    }
+
+    /**
+     * Выполнить task на воркере партиции символа и дождаться результата: так состояние символа
+     * меняет только его воркер. С самого воркера и при остановленном конвейере (старт, stop —
+     * других писателей тогда нет) task выполняется сразу в текущем потоке.
+     */
+    public <T> T callOwner(String symbol, Supplier<T> task) {
+        Partition p = partitions[partitionOf(symbol)];
+        Thread worker = p.thread;
+        if (!running || worker == null || Thread.currentThread() == worker) return task.get();
+
+        FutureTask<T> f = new FutureTask<>(task::get);
+        p.tasks.add(f);
+        LockSupport.unpark(worker);
+        while (true) {
+            try {
+                return f.get(OWNER_WAIT_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // воркер вышел (stop) и задачу уже не возьмёт — выполняем сами
+                if (!running && p.tasks.remove(f)) return task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted waiting for ingest-p" + p.index);
+            } catch (ExecutionException e) {
+                Throwable c = e.getCause();
+                if (c instanceof RuntimeException re) throw re;
+                if (c instanceof Error err) throw err;
+                throw new IllegalStateException(c);
+            }
+        }
+    }
+
+    /**
+     * Новый продюсер — по одному на поток, который публикует события (WS-шард).
+     * Для каждой партиции у продюсера свой SPSC-буфер.
+     */
+    public Producer newProducer(String name) {
+        Producer pr = new Producer(name);
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i].rings.add(pr.rings[i]);
+        }
+        return pr;
+    }
+
+    // ==================== продюсер ====================
+
+    public final class Producer implements MarketEventSink {
+        final String name;
+        final EventRing[] rings;
+
+        private Producer(String name) {
+            this.name = name;
+            this.rings = new EventRing[partitions.length];
+            for (int i = 0; i < rings.length; i++) rings[i] = new EventRing(ringSize);
+        }
+
+        /** Слот для события, которое можно потерять; -1 — буфер так и не освободился (дроп считает вызывающий). */
+        private long claim(EventRing r) {
+            long seq = r.claim();
+            int spins = 0;
+            while (seq < 0) {
+                if (++spins > PRODUCER_SPIN_LIMIT) return -1;
+                Thread.onSpinWait();
+                seq = r.claim();
+            }
+            return seq;
+        }
+
+        /**
+         * Слот для события, которое терять нельзя (закрытый бар, ликвидация): ждём воркер сколько
+         * потребуется. -1 — только если конвейер остановлен.
+         */
+        private long claimBlocking(EventRing r, int p) {
+            long seq = claim(r);
+            while (seq < 0) {
+                if (!running) {
+                    partitions[p].dropped.incrementAndGet();
+                    return -1;
+                }
+                LockSupport.parkNanos(PRODUCER_PARK_NANOS);
+                seq = r.claim();
+            }
+            return seq;
+        }
+
+        @Override
+        public void onTrade(String symbol, boolean isBuy, double usd) {
+            int p = partitionOf(symbol);
+            EventRing r = rings[p];
+            long seq = claim(r);
+            if (seq < 0) {
+                partitions[p].dropped.incrementAndGet();
+                return;
+            }
+            int i = r.slot(seq);
+            r.type[i] = EventRing.TRADE;
+            r.symbol[i] = symbol;
+            r.flag[i] = isBuy;
+            r.a[i] = usd;
+            r.ts[i] = 0L;
+            r.recvNanos[i] = System.nanoTime();
+            r.publish(seq);
+        }
+
+        @Override
+        public void onTrades(String symbol, boolean[] isBuy, double[] usd, long[] ts, int count) {
+            int p = partitionOf(symbol);
+            EventRing r = rings[p];
+            long now = System.nanoTime();
+            for (int k = 0; k < count; k++) {
+                long seq = claim(r);
+                if (seq < 0) {
+                    partitions[p].dropped.addAndGet(count - k); // остаток кадра целиком
+                    return;
+                }
+                int i = r.slot(seq);
+                r.type[i] = EventRing.TRADE;
+                r.symbol[i] = symbol;
+                r.flag[i] = isBuy[k];
+                r.a[i] = usd[k];
+                r.ts[i] = ts[k];
+                r.recvNanos[i] = now;
+                r.publish(seq);
+            }
+        }
+
+        @Override
+        public void onKline(String symbol, double close, double volumeUsd, double oiUsd, double funding) {
+            int p = partitionOf(symbol);
+            EventRing r = rings[p];
+            long seq = claimBlocking(r, p);
+            if (seq < 0) return;
+            int i = r.slot(seq);
+            r.type[i] = EventRing.KLINE;
+            r.symbol[i] = symbol;
+            r.a[i] = close;
+            r.b[i] = volumeUsd;
+            r.c[i] = oiUsd;
+            r.d[i] = funding;
+            r.recvNanos[i] = System.nanoTime();
+            r.publish(seq);
+        }
+
+        @Override
+        public void onKlinePartial(String symbol, long start, double open, double high, double low,
+                                   double close, double turnoverUsd) {
+            int p = partitionOf(symbol);
+            EventRing r = rings[p];
+            long seq = claim(r);
+            if (seq < 0) {
+                partitions[p].dropped.incrementAndGet(); // следующий частичный бар всё равно придёт
+                return;
+            }
+            int i = r.slot(seq);
+            r.type[i] = EventRing.KLINE_PARTIAL;
+            r.symbol[i] = symbol;
+            r.ts[i] = start;
+            r.a[i] = close;
+            r.b[i] = turnoverUsd;
+            r.c[i] = high;
+            r.d[i] = low;
+            r.e[i] = open;
+            r.recvNanos[i] = System.nanoTime();
+            r.publish(seq);
+        }
+
+        @Override
+        public void onLiquidation(String symbol, boolean longSideWasLiquidated, double usd) {
+            int p = partitionOf(symbol);
+            EventRing r = rings[p];
+            long seq = claimBlocking(r, p);
+            if (seq < 0) return;
+            int i = r.slot(seq);
+            r.type[i] = EventRing.LIQUIDATION;
+            r.symbol[i] = symbol;
+            r.flag[i] = longSideWasLiquidated;
+            r.a[i] = usd;
+            r.ts[i] = 0L;
+            r.recvNanos[i] = System.nanoTime();
+            r.publish(seq);
+        }
+
+        @Override
+        public void onLiquidations(String symbol, boolean[] longSide, double[] usd, long[] ts, int count) {
+            int p = partitionOf(symbol);
+            EventRing r = rings[p];
+            long now = System.nanoTime();
+            for (int k = 0; k < count; k++) {
+                long seq = claimBlocking(r, p);
+                if (seq < 0) {
+                    partitions[p].dropped.addAndGet(count - k - 1); // claimBlocking учёл одну
+                    return;
+                }
+                int i = r.slot(seq);
+                r.type[i] = EventRing.LIQUIDATION;
+                r.symbol[i] = symbol;
+                r.flag[i] = longSide[k];
+                r.a[i] = usd[k];
+                r.ts[i] = ts[k];
+                r.recvNanos[i] = now;
+                r.publish(seq);
+            }
+        }
+    }
+
+    // ==================== партиция / воркер ====================
+
+    private final class Partition {
+        final int index;
+        final List<EventRing> rings = new CopyOnWriteArrayList<>();
+        final Queue<FutureTask<?>> tasks = new ConcurrentLinkedQueue<>(); // callOwner
+        volatile Thread thread;
+
+        // метрики
+        final AtomicLong applied = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        volatile long maxLagNanos = 0;     // максимум с прошлого замера
+        volatile double avgLagNanos = 0.0; // EWMA
+
+        // буферы воркера для склейки сделок / ликвидаций в onTrades / onLiquidations
+        private final boolean[] batchBuy = new boolean[WORKER_BATCH];
+        private final double[] batchUsd = new double[WORKER_BATCH];
+        private final long[] batchTs = new long[WORKER_BATCH];
+
+        Partition(int index) {
+            this.index = index;
+        }
+
+        void runLoop() {
+            int idle = 0;
+            while (running) {
+                int n = runTasks();
+                for (EventRing r : rings) {
+                    n += drain(r);
+                }
+                if (n > 0) {
+                    idle = 0;
+                } else if (++idle < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(WORKER_PARK_NANOS);
+                }
+            }
+        }
+
+        /** Задачи callOwner; исключение задачи уходит вызывающему через FutureTask. */
+        private int runTasks() {
+            int n = 0;
+            FutureTask<?> t;
+            while ((t = tasks.poll()) != null) {
+                t.run();
+                n++;
+            }
+            return n;
+        }
+
+        private int drain(EventRing r) {
+            long head = r.readHead();
+            long tail = r.readTail();
+            if (head == tail) return 0;
+
+            long end = Math.min(tail, head + WORKER_BATCH);
+            long lastRecv = 0;
+            long seq = head;
+            while (seq < end) {
+                int i = r.slot(seq);
+                try {
+                    switch (r.type[i]) {
+                        case EventRing.TRADE -> {
+                            // склеиваем подряд идущие сделки того же символа
+                            String sym = r.symbol[i];
+                            int n = 0;
+                            while (seq < end) {
+                                int j = r.slot(seq);
+                                if (r.type[j] != EventRing.TRADE || !sym.equals(r.symbol[j])) break;
+                                batchBuy[n] = r.flag[j];
+                                batchUsd[n] = r.a[j];
+                                batchTs[n] = r.ts[j];
+                                n++;
+                                seq++;
+                            }
+                            seq--; // последний обработанный
+                            target.onTrades(sym, batchBuy, batchUsd, batchTs, n);
+                        }
+                        case EventRing.KLINE -> target.onKline(r.symbol[i], r.a[i], r.b[i], r.c[i], r.d[i]);
+                        case EventRing.KLINE_PARTIAL -> target.onKlinePartial(r.symbol[i], r.ts[i],
+                                r.e[i], r.c[i], r.d[i], r.a[i], r.b[i]);
+                        case EventRing.LIQUIDATION -> {
+                            // так же склеиваем ликвидации символа (кадр allLiquidation — пачка)
+                            String sym = r.symbol[i];
+                            int n = 0;
+                            while (seq < end) {
+                                int j = r.slot(seq);
+                                if (r.type[j] != EventRing.LIQUIDATION || !sym.equals(r.symbol[j])) break;
+                                batchBuy[n] = r.flag[j];
+                                batchUsd[n] = r.a[j];
+                                batchTs[n] = r.ts[j];
+                                n++;
+                                seq++;
+                            }
+                            seq--;
+                            target.onLiquidations(sym, batchBuy, batchUsd, batchTs, n);
+                        }
+                        default -> { }
+                    }
+                } catch (Exception e) {
+                    System.err.println("[Ingest p" + index + "] apply error: " + e.getMessage());
+                }
+                lastRecv = r.recvNanos[r.slot(seq)];
+                seq++;
+            }
+            r.release(end);
+
+            int n = (int) (end - head);
+            applied.addAndGet(n);
+
+            long lag = System.nanoTime() - lastRecv;
+            if (lag > maxLagNanos) maxLagNanos = lag;
+            avgLagNanos = avgLagNanos == 0.0 ? lag : avgLagNanos * 0.95 + lag * 0.05;
+            return n;
+        }
+
+        long depth() {
+            long sum = 0;
+            for (EventRing r : rings) sum += r.depth();
+            return sum;
+        }
+    }
+
+    // ==================== метрики ====================
+
+    /** Глубина очереди и лаг по каждой партиции (максимум лага сбрасывается при каждом вызове). */
+    public String summary() {
+        StringBuilder sb = new StringBuilder("[Ingest] partitions=" + partitions.length);
+        for (Partition p : partitions) {
+            long maxLag = p.maxLagNanos;
+            p.maxLagNanos = 0;
+            sb.append(String.format("%n  p%d: depth=%d applied=%d dropped=%d lag avg=%.0f µs max=%.0f µs",
+                    p.index, p.depth(), p.applied.get(), p.dropped.get(),
+                    p.avgLagNanos / 1_000.0, maxLag / 1_000.0));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,41 @@
+package core;
+
+/**
+ * Приёмник декодированных рыночных событий.
+ * Реализуют сам {@link PumpLiquidityAnalyzer} (прямой вызов) и продюсеры {@link IngestPipeline}
+ * (событие кладётся в кольцевой буфер и применяется воркером партиции).
+ */
+public interface MarketEventSink {
+
+    void onTrade(String symbol, boolean isBuy, double usd);
+
+    /**
+     * Пачка сделок одного символа (один publicTrade-кадр часто несёт десятки сделок).
+     * Массивы принадлежат вызывающему и переиспользуются — копировать, если нужно сохранить.
+     *
+     * @param ts    биржевое время сделок (T), мс
+     * @param count сколько первых элементов массивов заполнено
+     */
+    void onTrades(String symbol, boolean[] isBuy, double[] usd, long[] ts, int count);
+
+    void onKline(String symbol, double close, double volumeUsd, double oiUsd, double funding);
+
+    /**
+     * Незакрытый минутный бар (kline confirm=false): значения с начала бара до текущего момента.
+     * Ряды истории не трогает — их ведут только закрытые бары.
+     *
+     * @param start start бара, мс
+     */
+    void onKlinePartial(String symbol, long start, double open, double high, double low,
+                        double close, double turnoverUsd);
+
+    void onLiquidation(String symbol, boolean longSideWasLiquidated, double usd);
+
+    /**
+     * Пачка ликвидаций одного символа (кадр allLiquidation). Массивы переиспользуются, как в onTrades.
+     *
+     * @param longSide ликвидирован лонг
+     * @param ts       биржевое время ликвидации (T), мс
+     */
+    void onLiquidations(String symbol, boolean[] longSide, double[] usd, long[] ts, int count);
+}
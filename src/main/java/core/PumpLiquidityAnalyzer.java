@@ -8,6 +8,7 @@ import signal.*;
 import state.*;
 import stats.SignalSnapshot;
 import stats.SignalStatsService;
+import store.SymbolTable;
 import app.Settings;
 
 import java.util.*;
@@ -20,19 +21,40 @@ import static app.Settings.*;
  * Содержит onTrade / onKline / onLiquidation и analyze().
  * TRAIN-режим управляется Settings.OI_TRAINING_MODE (ослабление/пропуск фильтров).
  */
-public class PumpLiquidityAnalyzer {
+public class PumpLiquidityAnalyzer implements MarketEventSink {
 
-    private final Map<String, SymbolState> state = new ConcurrentHashMap<>();
-    private final long startTime = System.currentTimeMillis();
+    private final Map<String, SymbolState> state = new ConcurrentHashMap<>(); // для чекпоинта
+    private final SymbolTable<SymbolState> byId = new SymbolTable<>();         // по ID символа, горячий путь
+    // копия состояния для analyze(): своя у каждого потока анализа (минутный, внутрибаровый, replay)
+    private final ThreadLocal<SymbolState> scratch = ThreadLocal.withInitial(SymbolState::new);
+    private final long startTime = app.Clock.now();
+    // с конвейером состояние символа пишет только его воркер; null — писатели берут монитор
+    private volatile IngestPipeline owner;
 
     // === конструктор как у тебя в проекте ===
     public PumpLiquidityAnalyzer(Map<String, SymbolState> boot) {
-        if (boot != null && !boot.isEmpty()) state.putAll(boot);
+        if (boot != null && !boot.isEmpty()) {
+            state.putAll(boot);
+            boot.forEach(byId::put);
+        }
     }
 
     // Дай доступ провайдерам метрик (AnalyzerMetricsProvider)
     public SymbolState getSymbolState(String symbol) {
-        return state.get(symbol);
+        return byId.get(symbol);
+    }
+
+    private SymbolState stateFor(String symbol) {
+        return byId.computeIfAbsent(symbol, k -> {
+            SymbolState s = new SymbolState();
+            state.put(k, s);
+            return s;
+        });
+    }
+
+    /** Все состояния (только чтение карты; поля символа — через SymbolState.read). Для чекпоинта. */
+    public Map<String, SymbolState> stateView() {
+        return Collections.unmodifiableMap(state);
     }
 
     // ===== helpers =====
@@ -54,71 +76,103 @@ public class PumpLiquidityAnalyzer {
 
     // ===== входы потока =====
 
+    /**
+     * Отдать запись состояния воркерам конвейера: события приходят только с воркера партиции
+     * символа, и он пишет без монитора, а прогрев истории и отметка сигнала выполняются на нём же
+     * ({@link IngestPipeline#callOwner}). Без конвейера (replay, pipeline.enabled=false) писатели —
+     * разные потоки, и каждая запись идёт под монитором состояния.
+     * Вызывать до старта потоков данных.
+     */
+    public void ownedBy(IngestPipeline pipeline) {
+        this.owner = pipeline;
+    }
+
     /**
      * Тиковые сделки: агрессор + USD объём
      */
+    @Override
     public void onTrade(String symbol, boolean isBuy, double usd) {
-        SymbolState s = state.computeIfAbsent(symbol, k -> new SymbolState());
-        synchronized (s) {
-            // очередь направлений/объёмов агрессора
-            s.aggressorDirections.addLast(isBuy);
-            s.aggressorVolumes.addLast(usd);
-
-            while (s.aggressorDirections.size() > Settings.MAX_TRADE_WINDOW) {
-                s.aggressorDirections.removeFirst();
+        SymbolState s = stateFor(symbol);
+        if (owner != null) {
+            writeTrade(s, isBuy, usd);
+        } else {
+            synchronized (s) {
+                writeTrade(s, isBuy, usd);
             }
-            while (s.aggressorVolumes.size() > Settings.MAX_TRADE_WINDOW) {
-                s.aggressorVolumes.removeFirst();
-            }
-
-            // средний тиковый объём агрессора
-            s.avgAggressorVol = ewma(s.avgAggressorVol, usd, Settings.EWMA_ALPHA_FAST);
+        }
+    }
 
-            // минутные агрегаты для buy/sell агрессора
-            if (isBuy) s.buyAgg1m += usd;
-            else s.sellAgg1m += usd;
+    private static void writeTrade(SymbolState s, boolean isBuy, double usd) {
+        s.beginWrite();
+        try {
+            applyTrade(s, isBuy, usd, app.Clock.now());
+        } finally {
+            s.endWrite();
         }
     }
 
     /**
-     * Минутные свечи: цена/объём/USD + OI + funding на момент закрытия бара
+     * Пачка сделок одного символа: один lookup состояния и одна запись (seqlock) на весь кадр.
      */
-    public void onKline(String symbol, double close, double volumeUsd, double oiUsd, double funding) {
-        SymbolState s = state.computeIfAbsent(symbol, k -> new SymbolState());
-        synchronized (s) {
-            s.lastPrice = close;
-            s.lastFunding = funding;
-
-            // цены
-            s.closes.addLast(close);
-            while (s.closes.size() > Math.min(Settings.MAX_BAR_HISTORY,
-                    Math.max(Settings.WINDOW_MINUTES, Settings.MIN_BAR_HISTORY))) {
-                s.closes.removeFirst();
+    @Override
+    public void onTrades(String symbol, boolean[] isBuy, double[] usd, long[] ts, int count) {
+        if (count <= 0) return;
+        SymbolState s = stateFor(symbol);
+        if (owner != null) {
+            writeTrades(s, isBuy, usd, ts, count);
+        } else {
+            synchronized (s) {
+                writeTrades(s, isBuy, usd, ts, count);
             }
+        }
+    }
 
-            s.volumes.addLast(volumeUsd);
-            while (s.volumes.size() > Math.min(Settings.MAX_BAR_HISTORY, Settings.WINDOW_MINUTES)) {
-                s.volumes.removeFirst();
+    private static void writeTrades(SymbolState s, boolean[] isBuy, double[] usd, long[] ts, int count) {
+        s.beginWrite();
+        try {
+            long now = app.Clock.now();
+            for (int i = 0; i < count; i++) {
+                applyTrade(s, isBuy[i], usd[i], ts[i] > 0 ? ts[i] : now);
             }
+        } finally {
+            s.endWrite();
+        }
+    }
 
-            s.oiList.addLast(oiUsd);
-            while (s.oiList.size() > Math.min(Settings.MAX_BAR_HISTORY, Settings.WINDOW_MINUTES)) {
-                s.oiList.removeFirst();
-            }
+    private static void applyTrade(SymbolState s, boolean isBuy, double usd, long ts) {
+        // окно агрессора: серия и доминанта обновляются здесь же
+        s.aggressor.add(isBuy, usd, ts);
+
+        // средний тиковый объём агрессора
+        s.avgAggressorVol = ewma(s.avgAggressorVol, usd, Settings.EWMA_ALPHA_FAST);
 
-            // EWMA среднего объёма/мин и среднего OI
-            s.avgVolUsd = ewma(s.avgVolUsd, volumeUsd, Settings.EWMA_ALPHA_SLOW);
-            s.avgOiUsd = ewma(s.avgOiUsd, oiUsd, Settings.EWMA_ALPHA_SLOW);
-
-            // волатильность (|r| за бар), затем EWMA
-            double volt = 0.0;
-            if (s.closes.size() >= 2) {
-                var it = s.closes.descendingIterator();
-                double a = it.next();
-                double b = it.next();
-                if (b > 0) volt = Math.abs(a / b - 1.0);
+        // минутные агрегаты для buy/sell агрессора
+        if (isBuy) s.buyAgg1m += usd;
+        else s.sellAgg1m += usd;
+    }
+
+    /**
+     * Минутные свечи: цена/объём/USD + OI + funding на момент закрытия бара
+     */
+    @Override
+    public void onKline(String symbol, double close, double volumeUsd, double oiUsd, double funding) {
+        SymbolState s = stateFor(symbol);
+        if (owner != null) {
+            writeKline(symbol, s, close, volumeUsd, oiUsd, funding);
+        } else {
+            synchronized (s) {
+                writeKline(symbol, s, close, volumeUsd, oiUsd, funding);
             }
-            s.avgVolatility = ewma(s.avgVolatility, volt, Settings.EWMA_ALPHA_SLOW);
+        }
+    }
+
+    private static void writeKline(String symbol, SymbolState s, double close, double volumeUsd,
+                                   double oiUsd, double funding) {
+        s.beginWrite();
+        try {
+            applyBar(s, close, volumeUsd, oiUsd, funding);
+            refreshLiquidations(s, app.Clock.now());
+            MarketColumns.putBar(symbol, s, volumeUsd); // до сброса минутного потока
 
             // === Snapshot для ReversalWatchService до сброса агрессора ===
             double volNow = volumeUsd;
@@ -157,293 +211,503 @@ public class PumpLiquidityAnalyzer {
             s.buyAgg1m = 0.0;
             s.sellAgg1m = 0.0;
 
+            // слот незакрытого бара закрыт вместе с баром
+            if (s.barStart > 0) s.barClosedStart = s.barStart;
+            s.barStart = 0;
+            s.clearBarChanged();
+
             // (при желании здесь же можно закрывать минутные streak'и)
+        } finally {
+            s.endWrite();
+        }
+    }
+
+    /**
+     * Незакрытый бар: только слот текущего бара, ряды и EWMA ведут закрытые бары.
+     */
+    @Override
+    public void onKlinePartial(String symbol, long start, double open, double high, double low,
+                               double close, double turnoverUsd) {
+        SymbolState s = stateFor(symbol);
+        if (owner != null) {
+            writeKlinePartial(s, start, open, high, low, close, turnoverUsd);
+        } else {
+            synchronized (s) {
+                writeKlinePartial(s, start, open, high, low, close, turnoverUsd);
+            }
+        }
+    }
+
+    private static void writeKlinePartial(SymbolState s, long start, double open, double high, double low,
+                                          double close, double turnoverUsd) {
+        if (start <= s.barClosedStart || start < s.barStart) return; // запоздавший кадр
+        s.beginWrite();
+        try {
+            s.barStart = start;
+            s.barOpen = open > 0 ? open : close;
+            s.barHigh = Math.max(high, close);
+            s.barLow = low > 0 ? Math.min(low, close) : close;
+            s.barLast = close;
+            s.barTurnover = turnoverUsd;
+            s.barUpdatedAt = app.Clock.now();
+        } finally {
+            s.endWrite();
         }
+        s.markBarChanged();
+    }
+
+    /**
+     * Был ли частичный бар после прошлой внутрибаровой оценки (флаг снимается здесь же, без монитора).
+     */
+    public boolean takeIntrabarUpdate(String symbol) {
+        SymbolState s = byId.get(symbol);
+        return s != null && s.takeBarChanged();
     }
 
     /**
-     * Ликвидации (на Bybit: side="Buy"/"Sell").
+     * Прогрев из истории (REST) до подключения живых потоков: те же ряды и EWMA, что и в onKline,
+     * но без ReversalWatch и без сброса минутного потока агрессора. Бары — от старых к новым.
+     * С конвейером выполняется на воркере символа; вызывающий ждёт, пока история не ляжет в ряды.
      */
+    public void seedHistory(String symbol, double[] closes, double[] volumesUsd, double[] oiUsd,
+                            int count, double funding) {
+        if (count <= 0) return;
+        SymbolState s = stateFor(symbol);
+        IngestPipeline o = owner;
+        if (o != null) {
+            o.callOwner(symbol, () -> {
+                writeHistory(symbol, s, closes, volumesUsd, oiUsd, count, funding);
+                return null;
+            });
+        } else {
+            synchronized (s) {
+                writeHistory(symbol, s, closes, volumesUsd, oiUsd, count, funding);
+            }
+        }
+    }
+
+    private static void writeHistory(String symbol, SymbolState s, double[] closes, double[] volumesUsd,
+                                     double[] oiUsd, int count, double funding) {
+        s.beginWrite();
+        try {
+            for (int i = 0; i < count; i++) {
+                applyBar(s, closes[i], volumesUsd[i], oiUsd[i], funding);
+                MarketColumns.putBar(symbol, s, volumesUsd[i]);
+            }
+        } finally {
+            s.endWrite();
+        }
+    }
+
+    /** Ряды цены/объёма/OI и EWMA по закрытому бару. Вызывать писателем состояния между beginWrite/endWrite. */
+    private static void applyBar(SymbolState s, double close, double volumeUsd, double oiUsd, double funding) {
+        s.lastPrice = close;
+        s.lastFunding = funding;
+
+        // ряды фиксированной длины: самое старое значение вытесняется само
+        s.closes.add(close);
+        s.volumes.add(volumeUsd);
+        s.oiList.add(oiUsd);
+
+        // EWMA среднего объёма/мин и среднего OI
+        s.avgVolUsd = ewma(s.avgVolUsd, volumeUsd, Settings.EWMA_ALPHA_SLOW);
+        s.avgOiUsd = ewma(s.avgOiUsd, oiUsd, Settings.EWMA_ALPHA_SLOW);
+
+        // волатильность (|r| за бар), затем EWMA
+        double volt = 0.0;
+        if (s.closes.size() >= 2) {
+            double a = s.closes.fromEnd(0);
+            double b = s.closes.fromEnd(1);
+            if (b > 0) volt = Math.abs(a / b - 1.0);
+        }
+        s.avgVolatility = ewma(s.avgVolatility, volt, Settings.EWMA_ALPHA_SLOW);
+    }
+
+    /**
+     * Одиночная ликвидация без биржевого времени (старый топик liquidation.*): время — локальное.
+     */
+    @Override
     public void onLiquidation(String symbol, boolean longSideWasLiquidated, double usd) {
-        SymbolState s = state.computeIfAbsent(symbol, k -> new SymbolState());
-        synchronized (s) {
-            if (longSideWasLiquidated) {
-                // ликвидировали лонги → продавцы давят вниз
-                s.liqSell1m = ewma(s.liqSell1m, usd, EWMA_ALPHA_FAST);
-            } else {
-                // ликвидировали шорты → покупатели толкают вверх
-                s.liqBuy1m = ewma(s.liqBuy1m, usd, EWMA_ALPHA_FAST);
+        long now = app.Clock.now();
+        onLiquidations(symbol, new boolean[]{longSideWasLiquidated}, new double[]{usd}, new long[]{now}, 1);
+    }
+
+    /**
+     * Пачка ликвидаций allLiquidation: в скользящие окна по биржевому T.
+     * Лонги ликвидировали → продавцы давят вниз (liqSell1m), шорты → покупатели толкают вверх (liqBuy1m).
+     */
+    @Override
+    public void onLiquidations(String symbol, boolean[] longSide, double[] usd, long[] ts, int count) {
+        SymbolState s = stateFor(symbol);
+        if (owner != null) {
+            writeLiquidations(s, longSide, usd, ts, count);
+        } else {
+            synchronized (s) {
+                writeLiquidations(s, longSide, usd, ts, count);
             }
         }
     }
 
+    private static void writeLiquidations(SymbolState s, boolean[] longSide, double[] usd, long[] ts, int count) {
+        long now = app.Clock.now();
+        s.beginWrite();
+        try {
+            for (int i = 0; i < count; i++) {
+                s.liquidations.add(longSide[i], usd[i], ts[i] > 0 ? ts[i] : now);
+            }
+            refreshLiquidations(s, now);
+        } finally {
+            s.endWrite();
+        }
+    }
+
+    /** Состарить окна ликвидаций и переложить суммы в поля состояния (живого — писателем, или копии). */
+    private static void refreshLiquidations(SymbolState s, long now) {
+        s.liquidations.advanceTo(now);
+        s.liqBuy1m = s.liquidations.shortUsd(LiquidationWindows.W1M);
+        s.liqSell1m = s.liquidations.longUsd(LiquidationWindows.W1M);
+        s.liqLongUsd = s.liquidations.longUsd(LiquidationWindows.W5M);
+        s.liqShortUsd = s.liquidations.shortUsd(LiquidationWindows.W5M);
+    }
+
+    /** Разделы 0 и 2.1–2.3 analyze(): те же пороги, только чтение состояния. */
+    private boolean rejectedByBasics(String symbol, SymbolState s, long now) {
+        if (s.closes.size() < MIN_BARS_FOR_ANALYSIS || now - startTime < 60_000L) return true;
+
+        double oiNow = s.oiList.last();
+        double flow = s.buyAgg1m + s.sellAgg1m;
+        double avgVol = s.avgVolUsd;
+        double buyRatio = flow > 0.0 ? s.buyAgg1m / flow : 0.5;
+        boolean isHeavy = SEED_HEAVY.contains(symbol) || avgVol >= 5_000_000;
+        boolean isMicro = oiNow < MICRO_OI_USD;
+
+        if (oiNow < (isHeavy ? MIN_OI_HEAVY : MIN_OI_LIGHT)) return true;
+        double minFlow = Math.max(MIN_FLOW_FLOOR, avgVol * MIN_FLOW_RATIO);
+        if (isHeavy) minFlow *= 0.5;
+        else if (isMicro) minFlow *= 1.2;
+        if (flow < minFlow) return true;
+        return Math.abs(buyRatio - 0.5) < MIN_FLOW_RATIO;
+    }
+
     // ===== основная логика анализа =====
 
     public Optional<TradeSignal> analyze(String symbol) {
-        SymbolState s = state.get(symbol);
-        if (s == null) return Optional.empty();
+        SymbolState live = byId.get(symbol);
+        if (live == null) return Optional.empty();
+
+        // большинство символов отсекают базовые условия — их проверяем оптимистично, без монитора,
+        // чтобы минутный проход не задерживал писателя сделок
+        if (live.read(() -> rejectedByBasics(symbol, live, app.Clock.now()))) return Optional.empty();
+
+        long now = app.Clock.now();
+        // фильтры, MicroNN, статистика и ReversalWatch работают по копии состояния, снятой
+        // оптимистично: сделки символа пишутся всё время оценки
+        SymbolState s = scratch.get();
+        live.read(() -> {
+            s.copyFrom(live);
+            return s;
+        });
+        // окна ликвидаций стареют по времени — старим копию: analyze() живое состояние не пишет
+        refreshLiquidations(s, now);
+        return evaluate(symbol, s, live, now);
+    }
 
+    /**
+     * Перезарядка и сброс серий в живом состоянии — писателем состояния (воркер символа или
+     * монитор). Повторяет проверки 2.4: между снятием копии и отметкой сигнал мог дать другой проход.
+     *
+     * @return false — сигнал уже отмечен
+     */
+    private boolean claimSignal(String symbol, SymbolState s, long now, boolean isHeavy) {
+        IngestPipeline o = owner;
+        if (o != null) return o.callOwner(symbol, () -> writeClaim(s, now, isHeavy));
         synchronized (s) {
-            long now = System.currentTimeMillis();
+            return writeClaim(s, now, isHeavy);
+        }
+    }
 
-            // =========================
-            // 0. Минимальные условия
-            // =========================
-            if (s.closes.size() < MIN_BARS_FOR_ANALYSIS) {
-                return Optional.empty();
-            }
-            // небольшой прогрев всего анализатора
-            if (now - startTime < 60_000L) {
-                return Optional.empty();
-            }
+    private static boolean writeClaim(SymbolState s, long now, boolean isHeavy) {
+        if (now < s.getCooldownUntil()) return false;
+        if (s.getLastSignalAtMs() > 0 && now - s.getLastSignalAtMs() < MIN_SIGNAL_GAP_MS) return false;
 
-            // =========================
-            // 1. Базовые метрики по монете
-            // =========================
-            double oiNow = s.oiList.getLast();
-            double volNow = s.volumes.getLast();
-            double flow = s.buyAgg1m + s.sellAgg1m;
+        s.beginWrite();
+        try {
+            long cooldownMs = isHeavy ? COOLDOWN_MS_HEAVY : COOLDOWN_MS_LIGHT;
+            s.setCooldownUntil(now + cooldownMs);
+            s.setLastSignalAtMs(now);
 
-            double avgVol = s.avgVolUsd;
-            double avgOi = s.avgOiUsd;
-            double volRel = avgVol > 0 ? volNow / avgVol : 0.0;
-            double oiRel = avgOi > 0 ? oiNow / avgOi : 0.0;
+            s.setWatchStreak(0);
+            s.setEnterStreak(0);
+            return true;
+        } finally {
+            s.endWrite();
+        }
+    }
 
-            double buyRatio;
-            if (flow > 0.0) {
-                buyRatio = s.buyAgg1m / flow;
-            } else {
-                buyRatio = 0.5;
-            }
+    /**
+     * Оценка символа по копии состояния s (без монитора). live — только для отметки сигнала.
+     */
+    private Optional<TradeSignal> evaluate(String symbol, SymbolState s, SymbolState live, long now) {
+        // =========================
+        // 0. Минимальные условия
+        // =========================
+        if (s.closes.size() < MIN_BARS_FOR_ANALYSIS) {
+            return Optional.empty();
+        }
+        // небольшой прогрев всего анализатора
+        if (now - startTime < 60_000L) {
+            return Optional.empty();
+        }
+
+        // =========================
+        // 1. Базовые метрики по монете
+        // =========================
+        // внутри бара: цена и оборот текущей (ещё не закрытой) минуты, если слот свежий
+        boolean intrabar = INTRABAR_EVAL_ENABLED && s.barStart > 0
+                && now - s.barUpdatedAt <= INTRABAR_MAX_AGE_MS;
+        double price = intrabar ? s.barLast : s.lastPrice;
+
+        double oiNow = s.oiList.last();
+        double volNow = intrabar ? Math.max(s.volumes.last(), s.barTurnover) : s.volumes.last();
+        double flow = s.buyAgg1m + s.sellAgg1m;
+
+        double avgVol = s.avgVolUsd;
+        double avgOi = s.avgOiUsd;
+        double volRel = avgVol > 0 ? volNow / avgVol : 0.0;
+        double oiRel = avgOi > 0 ? oiNow / avgOi : 0.0;
+
+        double buyRatio;
+        if (flow > 0.0) {
+            buyRatio = s.buyAgg1m / flow;
+        } else {
+            buyRatio = 0.5;
+        }
 
-            boolean isLong = buyRatio > 0.5;
-            boolean isHeavy = SEED_HEAVY.contains(symbol) || s.avgVolUsd >= 5_000_000;
-            boolean isMicro = oiNow < MICRO_OI_USD;
+        boolean isLong = buyRatio > 0.5;
+        boolean isHeavy = SEED_HEAVY.contains(symbol) || s.avgVolUsd >= 5_000_000;
+        boolean isMicro = oiNow < MICRO_OI_USD;
 
-            // ======================
-            // 2. Базовые фильтры
-            // ======================
+        // ======================
+        // 2. Базовые фильтры
+        // ======================
 
-            // 2.1. OI по профилю
-            double minOi = isHeavy ? MIN_OI_HEAVY : MIN_OI_LIGHT;
-            if (oiNow < minOi) {
+        // 2.1. OI по профилю
+        double minOi = isHeavy ? MIN_OI_HEAVY : MIN_OI_LIGHT;
+        if (oiNow < minOi) {
 //                String reason = String.format(
 //                        "Низкий OI: %d (min=%.0f, heavy=%s, micro=%s)",
 //                        (long) oiNow, minOi, isHeavy, isMicro
 //                );
 //                DebugPrinter.printIgnore(symbol, reason);
 //                FilterLog.logIgnore(symbol, reason);
-                return Optional.empty();
-            }
+            return Optional.empty();
+        }
 
 
-            // 2.2. Поток агрессора
-            double minFlowBase = Math.max(MIN_FLOW_FLOOR, avgVol * MIN_FLOW_RATIO);
-            double minFlow = minFlowBase;
+        // 2.2. Поток агрессора
+        double minFlowBase = Math.max(MIN_FLOW_FLOOR, avgVol * MIN_FLOW_RATIO);
+        double minFlow = minFlowBase;
 
-            // Для heavy-монет можно быть мягче по расходу:
-            // они сами по себе ликвидные, даже если текущая минута чуть тише
-            if (isHeavy) {
-                minFlow = minFlowBase * 0.5;    // 50% от базового порога
-            }
-            // Для микро-кап — наоборот, чуть жестче
-            else if (isMicro) {
-                minFlow = minFlowBase * 1.2;    // +20% к порогу
-            }
+        // Для heavy-монет можно быть мягче по расходу:
+        // они сами по себе ликвидные, даже если текущая минута чуть тише
+        if (isHeavy) {
+            minFlow = minFlowBase * 0.5;    // 50% от базового порога
+        }
+        // Для микро-кап — наоборот, чуть жестче
+        else if (isMicro) {
+            minFlow = minFlowBase * 1.2;    // +20% к порогу
+        }
 
-            if (flow < minFlow) {
+        if (flow < minFlow) {
 //                String reason = String.format(
 //                        "Низкий расход: %d (min=%.0f, avgVol=%.0f, heavy=%s, micro=%s)",
 //                        (long) flow, minFlow, avgVol, isHeavy, isMicro
 //                );
 //                DebugPrinter.printIgnore(symbol, reason);
 //                FilterLog.logIgnore(symbol, reason);
-                return Optional.empty();
-            }
+            return Optional.empty();
+        }
 
 
-            // 2.3. Направление потока (слишком нейтральное направление)
-            double dirOffset = Math.abs(buyRatio - 0.5); // 0 = нейтрально, 0.5 = чистый one-side
-            if (dirOffset < MIN_FLOW_RATIO) {
+        // 2.3. Направление потока (слишком нейтральное направление)
+        double dirOffset = Math.abs(buyRatio - 0.5); // 0 = нейтрально, 0.5 = чистый one-side
+        if (dirOffset < MIN_FLOW_RATIO) {
 //                DebugPrinter.printIgnore(symbol,
 //                        String.format("Слабое направление, buyRatio=%.2f", buyRatio));
-                return Optional.empty();
-            }
+            return Optional.empty();
+        }
 
-            // 2.4. Cooldown и минимальный разрыв между сигналами
-            if (now < s.getCooldownUntil()) {
-                DebugPrinter.printIgnore(symbol, "Перезарядка активна");
-                return Optional.empty();
-            }
+        // 2.4. Cooldown и минимальный разрыв между сигналами
+        if (now < s.getCooldownUntil()) {
+            DebugPrinter.printIgnore(symbol, "Перезарядка активна");
+            return Optional.empty();
+        }
 
-            if (s.getLastSignalAtMs() > 0 && now - s.getLastSignalAtMs() < MIN_SIGNAL_GAP_MS) {
-                DebugPrinter.printIgnore(symbol, "Слишком частые сигналы");
-                return Optional.empty();
-            }
+        if (s.getLastSignalAtMs() > 0 && now - s.getLastSignalAtMs() < MIN_SIGNAL_GAP_MS) {
+            DebugPrinter.printIgnore(symbol, "Слишком частые сигналы");
+            return Optional.empty();
+        }
 
-            // =========================
-            // 3. Фильтры со score
-            // =========================
-            int score = 0;
-
-            // -------------------------
-            // 3.1. OI Acceleration Filter
-            // -------------------------
-            if (OI_FILTER_ENABLED) {
-                boolean ok = OIAccelerationFilter.pass(s, symbol);
-                if (ok) {
-                    score++;
-                } else if (!OI_SOFT_MODE && !OI_TRAINING_MODE) {
+        // =========================
+        // 3. Фильтры со score
+        // =========================
+        int score = 0;
+
+        // -------------------------
+        // 3.1. OI Acceleration Filter
+        // -------------------------
+        if (OI_FILTER_ENABLED) {
+            boolean ok = OIAccelerationFilter.pass(s, symbol);
+            if (ok) {
+                score++;
+            } else if (!OI_SOFT_MODE && !OI_TRAINING_MODE) {
 //                    DebugPrinter.printIgnore(symbol, "[Filter] OIAcceleration");
-                    return Optional.empty();
-                }
-                // если OI_SOFT_MODE или OI_TRAINING_MODE — можем не выкидывать, а просто не добавлять score
+                return Optional.empty();
             }
+            // если OI_SOFT_MODE или OI_TRAINING_MODE — можем не выкидывать, а просто не добавлять score
+        }
 
-            // -------------------------
-            // 3.2. Aggressor Filter
-            // -------------------------
-            if (AGGRESSOR_FILTER_ENABLED) {
-                boolean ok = AdaptiveAggressorFilter.pass(s, isLong, symbol);
-                if (ok) {
-                    score++;
-                } else if (!AGGRESSOR_SOFT_MODE) {
+        // -------------------------
+        // 3.2. Aggressor Filter
+        // -------------------------
+        if (AGGRESSOR_FILTER_ENABLED) {
+            boolean ok = AdaptiveAggressorFilter.pass(s, isLong, symbol);
+            if (ok) {
+                score++;
+            } else if (!AGGRESSOR_SOFT_MODE) {
 //                    DebugPrinter.printIgnore(symbol, "[Filter] AdaptiveAggressor");
-                    return Optional.empty();
-                }
+                return Optional.empty();
             }
+        }
 
-            // -------------------------
-            // 3.3. MicroNN (только для микро-кап)
-            // -------------------------
-            if (MICRO_NN_ENABLED && isMicro) {
-                double p = MicroNN.predict(s, isLong);
-                if (p < MICRO_NN_THRESHOLD) {
+        // -------------------------
+        // 3.3. MicroNN (только для микро-кап)
+        // -------------------------
+        if (MICRO_NN_ENABLED && isMicro) {
+            double p = MicroNN.predict(s, isLong);
+            if (p < MICRO_NN_THRESHOLD) {
 //                    DebugPrinter.printIgnore(symbol,
 //                            String.format("MicroNN reject p=%.2f", p));
-                    return Optional.empty();
-                }
-                // по желанию можно добавить: score++;
+                return Optional.empty();
             }
+            // по желанию можно добавить: score++;
+        }
 
-            // -------------------------
-            // 3.4. Burst Filter
-            // -------------------------
-            if (BURST_FILTER_ENABLED) {
-                boolean ok = AggressorBurstFilter.pass(s, isLong, symbol);
-                if (ok) {
-                    score++;
-                } else if (!BURST_SOFT_MODE) {
+        // -------------------------
+        // 3.4. Burst Filter
+        // -------------------------
+        if (BURST_FILTER_ENABLED) {
+            boolean ok = AggressorBurstFilter.pass(s, isLong, symbol);
+            if (ok) {
+                score++;
+            } else if (!BURST_SOFT_MODE) {
 //                    DebugPrinter.printIgnore(symbol, "[Filter] Burst");
-                    return Optional.empty();
-                }
-            }
-
-            // ==========================
-            // 4. Сила сигнала по score
-            // ==========================
-            SignalStrength strength;
-            if (score >= 3) {
-                strength = SignalStrength.STRONG;
-            } else if (score == 2) {
-                strength = SignalStrength.MEDIUM;
-            } else if (score == 1) {
-                strength = SignalStrength.WEAK;
-            } else {
-                DebugPrinter.printIgnore(symbol, "Низкая оценка =" + score);
                 return Optional.empty();
             }
+        }
 
-            // ==========================
-            // 5. Собираем сигнал
-            // ==========================
-
-            TradeSignal sig = new TradeSignal(
-                    symbol,
-                    Stage.ENTER,                       // если у тебя другой Stage — подставь
-                    isLong ? "LONG" : "SHORT",
-                    s.lastPrice,
-                    score,
-                    strength,
-                    "ENTER (score=" + score + ")",
-                    oiNow,
-                    flow,
-                    buyRatio,
-                    s.avgVolatility,
-                    s.lastFunding,
-                    isMicro
-            );
+        // ==========================
+        // 4. Сила сигнала по score
+        // ==========================
+        SignalStrength strength;
+        if (score >= 3) {
+            strength = SignalStrength.STRONG;
+        } else if (score == 2) {
+            strength = SignalStrength.MEDIUM;
+        } else if (score == 1) {
+            strength = SignalStrength.WEAK;
+        } else {
+            DebugPrinter.printIgnore(symbol, "Низкая оценка =" + score);
+            return Optional.empty();
+        }
 
-            // === Снапшот для статистики ===
-            SignalSnapshot snap = new SignalSnapshot(
-                    now,
-                    s.lastPrice,
-                    oiNow,
-                    flow,
-                    buyRatio,
-                    s.avgVolatility,
-                    s.lastFunding,
-                    "enter (score=" + score + ")",
-                    0.0,
-                    0.0
-            );
+        // ==========================
+        // 5. Собираем сигнал
+        // ==========================
+
+        TradeSignal sig = new TradeSignal(
+                symbol,
+                Stage.ENTER,                       // если у тебя другой Stage — подставь
+                isLong ? "LONG" : "SHORT",
+                price,
+                score,
+                strength,
+                "ENTER (score=" + score + ")",
+                oiNow,
+                flow,
+                buyRatio,
+                s.avgVolatility,
+                s.lastFunding,
+                isMicro
+        );
+
+        // === Снапшот для статистики ===
+        SignalSnapshot snap = new SignalSnapshot(
+                now,
+                price,
+                oiNow,
+                flow,
+                buyRatio,
+                s.avgVolatility,
+                s.lastFunding,
+                "enter (score=" + score + ")",
+                0.0,
+                0.0
+        );
+
+        // === MarketSnapshot для фильтра ===
+        MarketSnapshot ms = new MarketSnapshot(
+                volNow,
+                volRel,
+                oiNow,
+                oiRel,
+                flow,
+                buyRatio,
+                0.0,                 // deltaShift, если нужно — подставишь своё
+                s.avgVolatility,     // voltRel / волатильность
+                score                // текущий score
+        );
+
+        // === Проверка на фейк-сигнал ===
+        FakeSignalFilter fakeFilter = new FakeSignalFilter(isLong ? "LONG" : "SHORT");
+        boolean passFake = fakeFilter.pass(symbol, s, ms);
+
+        // ==========================
+        // 6. Обновляем состояние (коротко под монитором живого состояния)
+        // ==========================
+        if (passFake && !claimSignal(symbol, live, now, isHeavy)) {
+            return Optional.empty(); // параллельный проход (минутный / внутрибаровый) уже дал сигнал
+        }
 
 // === Трекинг сигнала + id ===
-            SignalStatsService stats = SignalStatsService.getInstance();
-            String signalId = stats.trackSignal(
-                    symbol,
-                    "ENTER",
-                    isLong ? "LONG" : "SHORT",
-                    s.lastPrice,
-                    score,
-                    isMicro,
-                    snap
-            );
-
-            // === MarketSnapshot для фильтра ===
-            MarketSnapshot ms = new MarketSnapshot(
-                    volNow,
-                    volRel,
-                    oiNow,
-                    oiRel,
-                    flow,
-                    buyRatio,
-                    0.0,                 // deltaShift, если нужно — подставишь своё
-                    s.avgVolatility,     // voltRel / волатильность
-                    score                // текущий score
-            );
-
-            // === Проверка на фейк-сигнал ===
-            FakeSignalFilter fakeFilter = new FakeSignalFilter(isLong ? "LONG" : "SHORT");
-            boolean passFake = fakeFilter.pass(symbol, s, ms);
-            if (!passFake) {
-                // помечаем сигнал как фейковый для экспорта
-                stats.markAsFake(signalId);
-                // можно тут же завершить трекинг, если не хочешь ждать SNAPSHOT_ROUNDS:
-                // stats.finishTracking(signalId);
-                return Optional.empty();
-            }
-
-            // === Старт наблюдения за разворотом по этому сигналу ===
-            ReversalWatchService.getInstance().startWatch(
-                    signalId,
-                    symbol,
-                    isLong,
-                    now
-            );
-
-            // ==========================
-            // 6. Обновляем состояние
-            // ==========================
-            long cooldownMs = isHeavy ? COOLDOWN_MS_HEAVY : COOLDOWN_MS_LIGHT;
-            s.setCooldownUntil(now + cooldownMs);
-            s.setLastSignalAtMs(now);
+        SignalStatsService stats = SignalStatsService.getInstance();
+        String signalId = stats.trackSignal(
+                symbol,
+                "ENTER",
+                isLong ? "LONG" : "SHORT",
+                price,
+                score,
+                isMicro,
+                snap
+        );
+
+        if (!passFake) {
+            // помечаем сигнал как фейковый для экспорта
+            stats.markAsFake(signalId);
+            // можно тут же завершить трекинг, если не хочешь ждать SNAPSHOT_ROUNDS:
+            // stats.finishTracking(signalId);
+            return Optional.empty();
+        }
 
-            s.setWatchStreak(0);
-            s.setEnterStreak(0);
+        // === Старт наблюдения за разворотом по этому сигналу ===
+        ReversalWatchService.getInstance().startWatch(
+                signalId,
+                symbol,
+                isLong,
+                now
+        );
 
-            return Optional.of(sig);
-        }
+        return Optional.of(sig);
     }
 
 }
@@ -5,7 +5,6 @@ import core.PumpLiquidityAnalyzer;
 import log.FilterLog;
 import state.SymbolState;
 
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -57,8 +56,8 @@ public class DebugPrinter {
 
         System.out.printf("[MONITOR] %s | bars=%d | vol %.0f / avg %.0f | OI %.0f / avg %.0f | flow=%.0f | buy=%.2f | score=%.2f%n",
                 symbol, s.closes.size(),
-                (s.volumes.peekLast()!=null?s.volumes.peekLast():0.0), s.avgVolUsd,
-                (s.oiList.peekLast()!=null?s.oiList.peekLast():0.0), s.avgOiUsd,
+                s.volumes.lastOr(0.0), s.avgVolUsd,
+                s.oiList.lastOr(0.0), s.avgOiUsd,
                 flow, buy, score);
     }
 
@@ -98,10 +97,9 @@ public class DebugPrinter {
         System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
     }
 
-    private static double safeRel(Deque<Double> d, double avg) {
-        Double v = d.peekLast();
-        if (v == null || avg <= 0) return 0;
-        return v / avg;
+    private static double safeRel(state.DoubleSeries d, double avg) {
+        if (d.isEmpty() || avg <= 0) return 0;
+        return d.last() / avg;
     }
 }
 
@@ -5,9 +5,9 @@ import state.SymbolState;
 public class LiquidityImpulseChecker {
 
     public static void debugCheck(String symbol, SymbolState s) {
-        Double volNow = s.volumes.peekLast();
-        Double oiNow  = s.oiList.peekLast();
-        if (volNow == null || oiNow == null) return;
+        if (s.volumes.isEmpty() || s.oiList.isEmpty()) return;
+        double volNow = s.volumes.last();
+        double oiNow  = s.oiList.last();
 
         double volRel = (s.avgVolUsd > 0) ? volNow / s.avgVolUsd : 0;
         double oiRel  = (s.avgOiUsd  > 0) ? oiNow  / s.avgOiUsd  : 0;
@@ -30,9 +30,9 @@ public class LiquidityImpulseChecker {
 
     public static void evaluate(signal.TradeSignal sig, SymbolState s) {
         // Пока оценка без влияния на решение — только подсветка/лог (можно расширить позже)
-        Double volNow = s.volumes.peekLast();
-        Double oiNow  = s.oiList.peekLast();
-        if (volNow == null || oiNow == null) return;
+        if (s.volumes.isEmpty() || s.oiList.isEmpty()) return;
+        double volNow = s.volumes.last();
+        double oiNow  = s.oiList.last();
 
         double volRel = (s.avgVolUsd > 0) ? volNow / s.avgVolUsd : 0;
         double oiRel  = (s.avgOiUsd  > 0) ? oiNow  / s.avgOiUsd  : 0;
@@ -4,8 +4,6 @@ import app.Settings;
 import log.FilterLog;
 import state.SymbolState;
 
-import java.util.Iterator;
-
 /**
  * Burst-фильтр по агрессору.
  *
@@ -25,44 +23,26 @@ public final class AggressorBurstFilter {
     private static final double BASE_MIN_SPIKE_MUL  = 1.15;  // было 2.0 — смягчили
     private static final double BASE_MIN_DOMINANCE  = 0.60; // базовая доминанта
 
-    // сколько последних тиков учитывать для domRatio
-    private static final int DOM_WINDOW = 30;
-
     public static boolean pass(SymbolState s, boolean isLong, String symbol) {
         if (!Settings.BURST_FILTER_ENABLED) {
             return true;
         }
 
-        if (s.aggressorDirections.isEmpty() || s.aggressorVolumes.isEmpty()) {
+        if (s.aggressor.isEmpty()) {
             return !Settings.BURST_TRAIN;
         }
 
         boolean wantBuy = isLong;
 
-        double oiLast = s.oiList.isEmpty() ? 0.0 : s.oiList.getLast();
+        double oiLast = s.oiList.lastOr(0.0);
         boolean micro = oiLast > 0 && oiLast < Settings.MICRO_OI_USD;
 
         double avgTickVol = Math.max(1.0, s.avgAggressorVol);
         double volt       = Math.max(1e-9, s.avgVolatility);
 
-        // ===== 1. Стрик последних тиков в сторону сигнала =====
-        int streak = 0;
-        double streakTotalVol = 0.0;
-
-        Iterator<Boolean> dirIt = s.aggressorDirections.descendingIterator();
-        Iterator<Double>  volIt = s.aggressorVolumes.descendingIterator();
-
-        while (dirIt.hasNext() && volIt.hasNext()) {
-            boolean isBuy = dirIt.next();
-            double  vol   = volIt.next();
-
-            if (isBuy == wantBuy) {
-                streak++;
-                streakTotalVol += vol;
-            } else {
-                break;
-            }
-        }
+        // ===== 1. Стрик последних тиков в сторону сигнала (ведётся в окне при каждой сделке) =====
+        int streak = s.aggressor.streakLength(wantBuy);
+        double streakTotalVol = s.aggressor.streakUsd(wantBuy);
 
         if (streak == 0 || streakTotalVol <= 0.0) {
             return Settings.BURST_TRAIN;
@@ -70,23 +50,9 @@ public final class AggressorBurstFilter {
 
         double spikeMul = streakTotalVol / (avgTickVol * streak);
 
-        // ===== 2. Доминанта объёма в сторону сигнала за последние N тиков =====
-        double dirVolSum = 0.0;
-        double allVolSum = 0.0;
-
-        dirIt = s.aggressorDirections.descendingIterator();
-        volIt = s.aggressorVolumes.descendingIterator();
-
-        int count = 0;
-        while (dirIt.hasNext() && volIt.hasNext() && count < DOM_WINDOW) {
-            boolean isBuy = dirIt.next();
-            double  vol   = volIt.next();
-            allVolSum += vol;
-            if (isBuy == wantBuy) {
-                dirVolSum += vol;
-            }
-            count++;
-        }
+        // ===== 2. Доминанта объёма в сторону сигнала за последние AGGR_DOM_WINDOW тиков =====
+        double dirVolSum = s.aggressor.domUsd(wantBuy);
+        double allVolSum = s.aggressor.domTotalUsd();
 
         double domRatio = (allVolSum > 0.0) ? (dirVolSum / allVolSum) : 0.0;
 
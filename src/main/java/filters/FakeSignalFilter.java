@@ -1,13 +1,11 @@
 package filters;
 
 import log.FilterLog;
+import state.DoubleSeries;
 import state.MarketSnapshot;
 import state.SymbolState;
 import app.Settings;
 
-import java.util.Iterator;
-
-
 /**
  * FakeSignalFilter:
  * - вызывается перед генерацией ENTER-сигнала,
@@ -29,12 +27,12 @@ public final class FakeSignalFilter implements BaseFilter {
             return true; // мало истории — не мешаем
         }
 
-        double[] closes = lastN(s.closes, Settings.FAKE_BARS_LOOKBACK + 1);
-        double entryPrice = closes[closes.length - 1]; // последняя цена = цена входа
+        DoubleSeries.Window closes = s.closes.window(Settings.FAKE_BARS_LOOKBACK + 1);
+        double entryPrice = closes.last(); // последняя цена = цена входа
 
         // движение за последние BARS_LOOKBACK баров
-        double first = closes[0];
-        double last  = closes[closes.length - 1];
+        double first = closes.first();
+        double last  = closes.last();
         double move  = (last - first) / first;
 
         boolean trendUp   = move >  Settings.FAKE_MIN_TREND_MOVE;
@@ -44,7 +42,7 @@ public final class FakeSignalFilter implements BaseFilter {
         //  - хотим, чтобы до сигнала был ап-тренд,
         //  - но нет свежего резкого хвоста вниз на последнем баре.
         // Для SHORT — наоборот.
-        double prev = closes[closes.length - 2];
+        double prev = closes.get(closes.size() - 2);
         double lastMove = (last - prev) / prev;
 
         boolean adverseTailLong  = lastMove < -Settings.FAKE_MAX_ADVERSE_SHADOW;
@@ -84,12 +82,12 @@ public final class FakeSignalFilter implements BaseFilter {
     private static void logFake(
             String symbol,
             double entryPrice,
-            double[] closes,
+            DoubleSeries.Window closes,
             double oiRel,
             double buyRatio
     ) {
-        double first = closes[0];
-        double last  = closes[closes.length - 1];
+        double first = closes.first();
+        double last  = closes.last();
         double movePct = (last - first) / first * 100.0;
 
         FilterLog.log("FAKE", symbol, String.format(
@@ -98,15 +96,4 @@ public final class FakeSignalFilter implements BaseFilter {
                 "?", entryPrice, movePct, oiRel, buyRatio
         ));
     }
-
-    private static double[] lastN(java.util.Deque<Double> dq, int n) {
-        double[] out = new double[Math.min(n, dq.size())];
-        int i = out.length - 1;
-        for (Iterator<Double> it = dq.descendingIterator(); it.hasNext(); ) {
-            Double v = it.next();
-            out[i--] = v;
-            if (i < 0) break;
-        }
-        return out;
-    }
 }
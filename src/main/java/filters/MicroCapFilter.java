@@ -7,7 +7,7 @@ import state.SymbolState;
 public final class MicroCapFilter {
 
     public static boolean pass(SymbolState s) {
-        double oiLast = s.oiList.isEmpty() ? 0.0 : s.oiList.getLast();
+        double oiLast = s.oiList.lastOr(0.0);
         boolean isMicro = oiLast < Settings.MICRO_OI_USD;
         if (!isMicro) return true;
 
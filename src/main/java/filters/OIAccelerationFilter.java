@@ -5,9 +5,7 @@ import state.SymbolState;
 import app.Settings;
 import tuning.AutoTuner;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.Iterator;
+import state.DoubleSeries;
 
 /**
  * Адаптивный OI-фильтр:
@@ -43,15 +41,15 @@ public final class OIAccelerationFilter {
             return true;
         }
 
-        Deque<Double> oiList = s.oiList;
-        if (oiList == null || oiList.size() < 3) {
+        DoubleSeries oiList = s.oiList;
+        if (oiList.size() < 3) {
             // слишком мало точек, чтобы оценивать скорость/ускорение
             return true;
         }
 
-        double last = getFromEnd(oiList, 0);
-        double prev1 = getFromEnd(oiList, 1);
-        double prev2 = getFromEnd(oiList, 2);
+        double last = oiList.fromEnd(0);
+        double prev1 = oiList.fromEnd(1);
+        double prev2 = oiList.fromEnd(2);
 
         if (prev1 <= 0 || prev2 <= 0 || last <= 0) {
             return true;
@@ -106,48 +104,22 @@ public final class OIAccelerationFilter {
     }
 
 
-        /**
-         * Взять элемент из конца декью:
-         * offset=0 → последний,
-         * offset=1 → предпоследний, и т.д.
-         */
-    private static double getFromEnd(Deque<Double> dq, int offsetFromEnd) {
-        if (dq.isEmpty()) return 0.0;
-        // Небольшой обход с конца — глубина маленькая (3–10), не страшно
-        int idx = 0;
-        Iterator<Double> it = dq.descendingIterator();
-        while (it.hasNext()) {
-            double v = it.next();
-            if (idx == offsetFromEnd) {
-                return v;
-            }
-            idx++;
-        }
-        return dq.getFirst();
-    }
-
     /**
      * Оценка "нервности" OI по окну:
      * средний модуль относительного шага |Δoi/oi|.
      */
-    private static double computeVolRel(Deque<Double> oiList, int window) {
+    private static double computeVolRel(DoubleSeries oiList, int window) {
         if (oiList.size() < 2) return 0.0;
 
-        Deque<Double> buf = new ArrayDeque<>();
-        Iterator<Double> it = oiList.descendingIterator();
-        while (it.hasNext() && buf.size() < window) {
-            buf.addFirst(it.next());
-        }
-
+        DoubleSeries.Window buf = oiList.window(window);
         double sum = 0.0;
         int cnt = 0;
-        Double prev = null;
-        for (Double v : buf) {
-            if (prev != null && prev > 0) {
-                sum += Math.abs((v - prev) / prev);
+        for (int i = 1; i < buf.size(); i++) {
+            double prev = buf.get(i - 1);
+            if (prev > 0) {
+                sum += Math.abs((buf.get(i) - prev) / prev);
                 cnt++;
             }
-            prev = v;
         }
         return cnt > 0 ? (sum / cnt) : 0.0;
     }
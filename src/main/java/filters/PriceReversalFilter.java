@@ -5,7 +5,7 @@ import log.FilterLog;
 import state.MarketSnapshot;
 import state.SymbolState;
 
-import java.util.Deque;
+import state.DoubleSeries;
 
 public final class PriceReversalFilter implements BaseFilter {
 
@@ -37,25 +37,21 @@ public final class PriceReversalFilter implements BaseFilter {
      */
     public boolean isReversal(String symbol, SymbolState s, MarketSnapshot m) {
         int win = Settings.REV_WINDOW_BARS;   // рекомендую 3
-        Deque<Double> closesDq = s.closes;
-        if (closesDq == null || closesDq.size() < win) {
+        if (s.closes.size() < win) {
             return false;
         }
 
-        double[] prices = lastN(closesDq, win);
-        if (prices.length < win) {
-            return false;
-        }
+        DoubleSeries.Window prices = s.closes.window(win); // без копирования
 
-        double first = prices[0];
-        double last  = prices[prices.length - 1];
+        double first = prices.first();
+        double last  = prices.last();
 
         if (first <= 0.0) {
             return false;
         }
 
-        double max = max(prices);
-        double min = min(prices);
+        double max = prices.max();
+        double min = prices.min();
 
         // Импульс вверх / вниз от начала окна
         double swingUp   = (max - first) / first;
@@ -128,38 +124,4 @@ public final class PriceReversalFilter implements BaseFilter {
 
         return reversal;
     }
-
-    /**
-     * Берёт последние n значений из Deque в хронологическом порядке (старые → новые).
-     */
-    private static double[] lastN(Deque<Double> dq, int n) {
-        int size = dq.size();
-        int take = Math.min(n, size);
-
-        double[] out = new double[take];
-        // Преобразуем в массив, чтобы было удобно брать хвост
-        Double[] arr = dq.toArray(new Double[0]);
-        int start = size - take;
-
-        for (int i = 0; i < take; i++) {
-            out[i] = arr[start + i];
-        }
-        return out;
-    }
-
-    private static double max(double[] arr) {
-        double m = Double.NEGATIVE_INFINITY;
-        for (double v : arr) {
-            if (v > m) m = v;
-        }
-        return m;
-    }
-
-    private static double min(double[] arr) {
-        double m = Double.POSITIVE_INFINITY;
-        for (double v : arr) {
-            if (v < m) m = v;
-        }
-        return m;
-    }
 }
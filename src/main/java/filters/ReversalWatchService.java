@@ -4,6 +4,7 @@ import app.Settings;
 import log.FilterLog;
 import state.MarketSnapshot;
 import state.SymbolState;
+import store.SymbolTable;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -22,7 +23,7 @@ public final class ReversalWatchService {
     public static ReversalWatchService getInstance() { return INSTANCE; }
 
     private final Map<String, Watch> bySignal = new ConcurrentHashMap<>();
-    private final Map<String, List<String>> bySymbol = new ConcurrentHashMap<>();
+    private final SymbolTable<List<String>> bySymbol = new SymbolTable<>(); // по ID символа; пустой список — слежения нет
 
     private final PriceReversalFilter reversalFilter = new PriceReversalFilter();
 
@@ -72,9 +73,6 @@ public final class ReversalWatchService {
         List<String> ids = bySymbol.get(w.symbol);
         if (ids != null) {
             ids.remove(signalId);
-            if (ids.isEmpty()) {
-                bySymbol.remove(w.symbol);
-            }
         }
     }
 
@@ -88,7 +86,7 @@ public final class ReversalWatchService {
         List<String> ids = bySymbol.get(symbol);
         if (ids == null || ids.isEmpty()) return;
 
-        long now = System.currentTimeMillis();
+        long now = app.Clock.now();
 
         // копию делаем, чтобы можно было модифицировать список по ходу
         List<String> toCheck = new ArrayList<>(ids);
@@ -115,10 +113,7 @@ public final class ReversalWatchService {
                 w.done = true;
 
                 // цена на текущем баре (последний close)
-                double lastPrice = 0.0;
-                if (!s.closes.isEmpty()) {
-                    lastPrice = s.closes.getLast();
-                }
+                double lastPrice = s.closes.lastOr(0.0);
 
                 // добавляем снапшот REV_EXIT в статистику сигнала
                 stats.SignalStatsService.getInstance().addReversalSnapshot(
@@ -0,0 +1,6 @@
+package journal;
+
+/** Потребитель кадров при воспроизведении журнала. */
+public interface FrameHandler {
+    void onFrame(byte streamId, String payload) throws Exception;
+}
@@ -0,0 +1,248 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static journal.MarketJournal.*;
+
+/**
+ * Однопоточный писатель серии mmap-сегментов одного WS-шарда.
+ *
+ * Кадр кодируется в UTF-8 прямо в отображённый буфер (без промежуточного byte[]).
+ * Не влез в сегмент — переходим на следующий и пишем туда. Ошибки ввода-вывода
+ * не пробрасываются в поток сокета: запись просто считается пропущенной.
+ *
+ * Смена сегмента не делает системных вызовов на потоке сокета: следующий сегмент заранее
+ * создаёт и отображает фоновый поток журнала (flusher), он же сбрасывает на диск (force)
+ * законченный. Сегмент на потоке сокета открывается, только если запасной ещё не готов.
+ */
+public final class JournalAppender {
+
+    private final Path dir;
+    private final String stream;
+    private final byte streamId;
+    private final short shard;
+    private final long segmentBytes;
+    private final Executor flusher;
+
+    /** Отображённый сегмент с индексом. */
+    private static final class Segment {
+        final Path segPath;
+        final Path idxPath;
+        final MappedByteBuffer seg;
+        final MappedByteBuffer idx;
+
+        Segment(Path segPath, Path idxPath, MappedByteBuffer seg, MappedByteBuffer idx) {
+            this.segPath = segPath;
+            this.idxPath = idxPath;
+            this.seg = seg;
+            this.idx = idx;
+        }
+    }
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+    private MappedByteBuffer seg;
+    private MappedByteBuffer idx;
+    private long segRecords = 0;
+    private int idxEntries = 0;
+    private final AtomicInteger segSeq = new AtomicInteger(); // номер сегмента в серии (два за одну мс)
+    private final AtomicReference<Segment> spare = new AtomicReference<>(); // готовит flusher
+    private volatile boolean closed = false;
+
+    // метрики
+    private volatile long records = 0;
+    private volatile long bytes = 0;
+    private volatile long dropped = 0;
+
+    JournalAppender(Path dir, String stream, byte streamId, int shard, long segmentBytes, Executor flusher) {
+        this.dir = dir;
+        this.stream = stream;
+        this.streamId = streamId;
+        this.shard = (short) shard;
+        this.segmentBytes = segmentBytes;
+        this.flusher = flusher;
+        prepareSpare(); // и первый сегмент — не на потоке сокета
+    }
+
+    /** Дописать кадр. Вызывается из потока чтения сокета. */
+    public void append(long recvNanos, long wallMs, String payload) {
+        if (closed) return;
+        try {
+            if (seg == null) roll(wallMs);
+
+            if (!tryWrite(recvNanos, wallMs, payload)) {
+                // сегмент кончился — следующий
+                roll(wallMs);
+                if (!tryWrite(recvNanos, wallMs, payload)) {
+                    dropped++; // кадр больше целого сегмента
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            dropped++;
+        }
+    }
+
+    private boolean tryWrite(long recvNanos, long wallMs, String payload) {
+        int start = seg.position();
+        // UTF-8 не короче числа символов — заведомо не влезет
+        if (seg.remaining() < RECORD_HEADER + payload.length()) return false;
+
+        seg.position(start + RECORD_HEADER);
+        encoder.reset();
+        CoderResult cr = encoder.encode(CharBuffer.wrap(payload), seg, true);
+        if (cr.isOverflow() || encoder.flush(seg).isOverflow()) {
+            seg.position(start);
+            return false;
+        }
+        int end = seg.position();
+        int len = end - start - RECORD_HEADER;
+
+        seg.putInt(start, len);
+        seg.put(start + 4, streamId);
+        seg.put(start + 5, (byte) 0);
+        seg.putShort(start + 6, shard);
+        seg.putLong(start + 8, recvNanos);
+        seg.putLong(start + 16, wallMs);
+
+        // индекс: каждая INDEX_STRIDE-я запись
+        if (segRecords % INDEX_STRIDE == 0 && idxEntries < INDEX_CAPACITY) {
+            int o = idxEntries * INDEX_ENTRY;
+            idx.putLong(o, wallMs);
+            idx.putLong(o + 8, start);
+            idxEntries++;
+        }
+
+        segRecords++;
+        if (segRecords == 1) seg.putLong(HDR_FIRST_WALL, wallMs);
+        seg.putLong(HDR_LAST_WALL, wallMs);
+        seg.putLong(HDR_RECORDS, segRecords);
+        // writePos последним — читатель видит только целые записи
+        seg.putLong(HDR_WRITE_POS, end);
+
+        records++;
+        bytes += end - start;
+        return true;
+    }
+
+    private void roll(long wallMs) throws IOException {
+        finishSegment();
+
+        Segment next = spare.getAndSet(null);
+        if (next == null) next = open(wallMs); // flusher не успел — как раньше, здесь
+        seg = next.seg;
+        idx = next.idx;
+        seg.position(HEADER_SIZE);
+        segRecords = 0;
+        idxEntries = 0;
+        prepareSpare();
+    }
+
+    /** Новый сегмент: файлы, отображение и пустой заголовок. */
+    private Segment open(long createdMs) throws IOException {
+        String name = String.format("%s-%d-%d-%04d.seg", stream, shard, createdMs, segSeq.getAndIncrement());
+        Path segPath = dir.resolve(name);
+        Path idxPath = dir.resolve(name + ".idx");
+
+        MappedByteBuffer s;
+        MappedByteBuffer x;
+        try (FileChannel ch = FileChannel.open(segPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            s = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        try (FileChannel ch = FileChannel.open(idxPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            x = ch.map(FileChannel.MapMode.READ_WRITE, 0, (long) INDEX_CAPACITY * INDEX_ENTRY);
+        }
+
+        s.putInt(0, MAGIC);
+        s.putInt(4, VERSION);
+        s.putLong(HDR_CREATED, createdMs);
+        s.putLong(HDR_WRITE_POS, HEADER_SIZE);
+        s.putLong(HDR_FIRST_WALL, 0L);
+        s.putLong(HDR_LAST_WALL, 0L);
+        s.putLong(HDR_RECORDS, 0L);
+        return new Segment(segPath, idxPath, s, x);
+    }
+
+    /** Попросить flusher заранее открыть следующий сегмент. */
+    private void prepareSpare() {
+        submit(() -> {
+            if (closed || spare.get() != null) return;
+            try {
+                Segment s = open(System.currentTimeMillis());
+                if (!spare.compareAndSet(null, s)) {
+                    discard(s); // поток сокета успел открыть свой, а запасной уже есть
+                } else if (closed && spare.compareAndSet(s, null)) {
+                    discard(s); // close() прошёл, пока открывали
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[Journal] " + stream + "-" + shard + " spare segment: " + e.getMessage());
+            }
+        });
+    }
+
+    /** Сбросить законченный сегмент на диск — на потоке flusher. */
+    private void finishSegment() {
+        MappedByteBuffer s = seg;
+        MappedByteBuffer x = idx;
+        seg = null;
+        idx = null;
+        if (s == null && x == null) return;
+        submit(() -> force(s, x));
+    }
+
+    private void submit(Runnable task) {
+        try {
+            flusher.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run(); // журнал закрыт — доделываем сами
+        }
+    }
+
+    private static void force(MappedByteBuffer s, MappedByteBuffer x) {
+        if (s != null) {
+            try { s.force(); } catch (Exception ignored) {}
+        }
+        if (x != null) {
+            try { x.force(); } catch (Exception ignored) {}
+        }
+    }
+
+    /** Неиспользованный запасной сегмент: файлы удаляются (отображение уйдёт с буфером). */
+    private static void discard(Segment s) {
+        try {
+            Files.deleteIfExists(s.segPath);
+            Files.deleteIfExists(s.idxPath);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /** Закрыть писатель (сбросить страницы на диск). Вызывать после остановки сокета. */
+    public void close() {
+        closed = true;
+        MappedByteBuffer s = seg;
+        MappedByteBuffer x = idx;
+        seg = null;
+        idx = null;
+        force(s, x);
+        Segment unused = spare.getAndSet(null);
+        if (unused != null) discard(unused);
+    }
+
+    long records() { return records; }
+    long bytes() { return bytes; }
+    long dropped() { return dropped; }
+}
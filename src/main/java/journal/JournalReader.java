@@ -0,0 +1,147 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static journal.MarketJournal.*;
+
+/**
+ * Последовательное чтение одной серии сегментов (один поток-шард) в порядке записи.
+ * Читает только до writePos из заголовка, так что недописанный хвост живого сегмента не виден.
+ */
+public final class JournalReader {
+
+    private final String name;
+    private final List<Path> segments;
+    private int segIndex = -1;
+
+    private MappedByteBuffer buf;
+    private long limit;
+    private int pos;
+
+    // текущая запись
+    private byte streamId;
+    private int shard;
+    private long recvNanos;
+    private long wallMs;
+    private byte[] payload = new byte[8192];
+    private int payloadLen;
+
+    JournalReader(String name, List<Path> segments) {
+        this.name = name;
+        this.segments = segments;
+    }
+
+    /** Все серии каталога: файлы {stream}-{shard}-*.seg группируются по префиксу и сортируются по имени. */
+    public static List<JournalReader> openAll(Path dir) throws IOException {
+        Map<String, List<Path>> series = new TreeMap<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(f -> f.getFileName().toString().endsWith(".seg"))
+                    .sorted()
+                    .forEach(f -> {
+                        String n = f.getFileName().toString();
+                        int second = n.indexOf('-', n.indexOf('-') + 1);
+                        series.computeIfAbsent(n.substring(0, second), k -> new ArrayList<>()).add(f);
+                    });
+        }
+        List<JournalReader> out = new ArrayList<>();
+        series.forEach((k, v) -> out.add(new JournalReader(k, v)));
+        return out;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Встать перед первой записью с wallMs >= fromMs (с точностью до шага индекса):
+     * целые сегменты пропускаются по заголовку, внутри сегмента — по .idx.
+     */
+    void seek(long fromMs) throws IOException {
+        if (fromMs <= 0) return;
+        while (openNextSegment()) {
+            boolean last = segIndex == segments.size() - 1;
+            if (buf.getLong(HDR_LAST_WALL) >= fromMs || last) {
+                pos = indexedOffset(segments.get(segIndex), fromMs);
+                return;
+            }
+        }
+    }
+
+    private int indexedOffset(Path seg, long fromMs) throws IOException {
+        Path idx = seg.resolveSibling(seg.getFileName() + ".idx");
+        if (!Files.exists(idx)) return HEADER_SIZE;
+        int best = HEADER_SIZE;
+        try (FileChannel ch = FileChannel.open(idx)) {
+            MappedByteBuffer ib = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            for (int o = 0; o + INDEX_ENTRY <= ib.limit(); o += INDEX_ENTRY) {
+                long ts = ib.getLong(o);
+                long off = ib.getLong(o + 8);
+                if (off == 0 || ts >= fromMs) break; // off == 0 — пустой хвост индекса
+                best = (int) off;
+            }
+        }
+        return best;
+    }
+
+    private boolean openNextSegment() throws IOException {
+        buf = null;
+        while (++segIndex < segments.size()) {
+            try (FileChannel ch = FileChannel.open(segments.get(segIndex))) {
+                if (ch.size() < HEADER_SIZE) continue;
+                MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                if (b.getInt(0) != MAGIC || b.getInt(4) != VERSION) {
+                    System.err.println("[Journal] skip " + segments.get(segIndex).getFileName() + ": bad header");
+                    continue;
+                }
+                buf = b;
+                limit = Math.min(b.getLong(HDR_WRITE_POS), ch.size());
+                pos = HEADER_SIZE;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Следующая запись; false — серия закончилась. */
+    public boolean next() throws IOException {
+        while (true) {
+            if (buf == null || pos + RECORD_HEADER > limit) {
+                if (!openNextSegment()) return false;
+                continue;
+            }
+            int len = buf.getInt(pos);
+            if (len < 0 || pos + RECORD_HEADER + (long) len > limit) {
+                pos = (int) limit; // битая запись — остаток сегмента пропускаем
+                continue;
+            }
+            streamId = buf.get(pos + 4);
+            shard = buf.getShort(pos + 6);
+            recvNanos = buf.getLong(pos + 8);
+            wallMs = buf.getLong(pos + 16);
+            if (payload.length < len) payload = new byte[Math.max(len, payload.length * 2)];
+            buf.get(pos + RECORD_HEADER, payload, 0, len);
+            payloadLen = len;
+            pos += RECORD_HEADER + len;
+            return true;
+        }
+    }
+
+    public byte streamId() { return streamId; }
+    public int shard() { return shard; }
+    public long recvNanos() { return recvNanos; }
+    public long wallMs() { return wallMs; }
+
+    public String payload() {
+        return new String(payload, 0, payloadLen, StandardCharsets.UTF_8);
+    }
+}
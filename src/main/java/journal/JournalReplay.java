@@ -0,0 +1,65 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Слияние всех серий журнала в один поток кадров по времени приёма (wallMs).
+ * Окно [fromMs, toMs]; 0 — без ограничения.
+ */
+public final class JournalReplay {
+
+    private final PriorityQueue<JournalReader> heap =
+            new PriorityQueue<>(Comparator.comparingLong(JournalReader::wallMs));
+    private final long toMs;
+    private final int series;
+    private JournalReader current;
+
+    private JournalReplay(long toMs, int series) {
+        this.toMs = toMs;
+        this.series = series;
+    }
+
+    public static JournalReplay open(Path dir, long fromMs, long toMs) throws IOException {
+        List<JournalReader> readers = JournalReader.openAll(dir);
+        JournalReplay r = new JournalReplay(toMs, readers.size());
+        for (JournalReader reader : readers) {
+            reader.seek(fromMs);
+            boolean has;
+            do {
+                has = reader.next();
+            } while (has && reader.wallMs() < fromMs);
+            if (has) r.heap.add(reader);
+        }
+        return r;
+    }
+
+    public int seriesCount() {
+        return series;
+    }
+
+    /** Время первого кадра (до первого next()); 0 — журнал пуст. */
+    public long firstWallMs() {
+        JournalReader head = heap.peek();
+        return head != null ? head.wallMs() : 0L;
+    }
+
+    public boolean next() throws IOException {
+        if (current != null && current.next()) heap.add(current);
+        current = heap.poll();
+        if (current == null) return false;
+        if (toMs > 0 && current.wallMs() > toMs) {
+            heap.clear();
+            current = null;
+            return false;
+        }
+        return true;
+    }
+
+    public byte streamId() { return current.streamId(); }
+    public long wallMs() { return current.wallMs(); }
+    public String payload() { return current.payload(); }
+}
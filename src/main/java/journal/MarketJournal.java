@@ -0,0 +1,126 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Журнал сырых рыночных кадров: всё, что пришло из WebSocket, как есть.
+ *
+ * Каждый писатель (WS-шард) пишет в свою серию сегментов фиксированного размера,
+ * отображённых в память (append-only). Запись — это копирование байт в mmap на потоке
+ * чтения сокета, без очередей и без системных вызовов на каждый кадр. Дорогое при смене
+ * сегмента — создание и отображение следующего, force() законченного — делает один общий
+ * фоновый поток журнала (journal-flusher).
+ *
+ * Формат сегмента ({stream}-{shard}-{createdMs}-{seq}.seg):
+ * <pre>
+ *   header (64 байта):
+ *     int   magic      'BBJ1'
+ *     int   version
+ *     long  createdMs
+ *     long  writePos   — конец последней целиком записанной записи
+ *     long  firstWallMs
+ *     long  lastWallMs
+ *     long  records
+ *   record:
+ *     int   payloadLen
+ *     byte  streamId
+ *     byte  reserved
+ *     short shard
+ *     long  recvNanos   — System.nanoTime() в момент приёма
+ *     long  wallMs      — System.currentTimeMillis() в момент приёма
+ *     byte[payloadLen] UTF-8 кадр
+ * </pre>
+ * Рядом лежит индекс {segment}.idx: пары (wallMs, offset) на каждую INDEX_STRIDE-ю запись.
+ */
+public final class MarketJournal implements AutoCloseable {
+
+    static final int MAGIC = 0x42424A31; // 'BBJ1'
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+    static final int HDR_CREATED = 8;
+    static final int HDR_WRITE_POS = 16;
+    static final int HDR_FIRST_WALL = 24;
+    static final int HDR_LAST_WALL = 32;
+    static final int HDR_RECORDS = 40;
+
+    static final int RECORD_HEADER = 24;
+
+    static final int INDEX_STRIDE = 256;
+    static final int INDEX_ENTRY = 16;
+    static final int INDEX_CAPACITY = 65_536; // записей индекса на сегмент
+
+    // === идентификаторы потоков ===
+    public static final byte TRADES = 1;
+    public static final byte KLINES = 2;
+    public static final byte TICKERS = 3;
+    public static final byte LIQUIDATIONS = 4;
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final List<JournalAppender> appenders = new CopyOnWriteArrayList<>();
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "journal-flusher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public MarketJournal(Path dir, long segmentBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+    }
+
+    public Path dir() {
+        return dir;
+    }
+
+    /** Новый писатель для одного потока-шарда. Писатель однопоточный. */
+    public JournalAppender appender(String stream, int shard) {
+        JournalAppender a = new JournalAppender(dir, stream, streamId(stream), shard, segmentBytes, flusher);
+        appenders.add(a);
+        return a;
+    }
+
+    public static byte streamId(String stream) {
+        return switch (stream) {
+            case "trades" -> TRADES;
+            case "klines" -> KLINES;
+            case "tickers" -> TICKERS;
+            case "liquidations" -> LIQUIDATIONS;
+            default -> 0;
+        };
+    }
+
+    /** Сводка для status: записей, байт, пропущено. */
+    public String summary() {
+        long records = 0, bytes = 0, dropped = 0;
+        for (JournalAppender a : appenders) {
+            records += a.records();
+            bytes += a.bytes();
+            dropped += a.dropped();
+        }
+        return String.format("[Journal] %s | writers=%d records=%d bytes=%.1f MB dropped=%d",
+                dir, appenders.size(), records, bytes / 1e6, dropped);
+    }
+
+    @Override
+    public void close() {
+        for (JournalAppender a : appenders) a.close();
+        flusher.shutdown(); // дописать на диск уже сданные сегменты
+        try {
+            if (!flusher.awaitTermination(10, TimeUnit.SECONDS)) {
+                System.err.println("[Journal] flusher did not finish in 10s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
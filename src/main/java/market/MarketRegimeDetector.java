@@ -6,8 +6,6 @@ import state.SymbolState;
 
 import static app.Settings.*;
 
-import java.util.Iterator;
-
 public class MarketRegimeDetector {
 
     private final PumpLiquidityAnalyzer analyzer;
@@ -50,12 +48,8 @@ public class MarketRegimeDetector {
 
     private static double computeSlope(SymbolState s, int bars) {
         if (s.closes.size() < bars) return 0.0;
-        Iterator<Double> it = s.closes.descendingIterator();
-        double last = it.next();
-        double prev = last;
-        for (int i = 1; i < bars && it.hasNext(); i++) {
-            prev = it.next();
-        }
+        double last = s.closes.fromEnd(0);
+        double prev = s.closes.fromEnd(Math.max(0, bars - 1));
         if (prev <= 0) return 0.0;
         // относительное изменение за окно
         return (last / prev) - 1.0;
@@ -63,9 +57,8 @@ public class MarketRegimeDetector {
 
     private static double currentVoltRel(SymbolState s) {
         if (s.closes.size() < 2) return 1.0;
-        Iterator<Double> it = s.closes.descendingIterator();
-        double last = it.next();
-        double prev = it.next();
+        double last = s.closes.fromEnd(0);
+        double prev = s.closes.fromEnd(1);
         double volt = Math.abs(last / prev - 1.0);
         return (s.avgVolatility > 0) ? (volt / s.avgVolatility) : 1.0;
     }
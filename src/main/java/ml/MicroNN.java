@@ -15,11 +15,11 @@ public final class MicroNN {
     public static double predict(SymbolState s, boolean isLong) {
         double price = s.lastPrice;
 
-        double volNow = (s.volumes.peekLast() != null) ? s.volumes.peekLast() : 0.0;
+        double volNow = s.volumes.lastOr(0.0);
         double avgVol = Math.max(s.avgVolUsd, 1.0);
         double volX = volNow / avgVol;
 
-        double oiNow = (s.oiList.peekLast() != null) ? s.oiList.peekLast() : 0.0;
+        double oiNow = s.oiList.lastOr(0.0);
         double avgOi = Math.max(s.avgOiUsd, 1.0);
         double oiX = oiNow / avgOi;
 
@@ -31,9 +31,8 @@ public final class MicroNN {
 
         double volt = 0.0;
         if (s.closes.size() >= 2) {
-            var it = s.closes.descendingIterator();
-            double last = it.next();
-            double prev = it.next();
+            double last = s.closes.fromEnd(0);
+            double prev = s.closes.fromEnd(1);
             volt = Math.abs(last / prev - 1.0);
         }
         double voltRel = (s.avgVolatility > 0) ? (volt / s.avgVolatility) : 1.0;
@@ -4,7 +4,9 @@ public class CoinInfo {
     public String symbol;
     public volatile double lastPrice = 0;
     public volatile double openInterest = 0;
+    public volatile long openInterestTs = 0; // биржевое время значения openInterest (ms)
     public volatile double fundingRate = 0;
+    public volatile double turnover24h = 0; // оборот за 24 ч, USD (из тикера)
     public long updatedAt = System.currentTimeMillis();
 }
 
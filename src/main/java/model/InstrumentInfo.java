@@ -0,0 +1,23 @@
+package model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Параметры инструмента из /v5/market/instruments-info (category=linear).
+ * Публичные поля — так же сериализуется в кэш каталога.
+ */
+public class InstrumentInfo {
+    public String symbol;
+    public String status;        // Trading / PreLaunch / Settling / Delivering / Closed
+    public String contractType;  // LinearPerpetual / LinearFutures
+    public String quoteCoin;
+    public double tickSize;
+    public double qtyStep;
+    public double minOrderQty;
+    public long launchTime;      // ms
+
+    @JsonIgnore
+    public boolean isTrading() {
+        return "Trading".equals(status);
+    }
+}
@@ -0,0 +1,296 @@
+package net;
+
+import app.Settings;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Общий сетевой слой Bybit: один OkHttpClient (пул соединений и диспетчер — и для REST, и для WS)
+ * и один ограничитель частоты на все REST-запросы процесса.
+ *
+ * Ограничитель — токен-бакеты: общий на IP (Bybit: 600 запросов за 5 с на IP для публичных
+ * эндпоинтов) и по эндпоинту (http.endpoint.limits), чтобы массовая загрузка одного
+ * эндпоинта не съедала весь лимит. Запрос ждёт токен в обоих бакетах.
+ *
+ * Приоритеты: когда токенов мало, запрос уступает ожидающим запросам более высокого приоритета
+ * (берёт общий токен, только если после этого останется по токену на каждого из них).
+ * Живой OI идёт раньше точечной дозагрузки, а та — раньше массового прогрева.
+ *
+ * Сигналы биржи: X-Bapi-Limit-Status ≤ 1 ставит эндпоинт на паузу до X-Bapi-Limit-Reset-Timestamp,
+ * HTTP 429/403 и retCode 10006 — весь IP-бакет (бан по IP общий для всех эндпоинтов).
+ */
+public final class BybitHttp {
+
+    /** Порядок = приоритет: меньший ordinal обслуживается первым. */
+    public enum Priority { LIVE, NORMAL, BACKFILL }
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int RET_TOO_MANY_VISITS = 10006;
+
+    private static final OkHttpClient CLIENT = createClient();
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final Object lock = new Object();
+    private static final Bucket ipBucket = new Bucket(Settings.HTTP_IP_REQUESTS_PER_SEC, Settings.HTTP_IP_BURST);
+    private static final Map<String, Bucket> endpointBuckets = new ConcurrentHashMap<>();
+    private static final int[] waiting = new int[Priority.values().length]; // под lock
+
+    // метрики
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static final AtomicInteger maxInFlight = new AtomicInteger();
+    private static final LongAdder[] requests = newAdders();
+    private static final LongAdder[] waitNanos = newAdders();
+    private static final LongAdder throttled = new LongAdder();
+    private static final LongAdder failures = new LongAdder();
+    private static final AtomicLong ipPausedUntilMs = new AtomicLong();
+
+    static {
+        for (String item : Settings.HTTP_ENDPOINT_LIMITS.split(",")) {
+            int colon = item.lastIndexOf(':');
+            if (colon <= 0) continue;
+            String path = item.substring(0, colon).trim();
+            try {
+                double rps = Double.parseDouble(item.substring(colon + 1).trim());
+                endpointBuckets.put(path, new Bucket(rps, Math.max(1.0, rps)));
+            } catch (NumberFormatException e) {
+                System.err.println("[HTTP] bad endpoint limit: " + item);
+            }
+        }
+    }
+
+    private BybitHttp() {
+    }
+
+    private static OkHttpClient createClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(128);
+        dispatcher.setMaxRequestsPerHost(64); // WS-шарды и REST-загрузчики — на один хост
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(32, 5, TimeUnit.MINUTES))
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .build();
+    }
+
+    private static LongAdder[] newAdders() {
+        LongAdder[] a = new LongAdder[Priority.values().length];
+        for (int i = 0; i < a.length; i++) a[i] = new LongAdder();
+        return a;
+    }
+
+    /** Общий клиент (WebSocket-шарды тоже открываются через него). */
+    public static OkHttpClient client() {
+        return CLIENT;
+    }
+
+    // ==================== запросы ====================
+
+    /**
+     * Выполнить запрос после получения токенов. Ответ закрывает вызывающий.
+     * Заголовки лимита и 429/403 учитываются здесь; повторы — на стороне вызывающего.
+     */
+    public static Response execute(Request req, Priority priority) throws IOException, InterruptedException {
+        String endpoint = req.url().encodedPath();
+        acquire(endpoint, priority);
+
+        int now = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(now, Math::max);
+        try {
+            Response resp = CLIENT.newCall(req).execute();
+            observe(endpoint, resp);
+            return resp;
+        } catch (IOException e) {
+            failures.increment();
+            throw e;
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * GET с разбором JSON: повторяет при 429/403/retCode 10006 (после паузы бакета),
+     * бросает исключение при прочих ошибках HTTP и retCode != 0.
+     *
+     * @return корень ответа
+     */
+    public static JsonNode getJson(String url, Priority priority) throws IOException, InterruptedException {
+        Request req = new Request.Builder().url(url).build();
+        for (int attempt = 1; ; attempt++) {
+            try (Response resp = execute(req, priority)) {
+                if (resp.code() == 429 || resp.code() == 403) {
+                    if (attempt < MAX_ATTEMPTS) continue;
+                    throw new IOException("HTTP " + resp.code() + " (rate limited)");
+                }
+                if (!resp.isSuccessful() || resp.body() == null) {
+                    throw new IOException("HTTP " + resp.code());
+                }
+                JsonNode root = mapper.readTree(resp.body().byteStream());
+                int ret = root.path("retCode").asInt(-1);
+                if (ret == RET_TOO_MANY_VISITS) {
+                    pauseIp(resetAt(resp, 1_000L * attempt));
+                    if (attempt < MAX_ATTEMPTS) continue;
+                }
+                if (ret != 0) {
+                    throw new IOException("retCode=" + ret + " " + root.path("retMsg").asText());
+                }
+                return root;
+            }
+        }
+    }
+
+    // ==================== токены ====================
+
+    private static final class Bucket {
+        final double ratePerNano;
+        final double capacity;
+        double tokens;
+        long refilledAt = System.nanoTime();
+        long pausedUntilNanos = 0;
+
+        Bucket(double perSec, double capacity) {
+            this.ratePerNano = Math.max(0.1, perSec) / 1e9;
+            this.capacity = Math.max(1.0, capacity);
+            this.tokens = this.capacity;
+        }
+
+        void refill(long now) {
+            if (now > refilledAt) {
+                tokens = Math.min(capacity, tokens + (now - refilledAt) * ratePerNano);
+                refilledAt = now;
+            }
+        }
+
+        /** Через сколько нс будет need токенов (с учётом паузы). */
+        long nanosUntil(double need, long now) {
+            long pause = Math.max(0, pausedUntilNanos - now);
+            double missing = need - tokens;
+            long refill = missing > 0 ? (long) Math.ceil(missing / ratePerNano) : 0;
+            return Math.max(pause, refill);
+        }
+    }
+
+    private static void acquire(String endpoint, Priority priority) throws InterruptedException {
+        Bucket ep = endpointBuckets.get(endpoint);
+        int p = priority.ordinal();
+        long t0 = System.nanoTime();
+        synchronized (lock) {
+            waiting[p]++;
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    ipBucket.refill(now);
+                    if (ep != null) ep.refill(now);
+
+                    int higher = 0;
+                    for (int q = 0; q < p; q++) higher += waiting[q];
+
+                    long waitIp = ipBucket.nanosUntil(1.0 + higher, now);
+                    long waitEp = ep != null ? ep.nanosUntil(1.0, now) : 0L;
+                    if (waitIp == 0 && waitEp == 0) {
+                        ipBucket.tokens -= 1.0;
+                        if (ep != null) ep.tokens -= 1.0;
+                        break;
+                    }
+                    long waitNs = Math.max(waitIp, waitEp);
+                    TimeUnit.NANOSECONDS.timedWait(lock, Math.max(100_000L, waitNs));
+                }
+            } finally {
+                waiting[p]--;
+                lock.notifyAll(); // уступали нам — пусть пересчитают
+            }
+        }
+        requests[p].increment();
+        waitNanos[p].add(System.nanoTime() - t0);
+    }
+
+    private static void observe(String endpoint, Response resp) {
+        if (resp.code() == 429 || resp.code() == 403) {
+            throttled.increment();
+            pauseIp(resetAt(resp, retryAfterMs(resp)));
+            return;
+        }
+        String left = resp.header("X-Bapi-Limit-Status");
+        if (left == null) return;
+        try {
+            if (Integer.parseInt(left.trim()) <= 1) {
+                throttled.increment();
+                pauseEndpoint(endpoint, resetAt(resp, 1_000L));
+            }
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    private static void pauseIp(long untilWallMs) {
+        ipPausedUntilMs.accumulateAndGet(untilWallMs, Math::max);
+        pause(ipBucket, untilWallMs);
+    }
+
+    private static void pauseEndpoint(String endpoint, long untilWallMs) {
+        Bucket ep = endpointBuckets.computeIfAbsent(endpoint,
+                k -> new Bucket(Settings.HTTP_IP_REQUESTS_PER_SEC, Settings.HTTP_IP_BURST));
+        pause(ep, untilWallMs);
+    }
+
+    private static void pause(Bucket b, long untilWallMs) {
+        long delayNanos = (untilWallMs - System.currentTimeMillis()) * 1_000_000L;
+        if (delayNanos <= 0) return;
+        synchronized (lock) {
+            b.pausedUntilNanos = Math.max(b.pausedUntilNanos, System.nanoTime() + delayNanos);
+        }
+    }
+
+    private static long resetAt(Response resp, long fallbackDelayMs) {
+        String h = resp.header("X-Bapi-Limit-Reset-Timestamp");
+        if (h != null) {
+            try {
+                return Long.parseLong(h.trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return System.currentTimeMillis() + fallbackDelayMs;
+    }
+
+    private static long retryAfterMs(Response resp) {
+        String h = resp.header("Retry-After");
+        if (h == null) return 5_000L;
+        try {
+            return Math.max(1_000L, Long.parseLong(h.trim()) * 1000L);
+        } catch (NumberFormatException e) {
+            return 5_000L;
+        }
+    }
+
+    // ==================== метрики ====================
+
+    public static String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Priority p : Priority.values()) {
+            long n = requests[p.ordinal()].sum();
+            double avgWaitMs = n > 0 ? waitNanos[p.ordinal()].sum() / 1e6 / n : 0.0;
+            int queued;
+            synchronized (lock) {
+                queued = waiting[p.ordinal()];
+            }
+            sb.append(String.format(" %s=%d (queued %d, avg wait %.1f ms)", p, n, queued, avgWaitMs));
+        }
+        long pausedMs = ipPausedUntilMs.get() - System.currentTimeMillis();
+        return String.format("[HTTP] inFlight=%d (max %d),%s, throttled=%d, io errors=%d%s | pool idle=%d total=%d",
+                inFlight.get(), maxInFlight.get(), sb, throttled.sum(), failures.sum(),
+                pausedMs > 0 ? ", IP paused " + pausedMs + " ms" : "",
+                CLIENT.connectionPool().idleConnectionCount(), CLIENT.connectionPool().connectionCount());
+    }
+}
@@ -0,0 +1,446 @@
+package net;
+
+import app.Settings;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import core.MarketEventSink;
+import model.CoinInfo;
+import store.MarketDataStore;
+import store.SymbolRegistry;
+import store.TickerStore;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Потоковый (tree-free) декодер кадров Bybit v5: publicTrade / kline / tickers.
+ *
+ * Вместо mapper.readTree(...) идём по токенам JsonParser и складываем нужные поля
+ * (topic, s, S, p, v, T, i, start, open/high/low/close, turnover, confirm, openInterestValue,
+ * fundingRate, turnover24h)
+ * сразу в примитивы и отдаём в {@link MarketEventSink} (анализатор или конвейер).
+ * Числа у Bybit приходят строками — парсим их прямо из char[] парсера,
+ * без промежуточных String. Символ из topic берём по последней точке, без split.
+ *
+ * Экземпляр НЕ потокобезопасен: один декодер на один WebSocket-листенер
+ * (OkHttp читает сокет одним потоком).
+ */
+final class BybitStreamDecoder {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final MarketEventSink sink;
+    private final KlineBackfill backfill; // null — без контроля пропусков баров
+
+    // кэш последнего символа: в одном publicTrade-кадре все сделки по одной монете
+    private String lastSymbol = "";
+
+    // пачка сделок текущего кадра (переиспользуемые буферы)
+    private String batchSymbol = null;
+    private boolean[] batchBuy = new boolean[64];
+    private double[] batchPrice = new double[64]; // для TradeBars
+    private double[] batchUsd = new double[64];
+    private long[] batchTs = new long[64];
+    private long[] batchId = new long[64]; // хэши ID сделок для TradeDedup
+    private int batchCount = 0;
+
+    BybitStreamDecoder(MarketEventSink sink) {
+        this(sink, null);
+    }
+
+    BybitStreamDecoder(MarketEventSink sink, KlineBackfill backfill) {
+        this.sink = sink;
+        this.backfill = backfill;
+    }
+
+    // ===== publicTrade =====
+
+    void onTradeFrame(String text) throws IOException {
+        try (JsonParser p = FACTORY.createParser(text)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return;
+
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken t = p.nextToken();
+
+                if ("topic".equals(field)) {
+                    if (!textStartsWith(p, "publicTrade")) return;
+                } else if ("data".equals(field) && t == JsonToken.START_ARRAY) {
+                    while (p.nextToken() == JsonToken.START_OBJECT) {
+                        readTrade(p);
+                    }
+                } else {
+                    p.skipChildren();
+                }
+            }
+        } finally {
+            flushTrades();
+        }
+    }
+
+    private void readTrade(JsonParser p) throws IOException {
+        String symbol = null;
+        boolean isBuy = false;
+        double price = 0.0;
+        double size = 0.0;
+        long ts = 0L;
+        long id = 0L;
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken v = p.nextToken();
+            switch (field) {
+                case "s" -> symbol = symbolFromText(p, 0);
+                case "i" -> id = (v == JsonToken.VALUE_STRING && p.getTextLength() > 0)
+                        ? TradeDedup.hash(p.getTextCharacters(), p.getTextOffset(), p.getTextLength())
+                        : 0L;
+                case "S" -> isBuy = textEquals(p, "Buy");
+                case "p" -> price = parseDecimal(p);
+                case "v" -> size = parseDecimal(p);
+                case "T" -> ts = (v == JsonToken.VALUE_NUMBER_INT) ? p.getLongValue() : (long) parseDecimal(p);
+                default -> p.skipChildren();
+            }
+        }
+
+        if (symbol == null || symbol.isEmpty() || price <= 0 || size <= 0) return;
+
+        // символ сменился внутри кадра — отдаём накопленное
+        if (batchSymbol != null && batchSymbol != symbol) flushTrades();
+        if (batchCount == batchUsd.length) growBatch();
+
+        batchSymbol = symbol;
+        batchBuy[batchCount] = isBuy;
+        batchPrice[batchCount] = price;
+        batchUsd[batchCount] = price * size;
+        batchTs[batchCount] = ts;
+        batchId[batchCount] = id;
+        batchCount++;
+    }
+
+    private void flushTrades() {
+        if (batchCount > 0 && Settings.TRADE_DEDUP_ENABLED) {
+            batchCount = TradeDedup.filter(batchSymbol, batchId, batchTs, batchBuy, batchPrice, batchUsd, batchCount);
+        }
+        if (batchCount > 0 && TradeBars.enabled()) {
+            // бары и сделки вместе: пачка на границе бара режется, сделки прошлого бара уходят до него
+            TradeBars.onTrades(sink, batchSymbol, batchBuy, batchPrice, batchUsd, batchTs, batchCount);
+        } else if (batchCount > 0) {
+            sink.onTrades(batchSymbol, batchBuy, batchUsd, batchTs, batchCount);
+        }
+        batchCount = 0;
+        batchSymbol = null;
+    }
+
+    private void growBatch() {
+        int n = batchUsd.length * 2;
+        batchBuy = Arrays.copyOf(batchBuy, n);
+        batchPrice = Arrays.copyOf(batchPrice, n);
+        batchUsd = Arrays.copyOf(batchUsd, n);
+        batchTs = Arrays.copyOf(batchTs, n);
+        batchId = Arrays.copyOf(batchId, n);
+    }
+
+    // ===== allLiquidation.{symbol} =====
+
+    /**
+     * Кадр allLiquidation: data — массив {T, s, S, v, p}; S=Buy — ликвидирован лонг.
+     * Пачка уходит в sink одним вызовом onLiquidations (буферы общие со сделками:
+     * декодер читает один поток).
+     *
+     * @return сколько ликвидаций отдано в sink
+     */
+    int onLiquidationFrame(String text) throws IOException {
+        int total = 0;
+        try (JsonParser p = FACTORY.createParser(text)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return 0;
+
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken t = p.nextToken();
+
+                if ("topic".equals(field)) {
+                    if (!textStartsWith(p, "allLiquidation")) return 0;
+                } else if ("data".equals(field) && t == JsonToken.START_ARRAY) {
+                    while (p.nextToken() == JsonToken.START_OBJECT) {
+                        total += readLiquidation(p);
+                    }
+                } else {
+                    p.skipChildren();
+                }
+            }
+        } finally {
+            flushLiquidations();
+        }
+        return total;
+    }
+
+    private int readLiquidation(JsonParser p) throws IOException {
+        String symbol = null;
+        boolean longSide = false;
+        double price = 0.0;
+        double size = 0.0;
+        long ts = 0L;
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken v = p.nextToken();
+            switch (field) {
+                case "s" -> symbol = symbolFromText(p, 0);
+                case "S" -> longSide = textEquals(p, "Buy");
+                case "p" -> price = parseDecimal(p);
+                case "v" -> size = parseDecimal(p);
+                case "T" -> ts = (v == JsonToken.VALUE_NUMBER_INT) ? p.getLongValue() : (long) parseDecimal(p);
+                default -> p.skipChildren();
+            }
+        }
+
+        if (symbol == null || symbol.isEmpty() || price <= 0 || size <= 0) return 0;
+
+        if (batchSymbol != null && batchSymbol != symbol) flushLiquidations();
+        if (batchCount == batchUsd.length) growBatch();
+
+        batchSymbol = symbol;
+        batchBuy[batchCount] = longSide;
+        batchUsd[batchCount] = price * size;
+        batchTs[batchCount] = ts;
+        batchCount++;
+        return 1;
+    }
+
+    private void flushLiquidations() {
+        if (batchCount > 0) {
+            sink.onLiquidations(batchSymbol, batchBuy, batchUsd, batchTs, batchCount);
+        }
+        batchCount = 0;
+        batchSymbol = null;
+    }
+
+    // ===== kline.1.{symbol} =====
+
+    void onKlineFrame(String text) throws IOException {
+        try (JsonParser p = FACTORY.createParser(text)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return;
+
+            String symbol = null;
+            boolean closed = false;
+            long start = 0L;
+            double open = 0.0;
+            double high = 0.0;
+            double low = 0.0;
+            double close = 0.0;
+            double volumeUsd = 0.0;
+
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken t = p.nextToken();
+
+                if ("topic".equals(field)) {
+                    if (!textStartsWith(p, "kline")) return;
+                    symbol = symbolFromTopic(p);
+                } else if ("data".equals(field) && t == JsonToken.START_ARRAY) {
+                    // как и раньше, берём первый бар кадра
+                    if (p.nextToken() == JsonToken.START_OBJECT) {
+                        while (p.nextToken() == JsonToken.FIELD_NAME) {
+                            String f = p.currentName();
+                            JsonToken v = p.nextToken();
+                            switch (f) {
+                                case "confirm" -> closed = (v == JsonToken.VALUE_TRUE);
+                                case "start" -> start = (v == JsonToken.VALUE_NUMBER_INT) ? p.getLongValue() : (long) parseDecimal(p);
+                                case "open" -> open = parseDecimal(p);
+                                case "high" -> high = parseDecimal(p);
+                                case "low" -> low = parseDecimal(p);
+                                case "close" -> close = parseDecimal(p);
+                                case "turnover" -> volumeUsd = parseDecimal(p);
+                                default -> p.skipChildren();
+                            }
+                        }
+                    }
+                    // остальные бары кадра пропускаем
+                    while (p.currentToken() != JsonToken.END_ARRAY && p.nextToken() != null) {
+                        p.skipChildren();
+                    }
+                } else {
+                    p.skipChildren();
+                }
+            }
+
+            if (symbol == null) return;
+            if (backfill != null) {
+                backfill.onKline(symbol, start, closed, close, volumeUsd, sink); // сначала готовые дозагруженные бары
+            } else if (closed) {
+                CoinInfo info = MarketDataStore.get(symbol);
+                if (info == null) return;
+                sink.onKline(symbol, close, volumeUsd, info.openInterest, info.fundingRate);
+            }
+            if (!closed && Settings.KLINE_PARTIAL_ENABLED && close > 0) {
+                sink.onKlinePartial(symbol, start, open, high, low, close, volumeUsd);
+            }
+        }
+    }
+
+    // ===== tickers.{symbol} =====
+
+    /**
+     * Значения уходят в {@link TickerStore} (последнее значение + dirty-бит), а не в CoinInfo.
+     *
+     * @return символ, по которому пришло обновление (или null) — нужен клиенту для heartbeat-лога
+     */
+    String onTickerFrame(String text) throws IOException {
+        try (JsonParser p = FACTORY.createParser(text)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return null;
+
+            boolean isTicker = false;
+            String symbol = null;
+            double price = 0.0;
+            double oi = 0.0;
+            double funding = 0.0;
+            double turnover = 0.0;
+            long ts = 0L;
+
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken t = p.nextToken();
+
+                if ("topic".equals(field)) {
+                    if (!textStartsWith(p, "tickers")) return null;
+                    isTicker = true;
+                } else if ("ts".equals(field)) {
+                    ts = (t == JsonToken.VALUE_NUMBER_INT) ? p.getLongValue() : (long) parseDecimal(p);
+                } else if ("data".equals(field) && t == JsonToken.START_OBJECT) {
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        String f = p.currentName();
+                        p.nextToken();
+                        switch (f) {
+                            case "symbol" -> symbol = symbolFromText(p, 0);
+                            case "lastPrice" -> price = parseDecimal(p);
+                            case "openInterestValue" -> oi = parseDecimal(p);
+                            case "fundingRate" -> funding = parseDecimal(p);
+                            case "turnover24h" -> turnover = parseDecimal(p);
+                            default -> p.skipChildren();
+                        }
+                    }
+                } else {
+                    p.skipChildren();
+                }
+            }
+
+            if (!isTicker || symbol == null || symbol.isEmpty()) return null;
+
+            TickerStore.update(symbol, price, oi, funding, turnover, ts);
+            return symbol;
+        }
+    }
+
+    // ===== helpers: работа с char[] парсера без аллокаций =====
+
+    private static boolean textStartsWith(JsonParser p, String prefix) throws IOException {
+        char[] buf = p.getTextCharacters();
+        int off = p.getTextOffset();
+        int len = p.getTextLength();
+        if (len < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buf[off + i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static boolean textEquals(JsonParser p, String s) throws IOException {
+        return p.getTextLength() == s.length() && textStartsWith(p, s);
+    }
+
+    /** Символ — это всё после последней точки в topic (kline.1.BTCUSDT → BTCUSDT). */
+    private String symbolFromTopic(JsonParser p) throws IOException {
+        char[] buf = p.getTextCharacters();
+        int off = p.getTextOffset();
+        int len = p.getTextLength();
+        int dot = -1;
+        for (int i = len - 1; i >= 0; i--) {
+            if (buf[off + i] == '.') { dot = i; break; }
+        }
+        return symbolFromText(p, dot + 1);
+    }
+
+    /**
+     * String символа без аллокации: последний символ или канонический экземпляр из
+     * SymbolRegistry, найденный прямо по буферу парсера. Новая строка — только для
+     * незарегистрированного символа.
+     */
+    private String symbolFromText(JsonParser p, int from) throws IOException {
+        char[] buf = p.getTextCharacters();
+        int off = p.getTextOffset() + from;
+        int len = p.getTextLength() - from;
+
+        String last = lastSymbol;
+        if (last.length() == len) {
+            boolean same = true;
+            for (int i = 0; i < len; i++) {
+                if (buf[off + i] != last.charAt(i)) { same = false; break; }
+            }
+            if (same) return last;
+        }
+        int id = SymbolRegistry.idOf(buf, off, len);
+        String s = id >= 0 ? SymbolRegistry.symbol(id) : new String(buf, off, len);
+        lastSymbol = s;
+        return s;
+    }
+
+    /**
+     * Десятичное число из строкового токена ("16578.50", "-0.0001") без создания String.
+     * Мантисса до 18 значащих цифр → делим на точную степень десяти.
+     * Всё нестандартное (экспонента, длинные числа) отдаём Double.parseDouble.
+     */
+    static double parseDecimal(JsonParser p) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.VALUE_NUMBER_INT || t == JsonToken.VALUE_NUMBER_FLOAT) {
+            return p.getDoubleValue();
+        }
+        if (t != JsonToken.VALUE_STRING) return 0.0;
+        return parseDecimal(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+    }
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    static double parseDecimal(char[] buf, int off, int len) {
+        if (len == 0) return 0.0;
+
+        int i = off;
+        int end = off + len;
+        boolean neg = false;
+        if (buf[i] == '-') { neg = true; i++; }
+        else if (buf[i] == '+') { i++; }
+
+        long mant = 0;
+        int digits = 0;
+        int fracDigits = 0;
+        boolean dot = false;
+
+        for (; i < end; i++) {
+            char c = buf[i];
+            if (c >= '0' && c <= '9') {
+                if (digits == 0 && c == '0' && !dot) continue; // ведущие нули
+                if (++digits > 18) return fallback(buf, off, len);
+                mant = mant * 10 + (c - '0');
+                if (dot) fracDigits++;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                return fallback(buf, off, len);
+            }
+        }
+
+        double v = (fracDigits == 0) ? mant : mant / POW10[fracDigits];
+        return neg ? -v : v;
+    }
+
+    private static double fallback(char[] buf, int off, int len) {
+        try {
+            return Double.parseDouble(new String(buf, off, len));
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+}
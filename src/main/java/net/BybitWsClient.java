@@ -1,36 +1,69 @@
 package net;
 
+import app.Clock;
 import app.Settings;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import core.IngestPipeline;
+import core.MarketEventSink;
 import core.PumpLiquidityAnalyzer;
+import journal.FrameHandler;
+import journal.JournalAppender;
+import journal.MarketJournal;
 import model.CoinInfo;
 import okhttp3.*;
-import org.jetbrains.annotations.NotNull;
 import store.MarketDataStore;
+import store.TickerStore;
 
 import java.util.List;
-import java.util.concurrent.TimeUnit;
-
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WebSocket-клиент Bybit v5 public/linear.
+ *
+ * Каждый поток (trades / klines / tickers / liquidations) — это пул шардов {@link WsShardPool}:
+ * символы делятся на N сокетов, у каждого свой поток чтения OkHttp, свой реконнект и своя
+ * частота сообщений. Разбор кадров распределяется по ядрам, а обрыв стоит одного шарда.
+ */
 public class BybitWsClient {
-    private static int liqFailCount = 0;
-    private static long liqReconnectDelayMs = 5_000L;
-    private static final long LIQ_RECONNECT_DELAY_MAX_MS = 60_000L;
-    private static final int  LIQ_FAIL_MAX = 20; // после 20 подряд падений просто отключаемся
+    private static final long RECONNECT_DELAY_MS = 5_000L;
+    private static final long RECONNECT_DELAY_MAX_MS = 60_000L;
 
     private static final ObjectMapper mapper = new ObjectMapper();
-    private static final OkHttpClient client = new OkHttpClient();
 
-    private static WebSocket klineWS;
-    private static WebSocket tradeWS;
-    private static WebSocket liquidationWS;
-    private static WebSocket tickerWS;
+    private static volatile WsShardPool klinePool;
+    private static volatile WsShardPool tradePool;
+    private static volatile WsShardPool liquidationPool;
+    private static volatile WsShardPool tickerPool;
+
+    // Если задан — события идут в конвейер (свой продюсер на каждый шард), иначе прямо в анализатор
+    private static volatile IngestPipeline pipeline;
+
+    // Контроль пропусков минутных баров и REST-дозагрузка (создаётся в startKlines)
+    private static volatile KlineBackfill klineBackfill;
 
-    private static PumpLiquidityAnalyzer analyzerRef;
+    // start последнего бара из прогрева: первый живой бар сверяется с ним (дубль / пропуск)
+    private static volatile Map<String, Long> seededKlineStarts = Map.of();
+
+    // Если задан — каждый шард пишет сырые кадры в свой сегмент журнала
+    private static volatile MarketJournal journal;
 
-    private static final String WS_URL = "wss://stream.bybit.com/v5/public/linear";
     private static long lastHeartbeat = 0;
 
+    // Счётчики времени декодирования: дерево (readTree) vs потоковый парсер — для сравнения
+    private static final LongAdder treeFrames = new LongAdder();
+    private static final LongAdder treeNanos = new LongAdder();
+    private static final LongAdder streamFrames = new LongAdder();
+    private static final LongAdder streamNanos = new LongAdder();
+
+    // Здоровье потока ликвидаций: он редкий, поэтому тишина сама по себе не ошибка
+    private static final LongAdder liqFrames = new LongAdder();
+    private static final LongAdder liqEvents = new LongAdder();
+    private static final LongAdder liqDecodeErrors = new LongAdder();
+    private static final LongAdder liqRejected = new LongAdder();
+    private static volatile long lastLiquidationAtMs = 0;
+
     private static final java.util.concurrent.ScheduledExecutorService RECONNECT_EXEC =
             java.util.concurrent.Executors.newSingleThreadScheduledExecutor(r -> {
                 Thread t = new Thread(r, "ws-reconnect");
@@ -38,344 +71,443 @@ public class BybitWsClient {
                 return t;
             });
 
-    private static void scheduleReconnectKlines(PumpLiquidityAnalyzer analyzer) {
-        RECONNECT_EXEC.schedule(
-                () -> startKlines(analyzer),
-                5,
-                java.util.concurrent.TimeUnit.SECONDS
-        );
+    public static void usePipeline(IngestPipeline p) {
+        pipeline = p;
+    }
+
+    public static void useJournal(MarketJournal j) {
+        journal = j;
     }
 
-    private static WebSocket connect(WebSocketListener listener) {
-        Request req = new Request.Builder().url(WS_URL).build();
-        return client.newWebSocket(req, listener);
+    static JournalAppender journalFor(String stream, int shard) {
+        MarketJournal j = journal;
+        return j != null ? j.appender(stream, shard) : null;
     }
 
-    private static void subscribe(WebSocket ws, List<String> topics) {
+    private static MarketEventSink sinkFor(PumpLiquidityAnalyzer analyzer, String name) {
+        IngestPipeline p = pipeline;
+        return p != null ? p.newProducer(name) : analyzer;
+    }
+
+    static WebSocket connect(WebSocketListener listener) {
+        Request req = new Request.Builder().url(Settings.WS_URL).build();
+        return BybitHttp.client().newWebSocket(req, listener);
+    }
+
+    static void subscribe(WebSocket ws, List<String> topics) {
+        send(ws, "subscribe", topics);
+    }
+
+    static void unsubscribe(WebSocket ws, List<String> topics) {
+        send(ws, "unsubscribe", topics);
+    }
+
+    private static void send(WebSocket ws, String op, List<String> topics) {
         var args = mapper.createArrayNode();
         for (String t : topics) args.add(t);
         var root = mapper.createObjectNode();
-        root.put("op", "subscribe");
+        root.put("op", op);
         root.set("args", args);
         ws.send(root.toString());
     }
 
-    public static void startKlines(PumpLiquidityAnalyzer analyzer) {
-        analyzerRef = analyzer;
-        klineWS = connect(new WebSocketListener() {
-            @Override public void onOpen(@NotNull WebSocket ws, @NotNull Response r) {
-                List<String> topics = MarketDataStore.allSymbols().stream().map(s -> "kline.1." + s).toList();
-                for (int i = 0; i < topics.size(); i += 200) {
-                    subscribe(ws, topics.subList(i, Math.min(i + 200, topics.size())));
-                }
-                System.out.println("✅ WS klines subscribed (" + topics.size() + ")");
-            }
+    /**
+     * Досписать новые символы во все запущенные потоки (сверка каталога инструментов).
+     * При уровнях активности kline/trades решает {@link SubscriptionTiers} — сюда только тикеры.
+     */
+    public static void addSymbols(java.util.Collection<String> symbols) {
+        WsShardPool[] pools = Settings.SUBS_TIERS_ENABLED
+                ? new WsShardPool[]{tickerPool, liquidationPool}
+                : new WsShardPool[]{tickerPool, klinePool, tradePool, liquidationPool};
+        for (WsShardPool pool : pools) {
+            if (pool != null) pool.addSymbols(symbols);
+        }
+    }
 
-            @Override public void onMessage(@NotNull WebSocket webSocket, @NotNull String msg) {
-                try {
-                    JsonNode root = mapper.readTree(msg);
-                    if (!root.has("topic") || !root.get("topic").asText().startsWith("kline")) return;
+    /** Отписать символы, ушедшие из Trading, во всех запущенных потоках. */
+    public static void removeSymbols(java.util.Collection<String> symbols) {
+        for (WsShardPool pool : new WsShardPool[]{tickerPool, klinePool, tradePool, liquidationPool}) {
+            if (pool != null) pool.removeSymbols(symbols);
+        }
+    }
 
-                    JsonNode bar = root.path("data").get(0);
-                    if (bar == null) return;
+    // ===== уровни активности (SubscriptionTiers): kline и trades подписываются на ходу =====
 
-                    boolean closed = bar.path("confirm").asBoolean(false);
-                    if (!closed) return;
+    static void addKlineSymbols(java.util.Collection<String> symbols) {
+        WsShardPool p = klinePool;
+        if (p != null) p.addSymbols(symbols);
+    }
 
-                    String symbol = root.get("topic").asText().split("\\.")[2];
+    static void removeKlineSymbols(java.util.Collection<String> symbols) {
+        WsShardPool p = klinePool;
+        if (p != null) p.removeSymbols(symbols);
+    }
 
-                    double close = bar.path("close").asDouble(0.0);
-                    double volumeUsd = bar.path("turnover").asDouble(0.0);
+    static void addTradeSymbols(java.util.Collection<String> symbols) {
+        WsShardPool p = tradePool;
+        if (p != null) p.addSymbols(symbols);
+    }
 
-                    CoinInfo info = MarketDataStore.get(symbol);
-                    if (info == null) return;
+    static void removeTradeSymbols(java.util.Collection<String> symbols) {
+        WsShardPool p = tradePool;
+        if (p != null) p.removeSymbols(symbols);
+    }
 
-                    analyzer.onKline(symbol, close, volumeUsd, info.openInterest, info.fundingRate);
+    /** Start последнего бара, засеянного в анализатор уже после старта потоков. */
+    static void seedKlineStart(String symbol, long lastStart) {
+        KlineBackfill b = klineBackfill;
+        if (b != null) b.seed(symbol, lastStart);
+    }
 
-                } catch (Exception ignore) {}
-            }
-            public void onFailure(@NotNull WebSocket ws, @NotNull Throwable t, Response r) {
-                System.err.println("[WS Klines Failure] " + t.getMessage());
-                klineWS = null;
-                scheduleReconnectKlines("failure");
-            }
+    /**
+     * @param tiered поток под управлением уровней активности: шарды считаются по всей вселенной,
+     *               но сразу ничего не подписывается
+     */
+    private static WsShardPool newPool(String stream, String topicPrefix, int shards,
+                                       java.util.function.Supplier<WsShard.Handler> handlers,
+                                       int maxFails, boolean tiered) {
+        return newPool(stream, topicPrefix, shards, handlers, maxFails, tiered,
+                RECONNECT_DELAY_MS, RECONNECT_DELAY_MAX_MS);
+    }
 
-            @Override
-            public void onClosed(@NotNull WebSocket ws, int code, @NotNull String reason) {
-                System.err.println("[WS Klines Closed] " + code + " " + reason);
-                klineWS = null;
-                scheduleReconnectKlines("closed");
-            }
-        });
+    private static WsShardPool newPool(String stream, String topicPrefix, int shards,
+                                       java.util.function.Supplier<WsShard.Handler> handlers,
+                                       int maxFails, boolean tiered, long delayMs, long delayMaxMs) {
+        return new WsShardPool(stream, topicPrefix, MarketDataStore.allSymbols(),
+                tiered ? List.of() : MarketDataStore.allSymbols(),
+                shards, Settings.WS_SYMBOLS_PER_SHARD, handlers, RECONNECT_EXEC,
+                delayMs, delayMaxMs, maxFails,
+                Settings.WS_PING_INTERVAL_MS, Settings.WS_STALE_MS);
     }
 
-    public static void startTrades(PumpLiquidityAnalyzer analyzer) {
-        analyzerRef = analyzer;
-        tradeWS = connect(new WebSocketListener() {
-            @Override
-            public void onOpen(@NotNull WebSocket ws, @NotNull Response resp) {
-                List<String> topics = MarketDataStore.allSymbols()
-                        .stream()
-                        .map(s -> "publicTrade." + s)
-                        .toList();
-
-                for (int i = 0; i < topics.size(); i += 200) {
-                    subscribe(ws, topics.subList(i, Math.min(i + 200, topics.size())));
-                }
+    /** Вызывать до startKlines: последние бары, загруженные в анализатор из истории. */
+    public static void seedKlineStarts(Map<String, Long> lastStarts) {
+        seededKlineStarts = Map.copyOf(lastStarts);
+    }
 
-                System.out.println("✅ WS trades subscribed (" + topics.size() + ")");
-            }
+    public static void startKlines(PumpLiquidityAnalyzer analyzer) {
+        KlineBackfill backfill = Settings.BACKFILL_ENABLED
+                ? new KlineBackfill(Settings.BACKFILL_CONCURRENCY)
+                : null;
+        if (backfill != null) seededKlineStarts.forEach(backfill::seed);
+        klineBackfill = backfill;
+        klinePool = newPool("klines", "kline.1.", Settings.WS_SHARDS_KLINES,
+                () -> klineHandler(sinkFor(analyzer, "klines"), backfill), 0, Settings.SUBS_TIERS_ENABLED);
+        klinePool.start();
+    }
 
-            @Override
-            public void onMessage(@NotNull WebSocket ws, @NotNull String text) {
-                try {
-                    JsonNode json = mapper.readTree(text);
+    public static void startTrades(PumpLiquidityAnalyzer analyzer) {
+        tradePool = newPool("trades", "publicTrade.", Settings.WS_SHARDS_TRADES,
+                () -> tradeHandler(sinkFor(analyzer, "trades")), 0, Settings.SUBS_TIERS_ENABLED);
+        tradePool.start();
+    }
 
-                    if (!json.has("topic") || !json.get("topic").asText().startsWith("publicTrade")) return;
-                    JsonNode data = json.path("data");
-                    if (!data.isArray()) return;
+    /**
+     * Ликвидации (allLiquidation.{symbol}). Шард не отключается навсегда: после обрывов
+     * переподключается со своей, более длинной паузой (liq.reconnect.*), чтобы не мешать
+     * основным потокам. Подписка на все символы, без уровней активности — поток редкий.
+     */
+    public static void startLiquidations(PumpLiquidityAnalyzer analyzer) {
+        liquidationPool = newPool("liquidations", "allLiquidation.", Settings.WS_SHARDS_LIQUIDATIONS,
+                () -> liquidationHandler(sinkFor(analyzer, "liquidations")), 0, false,
+                Settings.LIQ_RECONNECT_DELAY_MS, Settings.LIQ_RECONNECT_DELAY_MAX_MS);
+        liquidationPool.start();
+    }
 
-                    for (JsonNode t : data) {
-                        String symbol = t.path("s").asText("");
-                        String side   = t.path("S").asText("");
-                        double price  = t.path("p").asDouble(0);
-                        double size   = t.path("v").asDouble(0);
-                        if (symbol.isEmpty() || price <= 0 || size <= 0) continue;
+    public static void startTickers() {
+        tickerPool = newPool("tickers", "tickers.", Settings.WS_SHARDS_TICKERS, BybitWsClient::tickerHandler, 0, false);
+        tickerPool.start();
+    }
 
-                        double usd = price * size;
-                        analyzer.onTrade(symbol, "Buy".equals(side), usd);
-                    }
+    // ===== обработчики кадров (один экземпляр на шард; те же и при воспроизведении журнала) =====
 
-                } catch (Exception ignore) {}
-            }
+    private static WsShard.Handler klineHandler(MarketEventSink sink, KlineBackfill backfill) {
+        BybitStreamDecoder decoder = new BybitStreamDecoder(sink, backfill);
+        return new WsShard.Handler() {
             @Override
-            public void onFailure(@NotNull WebSocket ws, @NotNull Throwable t, Response r) {
-                System.err.println("[WS Trades Failure] " + t.getMessage());
-                tradeWS = null;
-                scheduleReconnectTrades("failure");
+            public void onMessage(String msg) {
+                long t0 = System.nanoTime();
+                boolean streaming = Settings.WS_STREAMING_DECODER;
+                try {
+                    if (streaming) decoder.onKlineFrame(msg);
+                    else handleKlineTree(msg, sink, backfill);
+                } catch (Exception ignore) {}
+                recordDecode(streaming, t0);
             }
 
             @Override
-            public void onClosed(@NotNull WebSocket ws, int code, @NotNull String reason) {
-                System.err.println("[WS Trades Closed] " + code + " " + reason);
-                tradeWS = null;
-                scheduleReconnectTrades("closed");
+            public void onReconnected(List<String> topics) {
+                if (backfill != null) backfill.onReconnected(topicSymbols(topics));
             }
-        });
+        };
     }
 
-
-
-    public static void startLiquidations(PumpLiquidityAnalyzer analyzer) {
-        analyzerRef = analyzer;
-        liquidationWS = connect(new WebSocketListener() {
-            @Override public void onOpen(@NotNull WebSocket ws, @NotNull Response r) {
-                List<String> topics = MarketDataStore.allSymbols().stream().map(s -> "liquidation." + s).toList();
-                for (int i = 0; i < topics.size(); i += 200) {
-                    subscribe(ws, topics.subList(i, Math.min(i + 200, topics.size())));
-                }
-                System.out.println("✅ WS liquidations subscribed (" + topics.size() + ")");
-                liqFailCount = 0;
-                liqReconnectDelayMs = 5_000L;
-            }
-
+    private static WsShard.Handler tradeHandler(MarketEventSink sink) {
+        BybitStreamDecoder decoder = new BybitStreamDecoder(sink);
+        return new WsShard.Handler() {
             @Override
-            public void onMessage(@NotNull WebSocket ws, @NotNull String text) {
+            public void onMessage(String text) {
+                long t0 = System.nanoTime();
+                boolean streaming = Settings.WS_STREAMING_DECODER;
                 try {
-                    JsonNode json = mapper.readTree(text);
-                    if (!json.has("topic") || !json.get("topic").asText().startsWith("liquidation")) return;
-
-                    JsonNode d = json.path("data");
-                    String symbol = d.path("symbol").asText("");
-                    String side   = d.path("side").asText("");
-                    double price  = d.path("price").asDouble(0.0);
-                    double size   = d.path("size").asDouble(0.0);
-
-                    // Проверяем корректность
-                    if (symbol.isEmpty() || price <= 0 || size <= 0 || side.isEmpty()) return;
-
-                    // Определяем направление ликвидации
-                    // side=Sell → ликвидируются шорты (лонговая сторона выигрывает)
-                    boolean longSideWasLiquidated = side.equalsIgnoreCase("Sell");
-
-                    // USD-эквивалент ликвидации
-                    double usd = price * size;
-
-                    // Передаём в анализатор
-                    analyzer.onLiquidation(symbol, longSideWasLiquidated, usd);
-
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+                    if (streaming) decoder.onTradeFrame(text);
+                    else handleTradeTree(text, sink);
+                } catch (Exception ignore) {}
+                recordDecode(streaming, t0);
             }
 
             @Override
-            public void onFailure(@NotNull WebSocket ws, @NotNull Throwable t, Response r) {
-                String reason = (t.getMessage() != null ? t.getMessage() : "<no message>");
-                String type   = t.getClass().getSimpleName();
-                String http   = (r != null ? (r.code() + " " + r.message()) : "no HTTP response");
+            public void onReconnected(List<String> topics) {
+                TradeDedup.onReconnected(topicSymbols(topics));
+            }
+        };
+    }
 
-                System.err.println("[WS Liqs Failure] " + type + " | " + http + " | " + reason);
-                t.printStackTrace(); // можно временно оставить, потом выключить
+    private static List<String> topicSymbols(List<String> topics) {
+        List<String> symbols = new java.util.ArrayList<>(topics.size());
+        for (String t : topics) symbols.add(t.substring(t.lastIndexOf('.') + 1));
+        return symbols;
+    }
 
-                liquidationWS = null;
-                scheduleReconnectLiquidations("failure");
+    private static WsShard.Handler liquidationHandler(MarketEventSink sink) {
+        BybitStreamDecoder decoder = new BybitStreamDecoder(sink);
+        return text -> {
+            if (text.contains("\"success\":false")) {
+                // отказ в подписке (например, топик снят с биржи) — видно в status, а не молча
+                liqRejected.increment();
+                if (liqRejected.sum() <= 5) System.err.println("[WS liquidations] rejected: " + text);
+                return;
             }
+            if (!text.contains("\"topic\"")) return; // pong / подтверждение подписки
 
-            @Override
-            public void onClosed(@NotNull WebSocket ws, int code, @NotNull String reason) {
-                System.err.println("[WS Liqs Closed] " + code + " " + reason);
-                liquidationWS = null;
-                scheduleReconnectLiquidations("closed");
+            long t0 = System.nanoTime();
+            boolean streaming = Settings.WS_STREAMING_DECODER;
+            try {
+                int n = streaming ? decoder.onLiquidationFrame(text) : handleLiquidationTree(text, sink);
+                liqFrames.increment();
+                if (n > 0) {
+                    liqEvents.add(n);
+                    lastLiquidationAtMs = Clock.now();
+                }
+            } catch (Exception e) {
+                liqDecodeErrors.increment();
             }
-        });
+            recordDecode(streaming, t0);
+        };
     }
 
-    public static void startTickers() {
-        tickerWS = connect(new WebSocketListener() {
-            @Override public void onOpen(@NotNull WebSocket ws, @NotNull Response r) {
-                List<String> topics = MarketDataStore.allSymbols().stream().map(s -> "tickers." + s).toList();
-                for (int i = 0; i < topics.size(); i += 200) {
-                    subscribe(ws, topics.subList(i, Math.min(i + 200, topics.size())));
-                }
-                System.out.println("✅ WS tickers subscribed (" + topics.size() + ")");
-            }
+    private static WsShard.Handler tickerHandler() {
+        BybitStreamDecoder decoder = new BybitStreamDecoder(null);
+        return text -> {
+            long t0 = System.nanoTime();
+            boolean streaming = Settings.WS_STREAMING_DECODER;
+            try {
+                String symbol = streaming ? decoder.onTickerFrame(text) : handleTickerTree(text);
+                recordDecode(streaming, t0);
 
-            @Override public void onMessage(@NotNull WebSocket ws, @NotNull String text) {
-                try {
-                    JsonNode json = mapper.readTree(text);
-                    String topic = json.path("topic").asText("");
-                    if (!topic.startsWith("tickers")) return;
-
-                    JsonNode d = json.path("data");
-                    String symbol = d.path("symbol").asText("");
-                    if (symbol.isEmpty()) return;
-
-                    double price = d.path("lastPrice").asDouble(0);
-                    double oi = d.path("openInterestValue").asDouble(0);
-                    double funding = d.path("fundingRate").asDouble(0);
-
-                    var info = MarketDataStore.get(symbol);
-                    if (info == null) return;
-
-                    if (price > 0) info.lastPrice = price;
-                    if (oi > 0) info.openInterest = oi;
-                    if (funding != 0) info.fundingRate = funding;
-
-                    if (symbol.equals("BTCUSDT")) {
-                        long now = System.currentTimeMillis();
-                        if (now - lastHeartbeat > 120_000) {
-                            System.out.printf("[WS OK] BTC %.2f OI=%.0f%n", info.lastPrice, info.openInterest);
-                            lastHeartbeat = now;
-                        }
+                if ("BTCUSDT".equals(symbol)) {
+                    long now = Clock.now();
+                    CoinInfo info = MarketDataStore.get(symbol);
+                    if (info != null && now - lastHeartbeat > 120_000) {
+                        System.out.printf("[WS OK] BTC %.2f OI=%.0f%n", info.lastPrice, info.openInterest);
+                        lastHeartbeat = now;
                     }
-                } catch (Exception e) {
-                    System.err.println("[WS Tickers Error] " + e.getMessage());
                 }
+            } catch (Exception e) {
+                System.err.println("[WS Tickers Error] " + e.getMessage());
             }
-            @Override
-            public void onFailure(@NotNull WebSocket ws, @NotNull Throwable t, Response r) {
-                System.err.println("[WS Tickers Failure] " + t.getMessage());
-                tickerWS = null;
-                scheduleReconnectTickers("failure");
-            }
+        };
+    }
 
-            @Override
-            public void onClosed(@NotNull WebSocket ws, int code, @NotNull String reason) {
-                System.err.println("[WS Tickers Closed] " + code + " " + reason);
-                tickerWS = null;
-                scheduleReconnectTickers("closed");
+    /**
+     * Обработчик кадров журнала для режима воспроизведения: кадры каждого потока идут
+     * через те же декодеры, что и в live. Символы, которых ещё нет в MarketDataStore,
+     * регистрируются по topic (в replay нет REST-предзагрузки).
+     */
+    public static FrameHandler replayHandler(MarketEventSink sink) {
+        WsShard.Handler trades = tradeHandler(sink);
+        WsShard.Handler klines = klineHandler(sink, null); // журнал и так непрерывен — без REST
+        WsShard.Handler tickers = tickerHandler();
+        WsShard.Handler liquidations = liquidationHandler(sink);
+        return (streamId, payload) -> {
+            String symbol = topicSymbol(payload);
+            if (symbol == null) return; // ответы на subscribe, pong и т.п.
+            if (MarketDataStore.get(symbol) == null) MarketDataStore.register(symbol);
+
+            switch (streamId) {
+                case MarketJournal.TRADES -> trades.onMessage(payload);
+                case MarketJournal.KLINES -> {
+                    if (TradeBars.enabled()) return; // бары строятся из сделок журнала
+                    TickerStore.drain(); // OI/funding на закрытии бара — как успел бы дренер в live
+                    klines.onMessage(payload);
+                }
+                case MarketJournal.TICKERS -> tickers.onMessage(payload);
+                case MarketJournal.LIQUIDATIONS -> liquidations.onMessage(payload);
+                default -> { }
             }
-        });
+        };
     }
 
-    private static void scheduleReconnectKlines(String reason) {
-        if (!app.Settings.RUNNING) return;
-        if (analyzerRef == null) return;
-        System.err.println("[WS Klines] reconnect in 5s (" + reason + ")");
-        RECONNECT_EXEC.schedule(() -> {
-            try {
-                startKlines(analyzerRef);
-            } catch (Exception e) {
-                System.err.println("[WS Klines] reconnect error: " + e.getMessage());
-            }
-        }, 5, TimeUnit.SECONDS);
+    /** Символ из "topic":"kline.1.BTCUSDT" без разбора JSON; null, если topic нет. */
+    private static String topicSymbol(String text) {
+        int k = text.indexOf("\"topic\"");
+        if (k < 0) return null;
+        int start = text.indexOf('"', text.indexOf(':', k) + 1);
+        if (start < 0) return null;
+        int end = text.indexOf('"', start + 1);
+        if (end < 0) return null;
+        int dot = text.lastIndexOf('.', end);
+        int from = (dot > start) ? dot + 1 : start + 1;
+        return from < end ? text.substring(from, end) : null;
     }
 
-    private static void scheduleReconnectTrades(String reason) {
-        if (!app.Settings.RUNNING) return;
-        if (analyzerRef == null) return;
-        System.err.println("[WS Trades] reconnect in 5s (" + reason + ")");
-        RECONNECT_EXEC.schedule(() -> {
-            try {
-                startTrades(analyzerRef);
-            } catch (Exception e) {
-                System.err.println("[WS Trades] reconnect error: " + e.getMessage());
+    /** allLiquidation через дерево: data — массив {T, s, S, v, p}; S=Buy — ликвидирован лонг. */
+    private static int handleLiquidationTree(String text, MarketEventSink sink) throws Exception {
+        JsonNode json = mapper.readTree(text);
+        if (!json.path("topic").asText("").startsWith("allLiquidation")) return 0;
+
+        int n = 0;
+        for (JsonNode d : json.path("data")) {
+            String symbol = d.path("s").asText("");
+            double price = d.path("p").asDouble(0.0);
+            double size = d.path("v").asDouble(0.0);
+            if (symbol.isEmpty() || price <= 0 || size <= 0) continue;
+
+            boolean longSide = "Buy".equals(d.path("S").asText(""));
+            long ts = d.path("T").asLong(0L);
+            sink.onLiquidations(symbol, new boolean[]{longSide}, new double[]{price * size}, new long[]{ts}, 1);
+            n++;
+        }
+        return n;
+    }
+
+    // ===== Старый декодер через JsonNode-дерево (ws.streaming.decoder=false) =====
+
+    private static void handleKlineTree(String msg, MarketEventSink sink, KlineBackfill backfill) throws Exception {
+        JsonNode root = mapper.readTree(msg);
+        if (!root.has("topic") || !root.get("topic").asText().startsWith("kline")) return;
+
+        JsonNode bar = root.path("data").get(0);
+        if (bar == null) return;
+
+        boolean closed = bar.path("confirm").asBoolean(false);
+        String symbol = root.get("topic").asText().split("\\.")[2];
+
+        long start = bar.path("start").asLong(0L);
+        double close = bar.path("close").asDouble(0.0);
+        double volumeUsd = bar.path("turnover").asDouble(0.0);
+
+        if (backfill != null) {
+            backfill.onKline(symbol, start, closed, close, volumeUsd, sink);
+        } else if (closed) {
+            CoinInfo info = MarketDataStore.get(symbol);
+            if (info == null) return;
+            sink.onKline(symbol, close, volumeUsd, info.openInterest, info.fundingRate);
+        }
+        if (!closed && Settings.KLINE_PARTIAL_ENABLED && close > 0) {
+            sink.onKlinePartial(symbol, start, bar.path("open").asDouble(0.0), bar.path("high").asDouble(0.0),
+                    bar.path("low").asDouble(0.0), close, volumeUsd);
+        }
+    }
+
+    private static void handleTradeTree(String text, MarketEventSink sink) throws Exception {
+        JsonNode json = mapper.readTree(text);
+
+        if (!json.has("topic") || !json.get("topic").asText().startsWith("publicTrade")) return;
+        JsonNode data = json.path("data");
+        if (!data.isArray()) return;
+
+        for (JsonNode t : data) {
+            String symbol = t.path("s").asText("");
+            String side   = t.path("S").asText("");
+            double price  = t.path("p").asDouble(0);
+            double size   = t.path("v").asDouble(0);
+            if (symbol.isEmpty() || price <= 0 || size <= 0) continue;
+            if (Settings.TRADE_DEDUP_ENABLED) {
+                String id = t.path("i").asText("");
+                if (!id.isEmpty() && !TradeDedup.accept(symbol, TradeDedup.hash(id), t.path("T").asLong(0L))) continue;
             }
-        }, 5, TimeUnit.SECONDS);
+
+            double usd = price * size;
+            if (TradeBars.enabled()) TradeBars.onTrade(sink, symbol, price, usd, t.path("T").asLong(0L));
+            sink.onTrade(symbol, "Buy".equals(side), usd);
+        }
     }
 
-    private static void scheduleReconnectLiquidations(String reason) {
-        if (!app.Settings.RUNNING) return;
+    private static String handleTickerTree(String text) throws Exception {
+        JsonNode json = mapper.readTree(text);
+        String topic = json.path("topic").asText("");
+        if (!topic.startsWith("tickers")) return null;
+
+        JsonNode d = json.path("data");
+        String symbol = d.path("symbol").asText("");
+        if (symbol.isEmpty()) return null;
+
+        double price = d.path("lastPrice").asDouble(0);
+        double oi = d.path("openInterestValue").asDouble(0);
+        double funding = d.path("fundingRate").asDouble(0);
+        double turnover = d.path("turnover24h").asDouble(0);
 
-        liqFailCount++;
-        if (liqFailCount > LIQ_FAIL_MAX) {
-            System.err.println("[WS Liqs] disabled after " + liqFailCount + " failures");
-            return;
+        TickerStore.update(symbol, price, oi, funding, turnover, json.path("ts").asLong(0L));
+        return symbol;
+    }
+
+    private static void recordDecode(boolean streaming, long t0) {
+        long dt = System.nanoTime() - t0;
+        if (streaming) {
+            streamFrames.increment();
+            streamNanos.add(dt);
+        } else {
+            treeFrames.increment();
+            treeNanos.add(dt);
         }
+    }
 
-        long delay = liqReconnectDelayMs;
-        liqReconnectDelayMs = Math.min(liqReconnectDelayMs * 2, LIQ_RECONNECT_DELAY_MAX_MS);
+    /** Сводка по декодерам для команды status: кадров и среднее время на кадр. */
+    public static String decoderSummary() {
+        long tf = treeFrames.sum();
+        long sf = streamFrames.sum();
+        double treeUs = tf > 0 ? treeNanos.sum() / 1_000.0 / tf : 0.0;
+        double streamUs = sf > 0 ? streamNanos.sum() / 1_000.0 / sf : 0.0;
+        return String.format("[WS decode] mode=%s | tree: %d frames, %.1f µs/frame | stream: %d frames, %.1f µs/frame",
+                Settings.WS_STREAMING_DECODER ? "stream" : "tree", tf, treeUs, sf, streamUs);
+    }
 
-        System.err.println("[WS Liqs] reconnect in " + delay + " ms (" + reason + "), fail# " + liqFailCount);
+    /** Здоровье потока ликвидаций для команды status. */
+    public static String liquidationSummary() {
+        if (liquidationPool == null) return "[Liq] disabled";
+        long last = lastLiquidationAtMs;
+        String age = last > 0 ? ((Clock.now() - last) / 1000) + "s ago" : "never";
+        return String.format("[Liq] frames=%d events=%d last event %s | decode errors=%d, rejected=%d",
+                liqFrames.sum(), liqEvents.sum(), age, liqDecodeErrors.sum(), liqRejected.sum());
+    }
 
-        RECONNECT_EXEC.schedule(() -> {
-            try {
-                startLiquidations(analyzerRef);
-            } catch (Exception e) {
-                System.err.println("[WS Liqs] reconnect error: " + e.getMessage());
-            }
-        }, delay, TimeUnit.MILLISECONDS);
+    /** Сводка по всем пулам шардов: топики, msg/s, состояние сокетов. */
+    public static String poolSummary() {
+        StringBuilder sb = new StringBuilder("[WS shards]");
+        for (WsShardPool p : new WsShardPool[]{tradePool, klinePool, tickerPool, liquidationPool}) {
+            if (p != null) sb.append(System.lineSeparator()).append(p.summary());
+        }
+        return sb.toString();
     }
 
-    private static void scheduleReconnectTickers(String reason) {
-        if (!app.Settings.RUNNING) return;
-        System.err.println("[WS Tickers] reconnect in 5s (" + reason + ")");
-        RECONNECT_EXEC.schedule(() -> {
-            try {
-                startTickers();
-            } catch (Exception e) {
-                System.err.println("[WS Tickers] reconnect error: " + e.getMessage());
-            }
-        }, 5, TimeUnit.SECONDS);
+    /** Сводка по дозагрузке пропущенных баров. */
+    public static String backfillSummary() {
+        KlineBackfill b = klineBackfill;
+        return b != null ? b.summary() : "[Backfill] disabled";
     }
 
     public static void shutdown() {
         Settings.RUNNING = false; // на всякий, продублируем
 
-        try {
-            if (klineWS != null) {
-                klineWS.close(1000, "shutdown");
-            }
-        } catch (Exception ignored) {}
-
-        try {
-            if (tradeWS != null) {
-                tradeWS.close(1000, "shutdown");
-            }
-        } catch (Exception ignored) {}
-
-        try {
-            if (liquidationWS != null) {
-                liquidationWS.close(1000, "shutdown");
-            }
-        } catch (Exception ignored) {}
+        KlineBackfill b = klineBackfill;
+        if (b != null) b.shutdown();
 
-        try {
-            if (tickerWS != null) {
-                tickerWS.close(1000, "shutdown");
-            }
-        } catch (Exception ignored) {}
+        for (WsShardPool p : new WsShardPool[]{klinePool, tradePool, liquidationPool, tickerPool}) {
+            try {
+                if (p != null) p.stop();
+            } catch (Exception ignored) {}
+        }
 
         RECONNECT_EXEC.shutdownNow();
         System.out.println("[WS] shutdown requested");
@@ -0,0 +1,186 @@
+package net;
+
+import app.Settings;
+import com.fasterxml.jackson.databind.JsonNode;
+import core.PumpLiquidityAnalyzer;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Тёплый старт: до подключения живых потоков грузим по REST последние MAX_BAR_HISTORY
+ * минутных баров и историю OI по всем символам и прогоняем их через
+ * {@link PumpLiquidityAnalyzer#seedHistory}, чтобы ряды и EWMA были готовы к первой минуте.
+ *
+ * Символы грузятся параллельно (bootstrap.concurrency); частоту и паузы по лимитам Bybit
+ * держит общий {@link BybitHttp}, а приоритет BACKFILL пропускает вперёд живые запросы.
+ *
+ * OI у Bybit есть только с шагом 5 минут и в контрактах: на минутный бар берём последнюю
+ * точку не позже закрытия бара и переводим в USD по его close (как openInterestValue в тикере).
+ */
+public final class HistoryBootstrap {
+
+    private static final long BAR_MS = 60_000L;
+    private static final long OI_STEP_MS = 5 * 60_000L;
+    private static final int KLINE_LIMIT_MAX = 1000;
+    private static final int OI_LIMIT_MAX = 200;
+
+    private static final String KLINE_URL = "https://api.bybit.com/v5/market/kline";
+    private static final String OI_URL = "https://api.bybit.com/v5/market/open-interest";
+
+    private final PumpLiquidityAnalyzer analyzer;
+
+    // start последнего загруженного бара по символу — для KlineBackfill
+    private final Map<String, Long> lastStarts = new ConcurrentHashMap<>();
+    // run() вернул управление: опоздавшие задачи больше ничего не сеют (под монитором lastStarts)
+    private boolean cancelled;
+
+    // метрики
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    public HistoryBootstrap(PumpLiquidityAnalyzer analyzer) {
+        this.analyzer = analyzer;
+    }
+
+    /**
+     * Загрузить и засеять историю; блокирует не дольше timeoutSec.
+     *
+     * shutdownNow по таймауту не прерывает уже идущие HTTP-вызовы, поэтому перед возвратом
+     * ставится флаг отмены: задача, дочитавшая ответ позже, не трогает ни ряды анализатора
+     * (их уже наполняют живые потоки), ни результат.
+     *
+     * @return start последнего закрытого бара по каждому засеянному символу
+     */
+    public Map<String, Long> run(Collection<String> symbols, int concurrency, long timeoutSec) {
+        long t0 = System.currentTimeMillis();
+        int bars = Math.min(KLINE_LIMIT_MAX, Math.max(1, Settings.MAX_BAR_HISTORY));
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, concurrency), r -> {
+            Thread t = new Thread(r, "history-bootstrap");
+            t.setDaemon(true);
+            return t;
+        });
+        for (String symbol : symbols) {
+            pool.execute(() -> {
+                if (!Settings.RUNNING || isCancelled()) return;
+                try {
+                    seedSymbol(symbol, bars);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    System.err.println("[Bootstrap] " + symbol + ": " + e.getMessage());
+                }
+            });
+        }
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(timeoutSec, TimeUnit.SECONDS)) {
+                System.err.println("[Bootstrap] timeout " + timeoutSec + "s, остальные символы прогреются из потока");
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        Map<String, Long> result;
+        synchronized (lastStarts) {
+            cancelled = true;
+            result = Map.copyOf(lastStarts);
+        }
+
+        System.out.printf("✅ History bootstrap: %d/%d symbols, %d bars each, %d requests, errors=%d, %.1fs%n",
+                result.size(), symbols.size(), bars, requests.get(), failed.get(),
+                (System.currentTimeMillis() - t0) / 1000.0);
+        return result;
+    }
+
+    private void seedSymbol(String symbol, int bars) throws Exception {
+        long now = System.currentTimeMillis();
+        long lastClosedStart = (now / BAR_MS - 1) * BAR_MS;
+
+        // kline: [start, open, high, low, close, volume, turnover], новые первыми
+        JsonNode klines = get(KLINE_URL + "?category=linear&interval=1&symbol=" + symbol
+                + "&limit=" + bars + "&end=" + lastClosedStart);
+        int n = klines.size();
+        if (n == 0) return;
+
+        long[] start = new long[n];
+        double[] close = new double[n];
+        double[] volUsd = new double[n];
+        int count = 0;
+        for (int i = n - 1; i >= 0; i--) { // разворачиваем: старые первыми
+            JsonNode row = klines.get(i);
+            long st = row.path(0).asLong();
+            if (st > lastClosedStart) continue; // текущий незакрытый бар
+            if (count > 0 && st <= start[count - 1]) continue;
+            start[count] = st;
+            close[count] = row.path(4).asDouble();
+            volUsd[count] = row.path(6).asDouble();
+            count++;
+        }
+        if (count == 0) return;
+
+        requests.incrementAndGet();
+        double[] oiUsd = oiUsdPerBar(symbol, start, close, count, BybitHttp.Priority.BACKFILL);
+        if (oiUsd == null) oiUsd = new double[count];
+
+        synchronized (lastStarts) {
+            if (cancelled) return;
+            analyzer.seedHistory(symbol, close, volUsd, oiUsd, count, 0.0);
+            lastStarts.put(symbol, start[count - 1]);
+        }
+    }
+
+    private boolean isCancelled() {
+        synchronized (lastStarts) {
+            return cancelled;
+        }
+    }
+
+    /**
+     * OI в USD на каждый минутный бар (бары — от старых к новым): последняя 5-минутная точка
+     * /v5/market/open-interest не позже закрытия бара, до первой точки — самая ранняя; контракты
+     * переводятся в USD по close бара. Тот же расчёт нужен {@link KlineBackfill} для пропусков.
+     *
+     * @return null — у биржи нет ни одной точки за окно
+     */
+    static double[] oiUsdPerBar(String symbol, long[] start, double[] close, int count,
+                                BybitHttp.Priority priority) throws Exception {
+        long endTime = start[count - 1] + BAR_MS;
+        int oiLimit = (int) Math.min(OI_LIMIT_MAX, (endTime - start[0]) / OI_STEP_MS + 2);
+        // OI: {openInterest, timestamp}, новые первыми; шаг 5 минут
+        JsonNode oiList = BybitHttp.getJson(OI_URL + "?category=linear&intervalTime=5min&symbol=" + symbol
+                + "&limit=" + oiLimit + "&endTime=" + endTime, priority).path("result").path("list");
+        int m = oiList.size();
+        if (m == 0) return null;
+        long[] oiTs = new long[m];
+        double[] oiQty = new double[m];
+        for (int i = 0; i < m; i++) {
+            JsonNode p = oiList.get(m - 1 - i);
+            oiTs[i] = p.path("timestamp").asLong();
+            oiQty[i] = p.path("openInterest").asDouble();
+        }
+
+        double[] oiUsd = new double[count];
+        int j = 0;
+        for (int i = 0; i < count; i++) {
+            long closeAt = start[i] + BAR_MS;
+            while (j + 1 < m && oiTs[j + 1] <= closeAt) j++;
+            oiUsd[i] = oiQty[j] * close[i];
+        }
+        return oiUsd;
+    }
+
+    /** GET через общий слой (приоритет BACKFILL); возвращает result.list. */
+    private JsonNode get(String url) throws Exception {
+        requests.incrementAndGet();
+        return BybitHttp.getJson(url, BybitHttp.Priority.BACKFILL).path("result").path("list");
+    }
+}
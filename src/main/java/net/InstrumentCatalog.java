@@ -0,0 +1,273 @@
+package net;
+
+import app.Settings;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import model.InstrumentInfo;
+import okhttp3.HttpUrl;
+import store.MarketDataStore;
+import store.TickerStore;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Каталог инструментов linear: статус, шаг цены, шаг/минимум лота, время листинга.
+ *
+ * Загрузка идёт по всем страницам instruments-info (nextPageCursor). Страницы одной цепочки
+ * последовательны — курсор следующей есть только в ответе предыдущей, — поэтому параллелим
+ * независимые цепочки: по одной на каждый статус из catalog.statuses.
+ *
+ * Каталог сохраняется в JSON-кэш. При рестарте символы берутся из кэша без ожидания биржи,
+ * а сверка с биржей идёт в фоне: новые Trading-символы досписываются в WS-пулы,
+ * ушедшие из Trading — отписываются. Сверка повторяется раз в catalog.refresh.min.
+ */
+public final class InstrumentCatalog {
+
+    private static final String URL = "https://api.bybit.com/v5/market/instruments-info";
+    private static final int PAGE_LIMIT = 1000;
+    private static final int MAX_PAGES = 50; // страховка от зацикленного курсора
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final Map<String, InstrumentInfo> instruments = new ConcurrentHashMap<>();
+    private static volatile long loadedAt = 0;
+    private static volatile String source = "none";
+    private static volatile Thread reconciler;
+
+    private InstrumentCatalog() {
+    }
+
+    public static InstrumentInfo get(String symbol) {
+        return instruments.get(symbol);
+    }
+
+    public static int size() {
+        return instruments.size();
+    }
+
+    /**
+     * Заполнить каталог и MarketDataStore: из кэша, если он есть, иначе с биржи (блокирующе).
+     */
+    public static void load() {
+        Path cache = Paths.get(Settings.CATALOG_CACHE_FILE);
+        try {
+            if (Files.isReadable(cache)) {
+                Map<String, InstrumentInfo> cached = readCache(cache);
+                if (!cached.isEmpty()) {
+                    apply(cached, "cache");
+                    System.out.println("✅ Instruments from cache: " + cached.size() +
+                            " (Trading " + MarketDataStore.allSymbols().size() + "), сверка с биржей — в фоне");
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("[Catalog] cache read error: " + e.getMessage());
+        }
+
+        try {
+            Map<String, InstrumentInfo> fresh = fetchAll();
+            apply(fresh, "exchange");
+            writeCache(cache, fresh);
+            System.out.println("✅ Preloaded symbols: " + MarketDataStore.allSymbols().size() +
+                    " (catalog " + fresh.size() + ")");
+        } catch (Exception e) {
+            System.out.println("❌ Error preload symbols: " + e.getMessage());
+        }
+    }
+
+    /** Фоновая сверка: сразу и далее раз в refreshMin минут (0 — только один раз). */
+    public static synchronized void startReconcile(long refreshMin) {
+        if (reconciler != null) return;
+        Thread t = new Thread(() -> {
+            while (Settings.RUNNING) {
+                try {
+                    reconcile();
+                } catch (Exception e) {
+                    System.err.println("[Catalog] reconcile error: " + e.getMessage());
+                }
+                if (refreshMin <= 0) return;
+                try {
+                    Thread.sleep(refreshMin * 60_000L);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "instrument-catalog");
+        t.setDaemon(true);
+        t.start();
+        reconciler = t;
+    }
+
+    /** Загрузить каталог с биржи, применить разницу к подпискам и обновить кэш. */
+    static void reconcile() throws Exception {
+        Map<String, InstrumentInfo> fresh = fetchAll();
+        if (fresh.isEmpty()) return; // пустой ответ не повод отписываться от всего
+
+        List<String> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (InstrumentInfo i : fresh.values()) {
+            InstrumentInfo old = instruments.get(i.symbol);
+            if (i.isTrading() && (old == null || !old.isTrading())) added.add(i.symbol);
+        }
+        for (InstrumentInfo old : instruments.values()) {
+            InstrumentInfo now = fresh.get(old.symbol);
+            if (old.isTrading() && (now == null || !now.isTrading())) removed.add(old.symbol);
+        }
+
+        apply(fresh, "exchange");
+        if (!added.isEmpty()) BybitWsClient.addSymbols(added);
+        if (!removed.isEmpty()) BybitWsClient.removeSymbols(removed);
+        // снятые с торгов — и из хранилищ, иначе их продолжают обходить анализ и OiRestUpdater
+        for (String symbol : removed) {
+            MarketDataStore.remove(symbol);
+            TickerStore.clear(symbol);
+        }
+        writeCache(Paths.get(Settings.CATALOG_CACHE_FILE), fresh);
+
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            System.out.println("🔄 Catalog: +" + added.size() + " " + preview(added) +
+                    " / -" + removed.size() + " " + preview(removed));
+        }
+    }
+
+    private static void apply(Map<String, InstrumentInfo> fresh, String from) {
+        instruments.putAll(fresh);
+        instruments.keySet().retainAll(fresh.keySet());
+        for (InstrumentInfo i : fresh.values()) {
+            if (i.isTrading()) MarketDataStore.register(i.symbol);
+        }
+        loadedAt = System.currentTimeMillis();
+        source = from;
+    }
+
+    // ==================== REST ====================
+
+    private static Map<String, InstrumentInfo> fetchAll() throws Exception {
+        List<String> statuses = new ArrayList<>();
+        for (String s : Settings.CATALOG_STATUSES.split(",")) {
+            if (!s.isBlank()) statuses.add(s.trim());
+        }
+        if (statuses.isEmpty()) statuses.add("Trading");
+
+        ExecutorService pool = Executors.newFixedThreadPool(statuses.size(), r -> {
+            Thread t = new Thread(r, "instrument-fetch");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<CompletableFuture<List<InstrumentInfo>>> chains = new ArrayList<>();
+            for (String status : statuses) {
+                chains.add(CompletableFuture.supplyAsync(() -> fetchChain(status), pool));
+            }
+            Map<String, InstrumentInfo> out = new HashMap<>();
+            for (CompletableFuture<List<InstrumentInfo>> f : chains) {
+                for (InstrumentInfo i : f.join()) out.put(i.symbol, i);
+            }
+            return out;
+        } catch (java.util.concurrent.CompletionException e) {
+            throw e.getCause() instanceof Exception ex ? ex : e;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Все страницы одного статуса. */
+    private static List<InstrumentInfo> fetchChain(String status) {
+        List<InstrumentInfo> out = new ArrayList<>();
+        String cursor = "";
+        for (int page = 0; page < MAX_PAGES; page++) {
+            HttpUrl.Builder url = HttpUrl.get(URL).newBuilder()
+                    .addQueryParameter("category", "linear")
+                    .addQueryParameter("status", status)
+                    .addQueryParameter("limit", String.valueOf(PAGE_LIMIT));
+            if (!cursor.isEmpty()) url.addQueryParameter("cursor", cursor);
+
+            JsonNode result;
+            try {
+                result = BybitHttp.getJson(url.build().toString(), BybitHttp.Priority.NORMAL).path("result");
+            } catch (java.io.IOException e) {
+                throw new java.io.UncheckedIOException(status + ": " + e.getMessage(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(status + ": interrupted");
+            }
+
+            for (JsonNode n : result.path("list")) {
+                InstrumentInfo i = parse(n);
+                if (i != null) out.add(i);
+            }
+            cursor = result.path("nextPageCursor").asText("");
+            if (cursor.isEmpty() || result.path("list").size() < PAGE_LIMIT) break;
+        }
+        return out;
+    }
+
+    private static InstrumentInfo parse(JsonNode n) {
+        String symbol = n.path("symbol").asText("");
+        if (symbol.isEmpty()) return null;
+        InstrumentInfo i = new InstrumentInfo();
+        i.symbol = symbol;
+        i.status = n.path("status").asText("");
+        i.contractType = n.path("contractType").asText("");
+        i.quoteCoin = n.path("quoteCoin").asText("");
+        i.tickSize = n.path("priceFilter").path("tickSize").asDouble(0.0);
+        i.qtyStep = n.path("lotSizeFilter").path("qtyStep").asDouble(0.0);
+        i.minOrderQty = n.path("lotSizeFilter").path("minOrderQty").asDouble(0.0);
+        i.launchTime = n.path("launchTime").asLong(0L);
+        return i;
+    }
+
+    // ==================== кэш ====================
+
+    private static Map<String, InstrumentInfo> readCache(Path file) throws Exception {
+        JsonNode root = mapper.readTree(file.toFile());
+        Map<String, InstrumentInfo> out = new HashMap<>();
+        for (JsonNode n : root.path("instruments")) {
+            InstrumentInfo i = mapper.treeToValue(n, InstrumentInfo.class);
+            if (i.symbol != null && !i.symbol.isEmpty()) out.put(i.symbol, i);
+        }
+        return out;
+    }
+
+    /** Запись через временный файл: оборванная запись не портит прежний кэш. */
+    private static void writeCache(Path file, Map<String, InstrumentInfo> catalog) {
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            if (dir != null) Files.createDirectories(dir);
+            ObjectNode root = mapper.createObjectNode();
+            root.put("savedAt", System.currentTimeMillis());
+            root.set("instruments", mapper.valueToTree(catalog.values()));
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            mapper.writeValue(tmp.toFile(), root);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            System.err.println("[Catalog] cache write error: " + e.getMessage());
+        }
+    }
+
+    private static String preview(Collection<String> symbols) {
+        if (symbols.isEmpty()) return "";
+        List<String> head = new ArrayList<>(symbols).subList(0, Math.min(5, symbols.size()));
+        return head + (symbols.size() > 5 ? "…" : "");
+    }
+
+    public static String summary() {
+        long trading = instruments.values().stream().filter(InstrumentInfo::isTrading).count();
+        return String.format("[Catalog] %d instruments (Trading %d) from %s, %s",
+                instruments.size(), trading, source,
+                loadedAt > 0 ? ((System.currentTimeMillis() - loadedAt) / 1000) + "s ago" : "never");
+    }
+}
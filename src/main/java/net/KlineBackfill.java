@@ -0,0 +1,267 @@
+package net;
+
+import app.Clock;
+import app.Settings;
+import com.fasterxml.jackson.databind.JsonNode;
+import core.MarketEventSink;
+import model.CoinInfo;
+import store.MarketDataStore;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Контроль непрерывности минутных баров и дозагрузка пропусков через REST.
+ *
+ * Для каждого символа помним start последнего закрытого бара. Если после реконнекта
+ * (или просто в потоке) следующий закрытый бар начинается позже, чем через минуту,
+ * пропущенные минуты запрашиваются из /v5/market/kline (параллельно, частоту ограничивает
+ * общий {@link BybitHttp}). Пока идёт загрузка, живые бары символа буферизуются; готовые бары
+ * отдаются в анализатор по порядку с потока чтения шарда на ближайшем кадре этого символа,
+ * поэтому порядок onKline сохраняется и SPSC-продюсер шарда не делится с другими потоками.
+ *
+ * Ошибка загрузки пропуск не закрывает: живые бары символа копятся дальше, загрузка
+ * повторяется с растущей паузой (до минуты), пока не удастся. Иначе ряды склеили бы минуты
+ * по обе стороны пропуска, как будто его не было.
+ *
+ * OI в kline Bybit не отдаёт — для дозагруженных минут он берётся из /v5/market/open-interest
+ * (5-минутные точки, как при прогреве в {@link HistoryBootstrap}); нет точек — OI на момент загрузки.
+ */
+final class KlineBackfill {
+
+    private static final long BAR_MS = 60_000L;
+    private static final String URL = "https://api.bybit.com/v5/market/kline";
+    private static final long RETRY_BASE_MS = 1_000L;
+    private static final long RETRY_MAX_MS = 60_000L;
+
+    private final Map<String, Track> tracks = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService fetchers;
+
+    // метрики
+    private final AtomicLong gaps = new AtomicLong();
+    private final AtomicLong barsFetched = new AtomicLong();
+    private final AtomicLong fetchErrors = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong inFlight = new AtomicLong();
+
+    KlineBackfill(int concurrency) {
+        this.fetchers = Executors.newScheduledThreadPool(Math.max(1, concurrency), r -> {
+            Thread t = new Thread(r, "kline-backfill");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static final class Bar {
+        final long start;
+        final double close;
+        final double turnover;
+        final double oi;
+        final double funding;
+
+        Bar(long start, double close, double turnover, double oi, double funding) {
+            this.start = start;
+            this.close = close;
+            this.turnover = turnover;
+            this.oi = oi;
+            this.funding = funding;
+        }
+    }
+
+    /** Состояние символа. lastStart трогает только поток чтения шарда; списки — под монитором. */
+    private static final class Track {
+        volatile long lastStart = 0L;
+        boolean fetching = false;
+        volatile boolean hasReady = false;
+        final List<Bar> pending = new ArrayList<>(); // живые бары, пришедшие во время загрузки
+        List<Bar> ready = new ArrayList<>();          // загружено и готово к выдаче
+    }
+
+    private Track track(String symbol) {
+        return tracks.computeIfAbsent(symbol, k -> new Track());
+    }
+
+    /** Start последнего бара, уже известного анализатору (прогрев из истории) — до старта шардов. */
+    void seed(String symbol, long lastStart) {
+        Track t = track(symbol);
+        if (lastStart > t.lastStart) t.lastStart = lastStart;
+    }
+
+    // ==================== поток чтения шарда ====================
+
+    /**
+     * Каждый kline-кадр (закрытый или нет) проходит сюда вместо прямого sink.onKline.
+     */
+    void onKline(String symbol, long start, boolean confirmed,
+                 double close, double volumeUsd, MarketEventSink sink) {
+        Track t = track(symbol);
+        if (t.hasReady) flushReady(symbol, t, sink);
+        if (!confirmed) return;
+
+        CoinInfo info = MarketDataStore.get(symbol);
+        if (info == null) return;
+        Bar bar = new Bar(start, close, volumeUsd, info.openInterest, info.fundingRate);
+
+        synchronized (t) {
+            if (t.fetching) {
+                t.pending.add(bar);
+                return;
+            }
+        }
+
+        long last = t.lastStart;
+        if (last > 0 && start <= last) {
+            duplicates.incrementAndGet(); // повтор бара после реконнекта
+            return;
+        }
+        if (last > 0 && start > last + BAR_MS) {
+            gaps.incrementAndGet();
+            synchronized (t) {
+                t.pending.add(bar);
+            }
+            requestFetch(symbol, t, last + BAR_MS, start - BAR_MS);
+            return;
+        }
+
+        forward(symbol, bar, sink);
+        t.lastStart = start;
+    }
+
+    /**
+     * Сокет шарда переподключился: символы, у которых последний бар старше прошлой минуты,
+     * догружаем сразу, не дожидаясь следующего закрытого бара.
+     */
+    void onReconnected(List<String> symbols) {
+        long expectedLast = (Clock.now() / BAR_MS - 1) * BAR_MS;
+        for (String symbol : symbols) {
+            Track t = tracks.get(symbol);
+            if (t == null) continue;
+            long last = t.lastStart;
+            if (last > 0 && last < expectedLast) {
+                gaps.incrementAndGet();
+                requestFetch(symbol, t, last + BAR_MS, expectedLast);
+            }
+        }
+    }
+
+    private void flushReady(String symbol, Track t, MarketEventSink sink) {
+        List<Bar> ready;
+        synchronized (t) {
+            if (t.fetching) return;
+            ready = t.ready;
+            t.ready = new ArrayList<>();
+            t.hasReady = false;
+        }
+        for (Bar b : ready) {
+            if (b.start <= t.lastStart) continue;
+            forward(symbol, b, sink);
+            t.lastStart = b.start;
+        }
+    }
+
+    private static void forward(String symbol, Bar b, MarketEventSink sink) {
+        sink.onKline(symbol, b.close, b.turnover, b.oi, b.funding);
+    }
+
+    // ==================== загрузка ====================
+
+    private void requestFetch(String symbol, Track t, long from, long to) {
+        synchronized (t) {
+            if (t.fetching) return;
+            t.fetching = true;
+        }
+        // старше истории анализатора грузить незачем
+        long maxBars = Math.max(1, Settings.MAX_BAR_HISTORY);
+        long fromClamped = Math.max(from, to - (maxBars - 1) * BAR_MS);
+
+        inFlight.incrementAndGet();
+        fetchers.execute(() -> attempt(symbol, t, fromClamped, to, 0));
+    }
+
+    /**
+     * Одна попытка загрузки [from, to]. При ошибке пропуск остаётся открытым (fetching, живые
+     * бары — в pending) и попытка повторяется через RETRY_BASE_MS * 2^failures, не дольше RETRY_MAX_MS.
+     */
+    private void attempt(String symbol, Track t, long from, long to, int failures) {
+        List<Bar> fetched;
+        try {
+            fetched = fetch(symbol, from, to);
+            barsFetched.addAndGet(fetched.size());
+        } catch (Exception e) {
+            fetchErrors.incrementAndGet();
+            long delay = Math.min(RETRY_MAX_MS, RETRY_BASE_MS << Math.min(failures, 16));
+            System.err.println("[Backfill] " + symbol + " fetch error: " + e.getMessage() + ", retry in " + delay + " ms");
+            if (Settings.RUNNING) {
+                try {
+                    fetchers.schedule(() -> attempt(symbol, t, from, to, failures + 1), delay, TimeUnit.MILLISECONDS);
+                    retries.incrementAndGet();
+                    return;
+                } catch (RejectedExecutionException ignored) {
+                    // shutdown — отдаём то, что накопилось
+                }
+            }
+            fetched = new ArrayList<>();
+        }
+        synchronized (t) {
+            fetched.addAll(t.pending);
+            t.pending.clear();
+            fetched.sort(Comparator.comparingLong(b -> b.start));
+            t.ready.addAll(fetched);
+            t.fetching = false;
+            t.hasReady = !t.ready.isEmpty();
+        }
+        inFlight.decrementAndGet();
+    }
+
+    private List<Bar> fetch(String symbol, long from, long to) throws Exception {
+        CoinInfo info = MarketDataStore.get(symbol);
+        double oi = info != null ? info.openInterest : 0.0;
+        double funding = info != null ? info.fundingRate : 0.0;
+
+        JsonNode root = BybitHttp.getJson(URL + "?category=linear&interval=1&limit=1000&symbol=" + symbol
+                + "&start=" + from + "&end=" + to, BybitHttp.Priority.NORMAL);
+        // list: [start, open, high, low, close, volume, turnover], новые первыми
+        JsonNode list = root.path("result").path("list");
+        int n = list.size();
+        long[] start = new long[n];
+        double[] close = new double[n];
+        double[] turnover = new double[n];
+        int count = 0;
+        for (int i = n - 1; i >= 0; i--) { // разворачиваем: старые первыми
+            JsonNode row = list.get(i);
+            long st = row.path(0).asLong();
+            if (st < from || st > to) continue;
+            start[count] = st;
+            close[count] = row.path(4).asDouble();
+            turnover[count] = row.path(6).asDouble();
+            count++;
+        }
+        List<Bar> out = new ArrayList<>(count);
+        if (count == 0) return out;
+
+        // OI по точкам на закрытие каждого бара, а не одно текущее значение на весь пропуск
+        double[] oiUsd = HistoryBootstrap.oiUsdPerBar(symbol, start, close, count, BybitHttp.Priority.NORMAL);
+        for (int i = 0; i < count; i++) {
+            out.add(new Bar(start[i], close[i], turnover[i], oiUsd != null ? oiUsd[i] : oi, funding));
+        }
+        return out;
+    }
+
+    void shutdown() {
+        fetchers.shutdownNow();
+    }
+
+    String summary() {
+        return String.format("[Backfill] gaps=%d barsFetched=%d inFlight=%d errors=%d retries=%d duplicates=%d",
+                gaps.get(), barsFetched.get(), inFlight.get(), fetchErrors.get(), retries.get(), duplicates.get());
+    }
+}
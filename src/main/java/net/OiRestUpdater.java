@@ -1,18 +1,25 @@
 package net;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import okhttp3.*;
 import app.Settings;
 import store.MarketDataStore;
+import store.TickerStore;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 
 public class OiRestUpdater {
 
-    private static final OkHttpClient http = new OkHttpClient();
-    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final JsonFactory FACTORY = new JsonFactory();
 
     private static final String URL =
             "https://api.bybit.com/v5/market/tickers?category=linear";
@@ -77,60 +84,76 @@ public class OiRestUpdater {
 
 
     /**
-     * Один цикл обновления.
-     * Возвращает true — если OI успешно обновлён.
+     * Один цикл: REST только для символов, чей OI старше OI_STALE_MS (по биржевому времени
+     * из {@link TickerStore}). Пока тикер-WS присылает OI, он главный и REST не трогается.
+     * Возвращает true — если цикл прошёл без ошибок (в том числе когда догружать нечего).
      */
     private static boolean updateOnce() {
+        long now = app.Clock.now();
+        Set<String> stale = new HashSet<>();
+        for (String symbol : MarketDataStore.allSymbols()) {
+            if (now - TickerStore.oiTimestamp(symbol) > Settings.OI_STALE_MS) stale.add(symbol);
+        }
+        if (stale.isEmpty()) return true;
+
+        // немного устаревших — точечные запросы, много — один общий список
+        if (stale.size() <= Settings.OI_REST_SINGLE_MAX) {
+            int applied = 0;
+            for (String symbol : stale) {
+                int n = fetch(URL + "&symbol=" + symbol, stale);
+                if (n < 0) return false;
+                applied += n;
+            }
+            report(stale.size(), applied);
+            return true;
+        }
+        int applied = fetch(URL, stale);
+        if (applied < 0) return false;
+        report(stale.size(), applied);
+        return true;
+    }
+
+    private static void report(int stale, int applied) {
+        if (lastOiUpdateCount != applied) {
+            System.out.println("🔄 OI refresh: " + applied + " symbols (stale " + stale + ")");
+            lastOiUpdateCount = applied;
+        }
+    }
+
+    /**
+     * GET tickers и потоковый разбор; OI применяется только к символам из only.
+     *
+     * @return сколько символов отдано в TickerStore, или -1 при ошибке
+     */
+    private static int fetch(String url, Set<String> only) {
         for (int attempt = 1; attempt <= MAX_RETRIES_PER_CYCLE; attempt++) {
-            if (!Settings.RUNNING) return false;
+            if (!Settings.RUNNING) return -1;
 
             try {
-                Request req = new Request.Builder().url(URL).build();
+                Request req = new Request.Builder().url(url).build();
 
-                try (Response res = http.newCall(req).execute()) {
+                try (Response res = BybitHttp.execute(req, BybitHttp.Priority.LIVE)) {
                     int code = res.code();
 
-                    // 429 — уважение rate-limit
+                    // 429 — паузу по Retry-After уже взял BybitHttp (общее ведро IP), здесь не спим
                     if (code == 429) {
-                        long wait = parseRetryAfter(res);
-                        System.err.println("[OI] HTTP 429 — pausing for " + wait + "ms");
-                        Thread.sleep(wait);
-                        return false; // выходим наружу, пусть большой backoff подхватит
+                        System.err.println("[OI] HTTP 429 — rate limited");
+                        return -1; // выходим наружу, пусть большой backoff подхватит
                     }
 
                     // 5xx — проблемы у Bybit → не долбим
                     if (code >= 500) {
                         System.err.println("[OI] server error " + code);
-                        return false;
+                        return -1;
                     }
 
                     // прочие ошибки — не ретраим
                     if (!res.isSuccessful() || res.body() == null) {
                         System.err.println("[OI] HTTP error " + code);
-                        return false;
+                        return -1;
                     }
 
-                    // === твой исходный парсинг OI ===
-                    JsonNode root = mapper.readTree(res.body().string());
-                    JsonNode list = root.path("result").path("list");
-
-                    if (list.isArray()) {
-                        int updated = 0;
-                        for (JsonNode n : list) {
-                            String symbol = n.path("symbol").asText("");
-                            double oi = n.path("openInterestValue").asDouble(0.0);
-                            if (!symbol.isEmpty()) {
-                                MarketDataStore.updateOI(symbol, oi);
-                                updated++;
-                            }
-                        }
-                        if (lastOiUpdateCount != updated) {
-                            System.out.println("🔄 OI refresh: " + updated + " symbols");
-                            lastOiUpdateCount = updated;
-                        }
-                    }
-
-                    return true;
+                    return parseAndApply(res.body().byteStream(), only);
                 }
 
             } catch (IOException e) {
@@ -141,24 +164,72 @@ public class OiRestUpdater {
                 }
             } catch (InterruptedException ie) {
                 System.err.println("[OI] interrupted");
-                return false;
+                return -1;
             } catch (Exception e) {
                 System.err.println("[OI] unexpected: " + e.getMessage());
-                return false;
+                return -1;
             }
         }
-        return false;
+        return -1;
     }
 
-    private static long parseRetryAfter(Response res) {
-        String h = res.header("Retry-After");
-        if (h == null) return 60_000L;
-        try {
-            long sec = Long.parseLong(h.trim());
-            return Math.max(5_000L, sec * 1000L);
-        } catch (NumberFormatException e) {
-            return 60_000L;
+    /**
+     * Потоковый разбор ответа без дерева: symbol + openInterestValue из result.list.
+     * Биржевое время ответа ("time") стоит после списка, поэтому пары копим и применяем в конце.
+     */
+    private static int parseAndApply(InputStream body, Set<String> only) throws IOException {
+        List<String> symbols = new ArrayList<>();
+        double[] values = new double[256];
+        int retCode = -1;
+        long time = 0L;
+
+        try (JsonParser p = FACTORY.createParser(body)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return -1;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken t = p.nextToken();
+                switch (field) {
+                    case "retCode" -> retCode = p.getValueAsInt(-1);
+                    case "time" -> time = p.getValueAsLong(0L);
+                    case "result" -> {
+                        if (t != JsonToken.START_OBJECT) { p.skipChildren(); break; }
+                        while (p.nextToken() == JsonToken.FIELD_NAME) {
+                            String f = p.currentName();
+                            JsonToken lt = p.nextToken();
+                            if (!"list".equals(f) || lt != JsonToken.START_ARRAY) { p.skipChildren(); continue; }
+                            while (p.nextToken() == JsonToken.START_OBJECT) {
+                                String symbol = null;
+                                double oi = 0.0;
+                                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                                    String k = p.currentName();
+                                    p.nextToken();
+                                    switch (k) {
+                                        case "symbol" -> symbol = p.getText();
+                                        case "openInterestValue" -> oi = BybitStreamDecoder.parseDecimal(p);
+                                        default -> p.skipChildren();
+                                    }
+                                }
+                                if (symbol == null || oi <= 0 || !only.contains(symbol)) continue;
+                                if (symbols.size() == values.length) values = Arrays.copyOf(values, values.length * 2);
+                                values[symbols.size()] = oi;
+                                symbols.add(symbol);
+                            }
+                        }
+                    }
+                    default -> p.skipChildren();
+                }
+            }
+        }
+
+        if (retCode != 0) {
+            System.err.println("[OI] retCode=" + retCode);
+            return -1;
+        }
+        if (time <= 0) time = System.currentTimeMillis();
+        for (int i = 0; i < symbols.size(); i++) {
+            TickerStore.updateOiFromRest(symbols.get(i), values[i], time);
         }
+        return symbols.size();
     }
 }
 
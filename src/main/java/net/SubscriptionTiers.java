@@ -0,0 +1,214 @@
+package net;
+
+import app.Clock;
+import app.Settings;
+import core.PumpLiquidityAnalyzer;
+import model.CoinInfo;
+import model.InstrumentInfo;
+import state.SymbolState;
+import store.MarketDataStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Уровни активности символов: трафик и CPU растут с активностью рынка, а не с числом контрактов.
+ *
+ * <pre>
+ *   COLD — только tickers (конфлюэнтно, через TickerStore)
+ *   WARM — + kline.1: OI ≥ min.oi.light и суточный оборот/мин ≥ min.flow.floor × factor,
+ *          т.е. символ в принципе может пройти ворота OI/flow в analyze()
+ *   HOT  — + publicTrade: всплеск оборота (turnover24h за интервал против среднего за сутки)
+ *          или цены за интервал; держится, пока минутный поток сделок ≥ min.flow.floor
+ *          или по символу идёт наблюдение / был свежий сигнал
+ * </pre>
+ *
+ * Раз в subs.eval.sec символы переоцениваются по данным тикеров; понижение — не раньше
+ * subs.min.dwell.sec после того, как символ в последний раз подходил под уровень.
+ *
+ * Символ, пришедший в kline-поток из COLD, нужно прогреть: если он был вне потока недолго,
+ * пропуск дозагрузит {@link KlineBackfill}, иначе — {@link HistoryBootstrap} (без analyze на старых барах).
+ * Работает в одном потоке; счётчики читаются командой status.
+ */
+public final class SubscriptionTiers {
+
+    public enum Tier { COLD, WARM, HOT }
+
+    private static final long DAY_MS = 86_400_000L;
+    private static final long MINUTE_MS = 60_000L;
+    private static final long REBOOTSTRAP_AFTER_MS = 5 * 60_000L; // короче — хватит дозагрузки пропуска
+
+    /** Состояние символа; трогает только поток оценки. */
+    private static final class Track {
+        Tier tier = Tier.COLD;
+        double prevTurnover;
+        double prevPrice;
+        long hotUntil;
+        long warmUntil;
+        long leftKlinesAt; // когда символ ушёл из kline-потока (0 — не бывал в нём)
+    }
+
+    private static final Map<String, Track> tracks = new HashMap<>();
+    private static volatile Thread evaluator;
+
+    // метрики
+    private static volatile int hot;
+    private static volatile int warm;
+    private static volatile int cold;
+    private static final AtomicLong promotions = new AtomicLong();
+    private static final AtomicLong demotions = new AtomicLong();
+    private static final AtomicLong bootstrapped = new AtomicLong();
+    private static volatile double lastEvalMs;
+
+    private SubscriptionTiers() {
+    }
+
+    /** Запустить оценку; потоки kline/trades должны быть уже запущены (пустыми). */
+    public static synchronized void start(PumpLiquidityAnalyzer analyzer) {
+        if (evaluator != null) return;
+        Thread t = new Thread(() -> {
+            while (Settings.RUNNING) {
+                try {
+                    Thread.sleep(Math.max(1L, Settings.SUBS_EVAL_SEC) * 1000L);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    evaluate(analyzer);
+                } catch (Exception e) {
+                    System.err.println("[Tiers] evaluate error: " + e.getMessage());
+                }
+            }
+        }, "subscription-tiers");
+        t.setDaemon(true);
+        t.start();
+        evaluator = t;
+        System.out.println("▶ Subscription tiers: every " + Settings.SUBS_EVAL_SEC + "s, dwell "
+                + Settings.SUBS_MIN_DWELL_SEC + "s");
+    }
+
+    private static void evaluate(PumpLiquidityAnalyzer analyzer) {
+        long t0 = System.nanoTime();
+        long now = Clock.now();
+        long intervalMs = Math.max(1L, Settings.SUBS_EVAL_SEC) * 1000L;
+        long dwellMs = Settings.SUBS_MIN_DWELL_SEC * 1000L;
+        Map<String, SymbolState> states = analyzer.stateView();
+
+        List<String> klinesAdd = new ArrayList<>();
+        List<String> klinesRemove = new ArrayList<>();
+        List<String> tradesAdd = new ArrayList<>();
+        List<String> tradesRemove = new ArrayList<>();
+        List<String> needHistory = new ArrayList<>();
+        int h = 0, w = 0, c = 0;
+
+        for (String symbol : MarketDataStore.allSymbols()) {
+            CoinInfo info = MarketDataStore.get(symbol);
+            if (info == null) continue;
+            Track t = tracks.computeIfAbsent(symbol, k -> new Track());
+
+            double price = info.lastPrice;
+            double turnover = info.turnover24h;
+            double spike = 0.0;
+            if (t.prevTurnover > 0 && turnover > 0) {
+                double base = turnover * intervalMs / DAY_MS;
+                spike = base > 0 ? (turnover - t.prevTurnover) / base : 0.0;
+            }
+            double movePct = (t.prevPrice > 0 && price > 0) ? Math.abs(price / t.prevPrice - 1.0) * 100.0 : 0.0;
+            t.prevTurnover = turnover;
+            t.prevPrice = price;
+
+            boolean listed = isListed(symbol);
+            boolean oiOk = info.openInterest >= Settings.MIN_OI_LIGHT;
+            boolean liquid = turnover / 1440.0 >= Settings.MIN_FLOW_FLOOR * Settings.SUBS_WARM_TURNOVER_FACTOR;
+
+            SymbolState s = states.get(symbol);
+            boolean flowing = t.tier == Tier.HOT && s != null && minuteFlow(s, now) >= Settings.MIN_FLOW_FLOOR;
+            boolean watched = s != null && (s.getWatchStreak() > 0 || now - s.getLastSignalAtMs() < dwellMs);
+
+            boolean isHot = listed && oiOk && (spike >= Settings.SUBS_HOT_TURNOVER_RATIO
+                    || movePct >= Settings.SUBS_HOT_PRICE_MOVE_PCT || flowing || watched);
+            boolean isWarm = listed && (isHot || (oiOk && liquid));
+            if (isHot) t.hotUntil = now + dwellMs;
+            if (isWarm) t.warmUntil = now + dwellMs;
+
+            Tier target = !listed ? Tier.COLD
+                    : now < t.hotUntil ? Tier.HOT
+                    : now < t.warmUntil ? Tier.WARM
+                    : Tier.COLD;
+
+            if (target != t.tier) {
+                boolean hadKlines = t.tier != Tier.COLD;
+                boolean wantKlines = target != Tier.COLD;
+                if (!hadKlines && wantKlines) {
+                    klinesAdd.add(symbol);
+                    boolean longGone = t.leftKlinesAt == 0 || now - t.leftKlinesAt > REBOOTSTRAP_AFTER_MS;
+                    boolean noHistory = s == null || s.closes.isEmpty();
+                    if (noHistory || longGone) needHistory.add(symbol);
+                }
+                if (hadKlines && !wantKlines) {
+                    klinesRemove.add(symbol);
+                    t.leftKlinesAt = now;
+                }
+                if (target == Tier.HOT) tradesAdd.add(symbol);
+                if (t.tier == Tier.HOT) tradesRemove.add(symbol);
+
+                if (target.ordinal() > t.tier.ordinal()) promotions.incrementAndGet();
+                else demotions.incrementAndGet();
+                t.tier = target;
+            }
+            switch (t.tier) {
+                case HOT -> h++;
+                case WARM -> w++;
+                default -> c++;
+            }
+        }
+
+        // прогрев до подписки: первый живой бар уже встанет за историей
+        if (!needHistory.isEmpty() && Settings.BOOTSTRAP_ENABLED && !Settings.SIM_ENABLED) {
+            Map<String, Long> lastStarts = new HistoryBootstrap(analyzer)
+                    .run(needHistory, Settings.BOOTSTRAP_CONCURRENCY, Settings.BOOTSTRAP_TIMEOUT_SEC);
+            lastStarts.forEach(BybitWsClient::seedKlineStart);
+            bootstrapped.addAndGet(lastStarts.size());
+        }
+        if (!klinesAdd.isEmpty()) BybitWsClient.addKlineSymbols(klinesAdd);
+        if (!tradesAdd.isEmpty()) BybitWsClient.addTradeSymbols(tradesAdd);
+        if (!tradesRemove.isEmpty()) BybitWsClient.removeTradeSymbols(tradesRemove);
+        if (!klinesRemove.isEmpty()) BybitWsClient.removeKlineSymbols(klinesRemove);
+
+        hot = h;
+        warm = w;
+        cold = c;
+        lastEvalMs = (System.nanoTime() - t0) / 1e6;
+
+        if (!tradesAdd.isEmpty() || !klinesAdd.isEmpty() || !klinesRemove.isEmpty()) {
+            System.out.printf("🔄 Tiers: hot=%d warm=%d cold=%d | trades +%d -%d, klines +%d -%d%n",
+                    h, w, c, tradesAdd.size(), tradesRemove.size(), klinesAdd.size(), klinesRemove.size());
+        }
+    }
+
+    /** Без каталога (sim) торгуется всё, что есть в MarketDataStore. */
+    private static boolean isListed(String symbol) {
+        if (InstrumentCatalog.size() == 0) return true;
+        InstrumentInfo i = InstrumentCatalog.get(symbol);
+        return i != null && i.isTrading();
+    }
+
+    /**
+     * Поток сделок текущей минуты, пересчитанный на минуту. Поля пишет анализатор без
+     * синхронизации с нами — для порога удержания уровня точности чтения хватает.
+     */
+    private static double minuteFlow(SymbolState s, long now) {
+        long elapsed = Math.max(10_000L, now % MINUTE_MS);
+        double flow = s.read(() -> s.buyAgg1m + s.sellAgg1m); // пара полей — согласованно, без монитора
+        return flow * MINUTE_MS / elapsed;
+    }
+
+    public static String summary() {
+        if (evaluator == null) return "[Tiers] disabled";
+        return String.format("[Tiers] hot=%d warm=%d cold=%d | promotions=%d demotions=%d bootstrapped=%d, eval %.1f ms",
+                hot, warm, cold, promotions.get(), demotions.get(), bootstrapped.get(), lastEvalMs);
+    }
+}
@@ -0,0 +1,247 @@
+package net;
+
+import app.Clock;
+import app.Settings;
+import core.MarketEventSink;
+import model.CoinInfo;
+import store.MarketDataStore;
+import store.SymbolRegistry;
+import store.SymbolTable;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Бары из потока publicTrade вместо подписки kline.1.* (bars.source=trades).
+ *
+ * Бар определяется биржевым временем сделки T: start = T - T % barMs; OHLC — по ценам сделок,
+ * оборот — сумма USD. Размер бара — bars.trade.sec (по умолчанию минута; 5 / 15 с тоже работают,
+ * но пороги анализатора откалиброваны на минутные бары).
+ *
+ * Закрытие:
+ * <pre>
+ *   - сделка символа из более нового бара сразу закрывает текущий;
+ *   - водяной знак (Clock.now() - bars.close.grace.ms) раз в секунду закрывает бары всех символов,
+ *     в том числе без сделок — плоским баром по прошлому close с нулевым оборотом.
+ * </pre>
+ * Закрытый бар уходит в {@link MarketEventSink#onKline} с OI/funding из MarketDataStore — как
+ * закрытая kline. Сделки из уже закрытого бара (опоздали за водяной знак) в бары не попадают.
+ * Первый бар символа неполный (поток начался посреди бара) и не отдаётся.
+ *
+ * Символ могут писать несколько шардов и поток водяного знака — состояние под монитором символа;
+ * бары одного символа уходят по порядку.
+ *
+ * Бары идут не прямо в анализатор, а в тот же sink, что и сделки, и сделки пачки публикует сам
+ * {@link #onTrades}: пачка, пересекающая границу бара, режется — сделки закрываемого бара уходят
+ * до его onKline, сделки нового — после. В очереди партиции бар стоит после всех сделок своей
+ * минуты и перед сделками следующей (onKline обнуляет минутный поток агрессора). Водяной знак
+ * пишет в свой продюсер (буферы остаются SPSC); он закрывает бар не раньше чем через
+ * bars.close.grace.ms после его конца — сделки этого бара к тому времени давно в очереди.
+ */
+public final class TradeBars {
+
+    private static final long TICK_MS = 1_000L;
+
+    private static final class Track {
+        long start;        // start текущего бара; 0 — сделок ещё не было
+        double open;
+        double high;
+        double low;
+        double close;
+        double turnover;
+        int trades;
+        boolean complete;  // бар начался не посреди потока
+        boolean changed;   // были сделки после последнего частичного бара
+    }
+
+    private static final SymbolTable<Track> tracks = new SymbolTable<>();
+    private static volatile MarketEventSink target; // sink водяного знака; null — выключено
+    private static volatile long barMs = 60_000L;
+
+    // метрики
+    private static final LongAdder closed = new LongAdder();
+    private static final LongAdder empty = new LongAdder();
+    private static final LongAdder late = new LongAdder();
+
+    private TradeBars() {
+    }
+
+    /**
+     * Включить построение баров.
+     *
+     * @param sink  куда водяной знак отдаёт бары: свой продюсер конвейера или сам анализатор
+     * @param timer true — свой поток водяного знака (live); в replay его двигает ReplayRunner
+     */
+    public static synchronized void start(MarketEventSink sink, boolean timer) {
+        if (target != null) return;
+        barMs = Math.max(1L, Settings.BARS_TRADE_SEC) * 1000L;
+        target = sink;
+        System.out.println("▶ Bars from trades: " + (barMs / 1000) + "s, grace " + Settings.BARS_CLOSE_GRACE_MS + " ms");
+        if (!timer) return;
+
+        Thread t = new Thread(() -> {
+            while (Settings.RUNNING) {
+                try {
+                    Thread.sleep(TICK_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    advanceWatermark(Clock.now());
+                } catch (Exception e) {
+                    System.err.println("[Bars] watermark error: " + e.getMessage());
+                }
+            }
+        }, "trade-bars");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public static boolean enabled() {
+        return target != null;
+    }
+
+    // ==================== сделки ====================
+
+    /**
+     * Пачка сделок одного символа (после дедупликации): бары и сами сделки, по порядку.
+     * Сделки до границы бара отдаются в sink раньше, чем закрытый ими бар.
+     *
+     * @param sink продюсер шарда: и сделки, и бары, закрытые ими
+     */
+    static void onTrades(MarketEventSink sink, String symbol, boolean[] isBuy, double[] price, double[] usd,
+                         long[] ts, int count) {
+        if (count <= 0) return;
+        if (target == null) {
+            sink.onTrades(symbol, isBuy, usd, ts, count);
+            return;
+        }
+        Track t = tracks.computeIfAbsent(symbol, k -> new Track());
+        synchronized (t) {
+            int from = 0;
+            for (int i = 0; i < count; i++) {
+                if (i > from && t.start != 0 && barStart(ts[i]) > t.start) {
+                    publish(sink, symbol, isBuy, usd, ts, from, i); // сделки закрываемого бара — до него
+                    from = i;
+                }
+                apply(sink, symbol, t, price[i], usd[i], ts[i]);
+            }
+            publish(sink, symbol, isBuy, usd, ts, from, count);
+        }
+    }
+
+    /** Сделки [from, to) пачки; хвост после границы бара — копией (граница бара — раз в минуту). */
+    private static void publish(MarketEventSink sink, String symbol, boolean[] isBuy, double[] usd, long[] ts,
+                                int from, int to) {
+        if (from == 0) {
+            sink.onTrades(symbol, isBuy, usd, ts, to);
+            return;
+        }
+        sink.onTrades(symbol, Arrays.copyOfRange(isBuy, from, to), Arrays.copyOfRange(usd, from, to),
+                Arrays.copyOfRange(ts, from, to), to - from);
+    }
+
+    private static long barStart(long ts) {
+        if (ts <= 0) ts = Clock.now();
+        return ts - Math.floorMod(ts, barMs);
+    }
+
+    /** Одна сделка (декодер на дереве). */
+    static void onTrade(MarketEventSink sink, String symbol, double price, double usd, long ts) {
+        if (target == null) return;
+        Track t = tracks.computeIfAbsent(symbol, k -> new Track());
+        synchronized (t) {
+            apply(sink, symbol, t, price, usd, ts);
+        }
+    }
+
+    private static void apply(MarketEventSink sink, String symbol, Track t, double price, double usd, long ts) {
+        long start = barStart(ts);
+
+        if (t.start == 0) {
+            open(t, start, price, false);
+        } else if (start < t.start) {
+            late.increment(); // бар уже отдан
+            return;
+        } else if (start > t.start) {
+            roll(sink, symbol, t, start);
+        }
+
+        if (t.trades == 0) {
+            t.open = t.high = t.low = price;
+        } else {
+            if (price > t.high) t.high = price;
+            if (price < t.low) t.low = price;
+        }
+        t.close = price;
+        t.turnover += usd;
+        t.trades++;
+        t.changed = true;
+    }
+
+    // ==================== закрытие ====================
+
+    /**
+     * Закрыть все бары, кончившиеся до nowMs - grace, и отдать свежие частичные бары.
+     * Live — раз в секунду из своего потока, replay — по журнальным секундам.
+     */
+    public static void advanceWatermark(long nowMs) {
+        MarketEventSink sink = target;
+        if (sink == null) return;
+        long wm = nowMs - Settings.BARS_CLOSE_GRACE_MS;
+        long wmStart = wm - Math.floorMod(wm, barMs);
+
+        for (int id = 0, n = SymbolRegistry.size(); id < n; id++) {
+            Track t = tracks.get(id);
+            if (t == null) continue;
+            String symbol = SymbolRegistry.symbol(id);
+            synchronized (t) {
+                if (t.start == 0) continue;
+                if (t.start < wmStart) roll(sink, symbol, t, wmStart);
+                if (t.changed && t.complete && t.trades > 0 && Settings.KLINE_PARTIAL_ENABLED) {
+                    sink.onKlinePartial(symbol, t.start, t.open, t.high, t.low, t.close, t.turnover);
+                }
+                t.changed = false;
+            }
+        }
+    }
+
+    /** Закрыть текущий бар, отдать плоские бары за пустые интервалы и открыть бар newStart. */
+    private static void roll(MarketEventSink sink, String symbol, Track t, long newStart) {
+        emit(sink, symbol, t);
+        long gap = (newStart - t.start) / barMs - 1;
+        if (gap > Settings.MAX_BAR_HISTORY) {
+            gap = 0; // символ долго молчал — ряды не забиваем пустыми барами
+        }
+        double last = t.close;
+        for (long k = 0; k < gap; k++) {
+            open(t, t.start + barMs, last, true);
+            emit(sink, symbol, t);
+        }
+        open(t, newStart, last, true);
+    }
+
+    private static void open(Track t, long start, double price, boolean complete) {
+        t.start = start;
+        t.open = t.high = t.low = t.close = price;
+        t.turnover = 0.0;
+        t.trades = 0;
+        t.complete = complete;
+        t.changed = false;
+    }
+
+    private static void emit(MarketEventSink sink, String symbol, Track t) {
+        if (!t.complete) return;
+        CoinInfo info = MarketDataStore.get(symbol);
+        if (info == null) return;
+        if (t.trades == 0) empty.increment();
+        closed.increment();
+        sink.onKline(symbol, t.close, t.turnover, info.openInterest, info.fundingRate);
+    }
+
+    public static String summary() {
+        if (target == null) return "[Bars] source=kline";
+        return String.format("[Bars] source=trades, %ds bars, symbols=%d | closed=%d (empty %d), late trades=%d",
+                barMs / 1000, tracks.count(), closed.sum(), empty.sum(), late.sum());
+    }
+}
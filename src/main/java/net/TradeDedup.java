@@ -0,0 +1,191 @@
+package net;
+
+import store.SymbolTable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Дедупликация publicTrade по ID сделки ("i") и времени ("T") и учёт подозрений на пропуски.
+ *
+ * На символ — кольцо последних RING сделок (64-битный хэш ID + T) и два поколения
+ * bloom-фильтра перед ним. Новая сделка почти всегда отсекается одной проверкой битов;
+ * кольцо сканируется только при попадании в фильтр. Поколения меняются каждые RING вставок:
+ * вместе они покрывают не меньше RING последних ID, поэтому всё, что лежит в кольце,
+ * фильтр не пропустит. Аллокаций на сделку нет.
+ *
+ * Пропуски: Bybit не досылает сделки, пришедшие, пока сокет был закрыт. Поэтому символ шарда,
+ * переподключившегося после того, как по символу уже были сделки, считается подозрением на
+ * пропуск (первая сделка после реконнекта). Отдельно считаются сделки с T старше всего кольца:
+ * сверить их не с чем, они пропускаются дальше без записи в кольцо.
+ *
+ * Символ обычно читает один шард, но после переноса между шардами (уровни активности)
+ * или при перекрывающихся шардах — несколько: состояние символа под его монитором.
+ */
+public final class TradeDedup {
+
+    private static final int RING = 256;
+    private static final int BLOOM_BITS = 4096; // на поколение
+    private static final int BLOOM_WORDS = BLOOM_BITS / 64;
+
+    private static final class Track {
+        final long[] ids = new long[RING];
+        final long[] times = new long[RING];
+        int head;
+        int size;
+        final long[] bloom = new long[2 * BLOOM_WORDS]; // [текущее | прошлое] по очереди
+        int gen;       // 0 или 1 — куда пишем
+        int genFill;   // вставок в текущее поколение
+        long lastTs;
+        boolean resync;
+    }
+
+    private static final SymbolTable<Track> tracks = new SymbolTable<>();
+
+    // метрики
+    private static final LongAdder checked = new LongAdder();
+    private static final LongAdder duplicates = new LongAdder();
+    private static final LongAdder bloomHits = new LongAdder();
+    private static final LongAdder gaps = new LongAdder();
+    private static final LongAdder late = new LongAdder();
+
+    private TradeDedup() {
+    }
+
+    // ==================== хэш ID ====================
+
+    /** 64-битный хэш ID прямо из char[] парсера (FNV-1a + финальное перемешивание). */
+    static long hash(char[] buf, int off, int len) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = off, end = off + len; i < end; i++) {
+            h ^= buf[i];
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    static long hash(CharSequence s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h; // 0 — «ID нет»
+    }
+
+    // ==================== проверка ====================
+
+    /**
+     * Оставить в пачке только новые сделки (порядок сохраняется).
+     *
+     * @param ids хэши ID; 0 — ID в кадре не было, такая сделка не проверяется
+     * @return сколько сделок осталось
+     */
+    static int filter(String symbol, long[] ids, long[] ts, boolean[] isBuy, double[] price, double[] usd, int count) {
+        Track t = tracks.computeIfAbsent(symbol, k -> new Track());
+        int kept = 0;
+        synchronized (t) {
+            for (int i = 0; i < count; i++) {
+                if (ids[i] != 0 && !admit(t, ids[i], ts[i])) continue;
+                if (kept != i) {
+                    ids[kept] = ids[i];
+                    ts[kept] = ts[i];
+                    isBuy[kept] = isBuy[i];
+                    price[kept] = price[i];
+                    usd[kept] = usd[i];
+                }
+                kept++;
+            }
+        }
+        checked.add(count);
+        return kept;
+    }
+
+    /** Одна сделка (декодер на дереве). */
+    static boolean accept(String symbol, long id, long ts) {
+        if (id == 0) return true;
+        Track t = tracks.computeIfAbsent(symbol, k -> new Track());
+        checked.increment();
+        synchronized (t) {
+            return admit(t, id, ts);
+        }
+    }
+
+    private static boolean admit(Track t, long id, long ts) {
+        int b1 = (int) (id & (BLOOM_BITS - 1));
+        int b2 = (int) ((id >>> 32) & (BLOOM_BITS - 1));
+        if (inBloom(t, 0, b1, b2) || inBloom(t, BLOOM_WORDS, b1, b2)) {
+            bloomHits.increment();
+            for (int k = 0, j = t.head; k < t.size; k++) {
+                j = (j == 0 ? RING : j) - 1;
+                if (t.ids[j] == id && t.times[j] == ts) {
+                    duplicates.increment();
+                    return false;
+                }
+            }
+        }
+
+        if (t.resync) {
+            t.resync = false;
+            if (t.lastTs > 0 && ts > t.lastTs) gaps.increment();
+        }
+        if (t.size == RING && ts < t.times[t.head]) {
+            // старше всего кольца: сверить не с чем, а вставка вытеснила бы более новые ID
+            late.increment();
+            return true;
+        }
+        if (ts > t.lastTs) t.lastTs = ts;
+
+        t.ids[t.head] = id;
+        t.times[t.head] = ts;
+        t.head = (t.head + 1) % RING;
+        if (t.size < RING) t.size++;
+
+        if (t.genFill == RING) { // новое поколение поверх самого старого
+            t.gen ^= 1;
+            Arrays.fill(t.bloom, t.gen * BLOOM_WORDS, (t.gen + 1) * BLOOM_WORDS, 0L);
+            t.genFill = 0;
+        }
+        int base = t.gen * BLOOM_WORDS;
+        t.bloom[base + (b1 >>> 6)] |= 1L << b1;
+        t.bloom[base + (b2 >>> 6)] |= 1L << b2;
+        t.genFill++;
+        return true;
+    }
+
+    private static boolean inBloom(Track t, int base, int b1, int b2) {
+        return (t.bloom[base + (b1 >>> 6)] & (1L << b1)) != 0
+                && (t.bloom[base + (b2 >>> 6)] & (1L << b2)) != 0;
+    }
+
+    // ==================== реконнект ====================
+
+    /** Шард переподключён: сделки этих символов за время обрыва потеряны. */
+    static void onReconnected(Collection<String> symbols) {
+        for (String symbol : symbols) {
+            Track t = tracks.get(symbol);
+            if (t == null) continue;
+            synchronized (t) {
+                t.resync = true;
+            }
+        }
+    }
+
+    public static String summary() {
+        long n = checked.sum();
+        return String.format("[Dedup] trades checked=%d, duplicates dropped=%d, bloom hits=%d (%.2f%%), "
+                        + "suspected gaps=%d, late (older than ring)=%d",
+                n, duplicates.sum(), bloomHits.sum(), n > 0 ? bloomHits.sum() * 100.0 / n : 0.0,
+                gaps.sum(), late.sum());
+    }
+}
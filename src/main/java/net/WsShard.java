@@ -0,0 +1,312 @@
+package net;
+
+import journal.JournalAppender;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Один шард WebSocket-потока: свой сокет (и свой поток чтения OkHttp),
+ * свой набор топиков, независимый реконнект с backoff и собственная частота сообщений.
+ *
+ * Падение шарда роняет только его символы, остальные шарды потока продолжают работать.
+ */
+final class WsShard {
+
+    /** Обработчик кадров шарда. Вызывается только из потока чтения этого шарда. */
+    interface Handler {
+        void onMessage(String text) throws Exception;
+
+        /** Сокет переподключён (не первое открытие); topics — все топики шарда. */
+        default void onReconnected(List<String> topics) {
+        }
+    }
+
+    private static final int SUBSCRIBE_BATCH = 200;
+    private static final String PING = "{\"op\":\"ping\"}";
+
+    final String stream;
+    final int index;
+
+    private final List<String> topics; // COW: досписка символов идёт с потока каталога
+    private final Handler handler;
+    private final JournalAppender journal; // null — запись сырых кадров выключена
+    private final ScheduledExecutorService reconnectExec;
+
+    // backoff реконнекта
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final int maxFails;          // 0 — без ограничения
+    private long reconnectDelayMs;
+    private int failCount = 0;
+
+    private volatile WebSocket ws;
+    private volatile boolean open = false;   // рукопожатие прошло; ws != null ещё не значит «подключён»
+    private volatile boolean stopped = false;
+    private boolean openedOnce = false;
+
+    // метрики
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private volatile long lastMessageAtMs = 0;
+
+    // heartbeat
+    private final long pingIntervalMs;
+    private final long staleMs;
+    private long lastPingAtMs = 0;            // только поток heartbeat
+    private volatile long pingSentNanos = 0;  // 0 — pong не ждём
+    private volatile long lastRttMicros = -1;
+    private final AtomicLong staleKills = new AtomicLong();
+    private long rateSampleCount = 0;
+    private long rateSampleNanos = System.nanoTime();
+    private volatile double lastRate = 0.0;
+
+    WsShard(String stream,
+            int index,
+            List<String> topics,
+            Handler handler,
+            JournalAppender journal,
+            ScheduledExecutorService reconnectExec,
+            long baseDelayMs,
+            long maxDelayMs,
+            int maxFails,
+            long pingIntervalMs,
+            long staleMs) {
+        this.stream = stream;
+        this.index = index;
+        this.topics = new CopyOnWriteArrayList<>(topics);
+        this.handler = handler;
+        this.journal = journal;
+        this.reconnectExec = reconnectExec;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.maxFails = maxFails;
+        this.reconnectDelayMs = baseDelayMs;
+        this.pingIntervalMs = pingIntervalMs;
+        this.staleMs = staleMs;
+    }
+
+    String tag() {
+        return "[WS " + stream + "#" + index + "]";
+    }
+
+    int topicCount() {
+        return topics.size();
+    }
+
+    /** Досписать топики на ходу; при следующем открытии сокета они подпишутся сами. */
+    void addTopics(Collection<String> add) {
+        List<String> fresh = new ArrayList<>();
+        for (String t : add) {
+            if (!topics.contains(t)) fresh.add(t);
+        }
+        if (fresh.isEmpty()) return;
+        topics.addAll(fresh);
+        WebSocket w = ws;
+        if (w != null) {
+            for (int i = 0; i < fresh.size(); i += SUBSCRIBE_BATCH) {
+                BybitWsClient.subscribe(w, fresh.subList(i, Math.min(i + SUBSCRIBE_BATCH, fresh.size())));
+            }
+        }
+    }
+
+    /** Убрать топики шарда (делистинг); возвращает, сколько было убрано. */
+    int removeTopics(Collection<String> remove) {
+        List<String> gone = new ArrayList<>();
+        for (String t : remove) {
+            if (topics.remove(t)) gone.add(t);
+        }
+        WebSocket w = ws;
+        if (w != null && !gone.isEmpty()) {
+            for (int i = 0; i < gone.size(); i += SUBSCRIBE_BATCH) {
+                BybitWsClient.unsubscribe(w, gone.subList(i, Math.min(i + SUBSCRIBE_BATCH, gone.size())));
+            }
+        }
+        return gone.size();
+    }
+
+    void start() {
+        if (stopped || !app.Settings.RUNNING) return;
+        ws = BybitWsClient.connect(new Listener());
+    }
+
+    void stop() {
+        stopped = true;
+        WebSocket w = ws;
+        ws = null;
+        open = false;
+        if (w != null) {
+            try { w.close(1000, "shutdown"); } catch (Exception ignored) {}
+        }
+    }
+
+    private final class Listener extends WebSocketListener {
+
+        @Override
+        public void onOpen(@NotNull WebSocket w, @NotNull Response r) {
+            // не сверяем с ws: onOpen может прийти раньше, чем start() присвоит поле
+            if (!stopped) open = true;
+            List<String> all = List.copyOf(topics);
+            for (int i = 0; i < all.size(); i += SUBSCRIBE_BATCH) {
+                BybitWsClient.subscribe(w, all.subList(i, Math.min(i + SUBSCRIBE_BATCH, all.size())));
+            }
+            System.out.println("✅ " + tag() + " subscribed (" + all.size() + ")");
+            lastMessageAtMs = System.currentTimeMillis(); // отсчёт тишины — с момента открытия
+            pingSentNanos = 0;
+            boolean reconnected;
+            synchronized (WsShard.this) {
+                failCount = 0;
+                reconnectDelayMs = baseDelayMs;
+                reconnected = openedOnce;
+                openedOnce = true;
+            }
+            if (reconnected) {
+                try {
+                    handler.onReconnected(topics);
+                } catch (Exception e) {
+                    System.err.println(tag() + " onReconnected error: " + e.getMessage());
+                }
+            }
+        }
+
+        @Override
+        public void onMessage(@NotNull WebSocket w, @NotNull String text) {
+            messages.incrementAndGet();
+            long now = System.currentTimeMillis();
+            lastMessageAtMs = now;
+            long ps = pingSentNanos;
+            if (ps != 0 && text.length() < 256 && text.contains("\"pong\"")) {
+                lastRttMicros = (System.nanoTime() - ps) / 1_000L;
+                pingSentNanos = 0;
+                return;
+            }
+            if (journal != null) {
+                journal.append(System.nanoTime(), now, text);
+            }
+            try {
+                handler.onMessage(text);
+            } catch (Exception ignore) {}
+        }
+
+        @Override
+        public void onFailure(@NotNull WebSocket w, @NotNull Throwable t, Response r) {
+            String http = (r != null ? (r.code() + " " + r.message()) : "no HTTP response");
+            System.err.println(tag() + " failure: " + t.getClass().getSimpleName() + " | " + http + " | " + t.getMessage());
+            if (ws == w) {
+                ws = null;
+                open = false;
+            }
+            scheduleReconnect("failure");
+        }
+
+        @Override
+        public void onClosed(@NotNull WebSocket w, int code, @NotNull String reason) {
+            System.err.println(tag() + " closed " + code + " " + reason);
+            if (ws == w) {
+                ws = null;
+                open = false;
+            }
+            scheduleReconnect("closed");
+        }
+    }
+
+    private void scheduleReconnect(String reason) {
+        if (stopped || !app.Settings.RUNNING) return;
+
+        long delay;
+        synchronized (this) {
+            failCount++;
+            if (maxFails > 0 && failCount > maxFails) {
+                System.err.println(tag() + " disabled after " + failCount + " failures");
+                return;
+            }
+            delay = reconnectDelayMs;
+            reconnectDelayMs = Math.min(reconnectDelayMs * 2, maxDelayMs);
+        }
+
+        System.err.println(tag() + " reconnect in " + delay + " ms (" + reason + "), fail# " + failCount);
+        reconnects.incrementAndGet();
+        reconnectExec.schedule(() -> {
+            try {
+                start();
+            } catch (Exception e) {
+                System.err.println(tag() + " reconnect error: " + e.getMessage());
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    // ===== heartbeat =====
+
+    /**
+     * Раз в секунду с потока heartbeat: ping раз в pingIntervalMs и принудительный реконнект,
+     * если сокет молчит дольше staleMs (pong тоже считается сообщением, так что живой,
+     * но тихий шард не рвётся).
+     */
+    void heartbeat(long nowMs) {
+        WebSocket w = ws;
+        if (w == null || stopped) return;
+
+        long silentMs = nowMs - lastMessageAtMs;
+        if (staleMs > 0 && silentMs > staleMs) {
+            staleKills.incrementAndGet();
+            System.err.println(tag() + " stale: no messages for " + silentMs + " ms, forcing reconnect");
+            w.cancel(); // → onFailure → scheduleReconnect
+            return;
+        }
+
+        if (pingIntervalMs > 0 && nowMs - lastPingAtMs >= pingIntervalMs) {
+            lastPingAtMs = nowMs;
+            if (pingSentNanos == 0) pingSentNanos = System.nanoTime();
+            w.send(PING);
+        }
+    }
+
+    // ===== метрики =====
+
+    /** Сокет открыт (onOpen уже пришёл), а не просто создан и ждёт рукопожатия. */
+    boolean isConnected() {
+        return open;
+    }
+
+    long messages() {
+        return messages.get();
+    }
+
+    long reconnects() {
+        return reconnects.get();
+    }
+
+    long lastMessageAtMs() {
+        return lastMessageAtMs;
+    }
+
+    long lastRttMicros() {
+        return lastRttMicros;
+    }
+
+    long staleKills() {
+        return staleKills.get();
+    }
+
+    /** Частота сообщений (msg/s) с момента предыдущего замера. */
+    synchronized double sampleRate() {
+        long now = System.nanoTime();
+        long count = messages.get();
+        long dtNanos = now - rateSampleNanos;
+        if (dtNanos >= 1_000_000_000L) {
+            lastRate = (count - rateSampleCount) * 1e9 / dtNanos;
+            rateSampleCount = count;
+            rateSampleNanos = now;
+        }
+        return lastRate;
+    }
+}
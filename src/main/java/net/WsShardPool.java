@@ -0,0 +1,136 @@
+package net;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Пул шардов одного потока (publicTrade / kline / tickers / liquidation).
+ *
+ * Символы раскладываются по N шардам round-robin по отсортированному списку,
+ * чтобы тяжёлые монеты не собирались в одном сокете. N задаётся явно
+ * (ws.shards.*) или считается из ws.symbols.per.shard.
+ */
+final class WsShardPool {
+
+    private static final long HEARTBEAT_TICK_MS = 1_000L;
+
+    final String stream;
+    private final String topicPrefix;
+    private final List<WsShard> shards = new ArrayList<>();
+    private final ScheduledExecutorService exec;
+    private ScheduledFuture<?> heartbeat;
+
+    /**
+     * @param topicPrefix    префикс топика, например "publicTrade." или "kline.1."
+     * @param symbols        вся вселенная символов потока — по ней считается число шардов
+     * @param subscribed     что подписать сразу (остальное досписывается через addSymbols)
+     * @param shardCount     число шардов; 0 — считать из symbolsPerShard
+     * @param handlerFactory новый обработчик на каждый шард (декодеры не потокобезопасны)
+     */
+    WsShardPool(String stream,
+                String topicPrefix,
+                Collection<String> symbols,
+                Collection<String> subscribed,
+                int shardCount,
+                int symbolsPerShard,
+                Supplier<WsShard.Handler> handlerFactory,
+                ScheduledExecutorService reconnectExec,
+                long baseDelayMs,
+                long maxDelayMs,
+                int maxFails,
+                long pingIntervalMs,
+                long staleMs) {
+        this.stream = stream;
+        this.topicPrefix = topicPrefix;
+        this.exec = reconnectExec;
+
+        int universe = symbols.size();
+        int n = shardCount > 0
+                ? shardCount
+                : (int) Math.ceil(universe / (double) Math.max(1, symbolsPerShard));
+        n = Math.max(1, Math.min(n, Math.max(1, universe)));
+
+        List<String> sorted = new ArrayList<>(subscribed);
+        sorted.sort(null);
+
+        List<List<String>> topicsPerShard = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) topicsPerShard.add(new ArrayList<>());
+        for (int i = 0; i < sorted.size(); i++) {
+            topicsPerShard.get(i % n).add(topicPrefix + sorted.get(i));
+        }
+
+        for (int i = 0; i < n; i++) {
+            shards.add(new WsShard(stream, i, topicsPerShard.get(i), handlerFactory.get(),
+                    BybitWsClient.journalFor(stream, i), reconnectExec, baseDelayMs, maxDelayMs, maxFails,
+                    pingIntervalMs, staleMs));
+        }
+    }
+
+    void start() {
+        for (WsShard s : shards) s.start();
+        heartbeat = exec.scheduleAtFixedRate(() -> {
+            long now = System.currentTimeMillis();
+            for (WsShard s : shards) {
+                try {
+                    s.heartbeat(now);
+                } catch (Exception e) {
+                    System.err.println(s.tag() + " heartbeat error: " + e.getMessage());
+                }
+            }
+        }, HEARTBEAT_TICK_MS, HEARTBEAT_TICK_MS, TimeUnit.MILLISECONDS);
+        System.out.println("▶ WS " + stream + ": " + shards.size() + " shard(s)");
+    }
+
+    void stop() {
+        if (heartbeat != null) heartbeat.cancel(false);
+        for (WsShard s : shards) s.stop();
+    }
+
+    /** Новые символы (листинги) — в наименее загруженные шарды. */
+    synchronized void addSymbols(Collection<String> symbols) {
+        for (String symbol : symbols) {
+            WsShard target = shards.get(0);
+            for (WsShard s : shards) {
+                if (s.topicCount() < target.topicCount()) target = s;
+            }
+            target.addTopics(List.of(topicPrefix + symbol));
+        }
+    }
+
+    synchronized void removeSymbols(Collection<String> symbols) {
+        List<String> topics = new ArrayList<>(symbols.size());
+        for (String symbol : symbols) topics.add(topicPrefix + symbol);
+        for (WsShard s : shards) s.removeTopics(topics);
+    }
+
+    List<WsShard> shards() {
+        return shards;
+    }
+
+    /** Строка статуса: по шарду — число топиков, msg/s, состояние, тишина, RTT ping, реконнекты. */
+    String summary() {
+        StringBuilder sb = new StringBuilder();
+        double total = 0.0;
+        long now = System.currentTimeMillis();
+        long maxSilentMs = 0;
+        for (WsShard s : shards) {
+            double rate = s.sampleRate();
+            total += rate;
+            long silentMs = s.lastMessageAtMs() > 0 ? now - s.lastMessageAtMs() : -1;
+            maxSilentMs = Math.max(maxSilentMs, silentMs);
+            long rtt = s.lastRttMicros();
+            sb.append(String.format("%n    #%d: %d topics, %.1f msg/s, %s, last msg %s, ping rtt %s, reconnects=%d (stale=%d)",
+                    s.index, s.topicCount(), rate, s.isConnected() ? "up" : "DOWN",
+                    silentMs >= 0 ? String.format("%.1fs ago", silentMs / 1000.0) : "never",
+                    rtt >= 0 ? String.format("%.1f ms", rtt / 1000.0) : "n/a",
+                    s.reconnects(), s.staleKills()));
+        }
+        return String.format("  %s: %d shard(s), %.1f msg/s total, max silence %.1fs",
+                stream, shards.size(), total, maxSilentMs / 1000.0) + sb;
+    }
+}
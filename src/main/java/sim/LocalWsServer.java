@@ -0,0 +1,256 @@
+package sim;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Минимальный WebSocket-сервер (RFC 6455) на localhost, который говорит на протоколе
+ * Bybit v5 public: {"op":"subscribe","args":[...]} и {"op":"ping"}.
+ *
+ * Без внешних зависимостей: рукопожатие, текстовые кадры без фрагментации, close/ping/pong.
+ * Каждое соединение читает свой поток; публикация идёт из потока генератора
+ * (запись под монитором соединения, flush — раз за тик).
+ */
+final class LocalWsServer {
+
+    private static final String WS_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final Pattern ARGS = Pattern.compile("\"args\"\\s*:\\s*\\[([^\\]]*)]");
+    private static final Pattern QUOTED = Pattern.compile("\"([^\"]+)\"");
+
+    private final int port;
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private volatile ServerSocket server;
+    private volatile boolean running = false;
+
+    // метрики
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong connId = new AtomicLong();
+
+    LocalWsServer(int port) {
+        this.port = port;
+    }
+
+    void start() throws IOException {
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        running = true;
+        Thread t = new Thread(this::acceptLoop, "sim-ws-accept");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    void stop() {
+        running = false;
+        try { if (server != null) server.close(); } catch (IOException ignored) {}
+        for (Connection c : connections) c.close();
+    }
+
+    String url() {
+        return "ws://127.0.0.1:" + server.getLocalPort() + "/v5/public/linear";
+    }
+
+    int connectionCount() {
+        return connections.size();
+    }
+
+    long sent() {
+        return sent.get();
+    }
+
+    long sentBytes() {
+        return sentBytes.get();
+    }
+
+    /** Разослать кадр всем, кто подписан на topic. Вызывать из одного потока-генератора. */
+    void publish(String topic, byte[] payload) {
+        for (Connection c : connections) {
+            if (c.topics.contains(topic)) c.send(payload);
+        }
+    }
+
+    /** Сбросить буферы всех соединений (конец тика генератора). */
+    void flush() {
+        for (Connection c : connections) c.flush();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket s = server.accept();
+                s.setTcpNoDelay(true);
+                Connection c = new Connection(s, connId.incrementAndGet());
+                Thread t = new Thread(c::readLoop, "sim-ws-conn-" + c.id);
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (running) System.err.println("[SIM WS] accept error: " + e.getMessage());
+            }
+        }
+    }
+
+    // ==================== соединение ====================
+
+    private final class Connection {
+        final Socket socket;
+        final long id;
+        final Set<String> topics = ConcurrentHashMap.newKeySet();
+        private OutputStream out;
+        private volatile boolean open = false;
+
+        Connection(Socket socket, long id) {
+            this.socket = socket;
+            this.id = id;
+        }
+
+        void readLoop() {
+            try (socket) {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+                if (!handshake(in)) return;
+                open = true;
+                connections.add(this);
+
+                while (open) {
+                    int b0 = in.readUnsignedByte();
+                    int b1 = in.readUnsignedByte();
+                    int opcode = b0 & 0x0F;
+                    long len = b1 & 0x7F;
+                    if (len == 126) len = in.readUnsignedShort();
+                    else if (len == 127) len = in.readLong();
+                    byte[] mask = new byte[4];
+                    if ((b1 & 0x80) != 0) in.readFully(mask);
+                    byte[] data = new byte[(int) len];
+                    in.readFully(data);
+                    for (int i = 0; i < data.length; i++) data[i] ^= mask[i & 3];
+
+                    switch (opcode) {
+                        case 0x1 -> onText(new String(data, StandardCharsets.UTF_8));
+                        case 0x8 -> { writeFrame(0x8, data); flush(); open = false; }
+                        case 0x9 -> { writeFrame(0xA, data); flush(); }
+                        default -> { }
+                    }
+                }
+            } catch (IOException ignored) {
+                // клиент ушёл
+            } finally {
+                open = false;
+                connections.remove(this);
+            }
+        }
+
+        private boolean handshake(InputStream in) throws IOException {
+            StringBuilder head = new StringBuilder();
+            int c;
+            while ((c = in.read()) >= 0) {
+                head.append((char) c);
+                if (head.length() >= 4 && head.lastIndexOf("\r\n\r\n") == head.length() - 4) break;
+            }
+            String key = null;
+            for (String line : head.toString().split("\r\n")) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+                    key = line.substring(colon + 1).trim();
+                }
+            }
+            if (key == null) return false;
+
+            String accept;
+            try {
+                MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+                accept = Base64.getEncoder().encodeToString(
+                        sha1.digest((key + WS_GUID).getBytes(StandardCharsets.US_ASCII)));
+            } catch (Exception e) {
+                return false;
+            }
+            String resp = "HTTP/1.1 101 Switching Protocols\r\n" +
+                    "Upgrade: websocket\r\n" +
+                    "Connection: Upgrade\r\n" +
+                    "Sec-WebSocket-Accept: " + accept + "\r\n\r\n";
+            synchronized (this) {
+                out.write(resp.getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+            }
+            return true;
+        }
+
+        private void onText(String text) throws IOException {
+            String op = text.contains("\"subscribe\"") ? "subscribe"
+                    : text.contains("\"unsubscribe\"") ? "unsubscribe"
+                    : text.contains("\"ping\"") ? "ping" : null;
+            if (op == null) return;
+
+            if (!"ping".equals(op)) {
+                Matcher m = ARGS.matcher(text);
+                if (m.find()) {
+                    Matcher q = QUOTED.matcher(m.group(1));
+                    while (q.find()) {
+                        if ("subscribe".equals(op)) topics.add(q.group(1));
+                        else topics.remove(q.group(1));
+                    }
+                }
+            }
+            String reply = "{\"success\":true,\"ret_msg\":\"" + ("ping".equals(op) ? "pong" : "") +
+                    "\",\"conn_id\":\"sim-" + id + "\",\"op\":\"" + op + "\"}";
+            writeFrame(0x1, reply.getBytes(StandardCharsets.UTF_8));
+            flush();
+        }
+
+        void send(byte[] payload) {
+            if (!open) return;
+            try {
+                writeFrame(0x1, payload);
+                sent.incrementAndGet();
+                sentBytes.addAndGet(payload.length);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private synchronized void writeFrame(int opcode, byte[] payload) throws IOException {
+            out.write(0x80 | opcode);
+            int len = payload.length;
+            if (len < 126) {
+                out.write(len);
+            } else if (len < 65_536) {
+                out.write(126);
+                out.write(len >>> 8);
+                out.write(len);
+            } else {
+                out.write(127);
+                for (int shift = 56; shift >= 0; shift -= 8) out.write((int) ((long) len >>> shift));
+            }
+            out.write(payload);
+        }
+
+        synchronized void flush() {
+            if (!open) return;
+            try {
+                out.flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            open = false;
+            connections.remove(this);
+            try { socket.close(); } catch (IOException ignored) {}
+        }
+    }
+}
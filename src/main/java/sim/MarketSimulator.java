@@ -0,0 +1,339 @@
+package sim;
+
+import app.Clock;
+import output.SignalPrinter;
+import store.MarketDataStore;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Синтетический рынок для нагрузочных тестов: локальный WebSocket-сервер
+ * ({@link LocalWsServer}) плюс генератор publicTrade / kline.1 / tickers / allLiquidation
+ * в формате Bybit v5.
+ *
+ * N символов SIMxxxxUSDT, у каждого — случайное блуждание цены, пуассоновский поток сделок
+ * (sim.trades.per.sec на символ), тикер раз в секунду, закрытый бар раз в минуту.
+ * Раз в sim.pump.every.sec один случайный символ получает «памп»: поток сделок ×5,
+ * 85% покупок, рост цены, OI и оборота. Сигналы по символу, на котором идёт (или недавно
+ * закончился) памп, засчитываются как пойманные, с латентностью от начала пампа.
+ */
+public final class MarketSimulator {
+
+    private static final long TICK_MS = 100L;
+    private static final long TICKER_EVERY_MS = 1_000L;
+    private static final long BAR_MS = 60_000L;
+    private static final long PUMP_GRACE_MS = 5 * 60_000L;   // сигнал после пампа ещё засчитываем
+    private static final double PUMP_RATE_MULT = 5.0;
+    private static final double PUMP_BUY_PROB = 0.85;
+    private static final double PUMP_DRIFT_PER_TICK = 0.0001; // ~+0.1%/с
+    private static final double LIQ_PROB_PER_TICK = 0.0005;
+
+    private final LocalWsServer server;
+    private final int symbolCount;
+    private final double tradesPerSec;
+    private final long pumpEveryMs;
+    private final long pumpDurationMs;
+
+    private final Sym[] syms;
+    private final SplittableRandom rnd = new SplittableRandom(42);
+    private final StringBuilder sb = new StringBuilder(4096);
+    private volatile boolean running = false;
+
+    // метрики пампов / латентности
+    private final Map<String, Long> signalled = new ConcurrentHashMap<>();
+    private final AtomicLong pumps = new AtomicLong();
+    private final AtomicLong caught = new AtomicLong();
+    private final AtomicLong falseSignals = new AtomicLong();
+    private final AtomicLong latencySumMs = new AtomicLong();
+    private volatile long latencyMaxMs = 0;
+    private long rateSampleSent = 0;
+    private long rateSampleNanos = System.nanoTime();
+
+    public MarketSimulator(int port, int symbolCount, double tradesPerSec, int pumpEverySec, int pumpDurationSec) {
+        this.server = new LocalWsServer(port);
+        this.symbolCount = symbolCount;
+        this.tradesPerSec = tradesPerSec;
+        this.pumpEveryMs = pumpEverySec * 1000L;
+        this.pumpDurationMs = pumpDurationSec * 1000L;
+        this.syms = new Sym[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            syms[i] = new Sym(String.format("SIM%04dUSDT", i),
+                    Math.exp(rnd.nextDouble(-2.0, 8.0)),   // цены от ~0.1 до ~3000
+                    Math.exp(rnd.nextDouble(14.0, 21.0))); // OI от ~1.2M до ~1.3B USD
+            syms[i].turnover24h = syms[i].avgTradeUsd * tradesPerSec * 86_400.0; // как будто сутки торговались
+        }
+    }
+
+    /** Поднять сервер, зарегистрировать символы в MarketDataStore и запустить генератор. */
+    public void start() throws IOException {
+        server.start();
+        for (Sym s : syms) {
+            MarketDataStore.update(s.symbol, s.price, s.oi, s.funding);
+        }
+        running = true;
+        Thread t = new Thread(this::runLoop, "sim-generator");
+        t.setDaemon(true);
+        t.start();
+        System.out.printf("▶ SIM: %s | symbols=%d trades/s/symbol=%.1f pump every %ds for %ds%n",
+                server.url(), symbolCount, tradesPerSec, pumpEveryMs / 1000, pumpDurationMs / 1000);
+    }
+
+    public void stop() {
+        running = false;
+        server.stop();
+    }
+
+    public String url() {
+        return server.url();
+    }
+
+    /** Принтер-обёртка: считает латентность сигналов относительно начала пампов. */
+    public SignalPrinter wrap(SignalPrinter delegate) {
+        return sig -> {
+            onSignal(sig.symbol(), Clock.now());
+            delegate.print(sig);
+        };
+    }
+
+    // ==================== генератор ====================
+
+    private void runLoop() {
+        long now = System.currentTimeMillis();
+        long nextTick = now;
+        long nextTicker = now + TICKER_EVERY_MS;
+        long nextBar = (now / BAR_MS + 1) * BAR_MS;
+        long nextPump = now + pumpEveryMs;
+
+        while (running) {
+            now = System.currentTimeMillis();
+            if (now < nextTick) {
+                try { Thread.sleep(nextTick - now); } catch (InterruptedException e) { return; }
+                continue;
+            }
+            nextTick += TICK_MS;
+
+            try {
+                if (pumpEveryMs > 0 && now >= nextPump) {
+                    startPump(now);
+                    nextPump += pumpEveryMs;
+                }
+                for (Sym s : syms) tickTrades(s, now);
+                if (now >= nextTicker) {
+                    for (Sym s : syms) {
+                        publishTicker(s, now);
+                        publishBar(s, nextBar, false); // незакрытый бар, как kline.1 с confirm=false
+                    }
+                    nextTicker += TICKER_EVERY_MS;
+                }
+                if (now >= nextBar) {
+                    for (Sym s : syms) publishBar(s, nextBar, true);
+                    nextBar += BAR_MS;
+                }
+                server.flush();
+            } catch (Exception e) {
+                System.err.println("[SIM] generator error: " + e.getMessage());
+            }
+        }
+    }
+
+    private void startPump(long now) {
+        Sym s = syms[rnd.nextInt(syms.length)];
+        s.pumpStartMs = now;
+        s.pumpUntilMs = now + pumpDurationMs;
+        pumps.incrementAndGet();
+        System.out.printf("[SIM] pump %s for %ds%n", s.symbol, pumpDurationMs / 1000);
+    }
+
+    private void tickTrades(Sym s, long now) {
+        boolean pumping = now < s.pumpUntilMs;
+        double lambda = tradesPerSec * TICK_MS / 1000.0 * (pumping ? PUMP_RATE_MULT : 1.0);
+        int n = poisson(lambda);
+
+        // цена: шум + дрейф во время пампа
+        s.price *= 1.0 + rnd.nextDouble(-0.0004, 0.0004) + (pumping ? PUMP_DRIFT_PER_TICK : 0.0);
+        if (pumping) s.oi *= 1.0 + PUMP_DRIFT_PER_TICK / 2;
+        if (s.price > s.barHigh) s.barHigh = s.price;
+        if (s.price < s.barLow) s.barLow = s.price;
+
+        if (n > 0) {
+            sb.setLength(0);
+            sb.append("{\"topic\":\"publicTrade.").append(s.symbol)
+                    .append("\",\"type\":\"snapshot\",\"ts\":").append(now).append(",\"data\":[");
+            for (int k = 0; k < n; k++) {
+                boolean buy = rnd.nextDouble() < (pumping ? PUMP_BUY_PROB : 0.5);
+                double usd = s.avgTradeUsd * rnd.nextDouble(0.2, 1.8) * (pumping ? 3.0 : 1.0);
+                double qty = usd / s.price;
+                s.barTurnover += usd;
+                s.turnover24h += usd;
+                if (k > 0) sb.append(',');
+                sb.append("{\"T\":").append(now)
+                        .append(",\"s\":\"").append(s.symbol)
+                        .append("\",\"S\":\"").append(buy ? "Buy" : "Sell")
+                        .append("\",\"v\":\"").append(dec(qty))
+                        .append("\",\"p\":\"").append(dec(s.price))
+                        .append("\",\"L\":\"ZeroPlusTick\",\"i\":\"").append(s.symbol).append('-').append(++s.tradeId)
+                        .append("\",\"BT\":false}");
+            }
+            sb.append("]}");
+            server.publish(s.tradeTopic, bytes());
+        }
+
+        if (rnd.nextDouble() < LIQ_PROB_PER_TICK * (pumping ? 10 : 1)) {
+            sb.setLength(0);
+            double usd = s.avgTradeUsd * rnd.nextDouble(1.0, 20.0);
+            // allLiquidation: S=Buy — ликвидирован лонг; на пампе ликвидируют шорты (Sell)
+            sb.append("{\"topic\":\"allLiquidation.").append(s.symbol)
+                    .append("\",\"type\":\"snapshot\",\"ts\":").append(now)
+                    .append(",\"data\":[{\"T\":").append(now)
+                    .append(",\"s\":\"").append(s.symbol)
+                    .append("\",\"S\":\"").append(pumping || rnd.nextBoolean() ? "Sell" : "Buy")
+                    .append("\",\"v\":\"").append(dec(usd / s.price))
+                    .append("\",\"p\":\"").append(dec(s.price)).append("\"}]}");
+            server.publish(s.liqTopic, bytes());
+        }
+    }
+
+    private void publishTicker(Sym s, long now) {
+        sb.setLength(0);
+        sb.append("{\"topic\":\"tickers.").append(s.symbol)
+                .append("\",\"type\":\"snapshot\",\"data\":{\"symbol\":\"").append(s.symbol)
+                .append("\",\"lastPrice\":\"").append(dec(s.price))
+                .append("\",\"openInterestValue\":\"").append(dec(s.oi))
+                .append("\",\"fundingRate\":\"").append(dec(s.funding))
+                .append("\",\"turnover24h\":\"").append(dec(s.turnover24h))
+                .append("\"},\"cs\":").append(now).append(",\"ts\":").append(now).append('}');
+        server.publish(s.tickerTopic, bytes());
+    }
+
+    private void publishBar(Sym s, long barEnd, boolean confirm) {
+        sb.setLength(0);
+        sb.append("{\"topic\":\"kline.1.").append(s.symbol)
+                .append("\",\"data\":[{\"start\":").append(barEnd - BAR_MS)
+                .append(",\"end\":").append(barEnd - 1)
+                .append(",\"interval\":\"1\",\"open\":\"").append(dec(s.barOpen))
+                .append("\",\"high\":\"").append(dec(s.barHigh))
+                .append("\",\"low\":\"").append(dec(s.barLow))
+                .append("\",\"close\":\"").append(dec(s.price))
+                .append("\",\"volume\":\"").append(dec(s.barTurnover / s.price))
+                .append("\",\"turnover\":\"").append(dec(s.barTurnover))
+                .append("\",\"confirm\":").append(confirm).append(",\"timestamp\":").append(barEnd)
+                .append("}],\"ts\":").append(barEnd).append(",\"type\":\"snapshot\"}");
+        server.publish(s.klineTopic, bytes());
+        if (!confirm) return;
+        s.barTurnover = 0.0;
+        s.barOpen = s.barHigh = s.barLow = s.price;
+    }
+
+    private byte[] bytes() {
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private int poisson(double lambda) {
+        double l = Math.exp(-lambda);
+        int k = 0;
+        double p = 1.0;
+        do {
+            k++;
+            p *= rnd.nextDouble();
+        } while (p > l);
+        return k - 1;
+    }
+
+    private final StringBuilder num = new StringBuilder(32);
+
+    /** Десятичная строка с 8 знаками после точки, как у Bybit (без String.format в горячем цикле). */
+    private CharSequence dec(double v) {
+        num.setLength(0);
+        if (v < 0) { num.append('-'); v = -v; }
+        long scaled = Math.round(v * 1e8);
+        num.append(scaled / 100_000_000L).append('.');
+        String frac = Long.toString(scaled % 100_000_000L);
+        for (int i = frac.length(); i < 8; i++) num.append('0');
+        return num.append(frac);
+    }
+
+    // ==================== латентность сигналов ====================
+
+    private void onSignal(String symbol, long at) {
+        Sym s = find(symbol);
+        if (s == null || s.pumpStartMs == 0 || at > s.pumpUntilMs + PUMP_GRACE_MS) {
+            falseSignals.incrementAndGet();
+            return;
+        }
+        // только первый сигнал на памп
+        Long prev = signalled.put(symbol, s.pumpStartMs);
+        if (prev != null && prev == s.pumpStartMs) return;
+
+        long latency = at - s.pumpStartMs;
+        caught.incrementAndGet();
+        latencySumMs.addAndGet(latency);
+        if (latency > latencyMaxMs) latencyMaxMs = latency;
+        System.out.printf("[SIM] caught %s after %.1f s%n", symbol, latency / 1000.0);
+    }
+
+    private Sym find(String symbol) {
+        if (!symbol.startsWith("SIM") || symbol.length() < 7) return null;
+        try {
+            int i = Integer.parseInt(symbol.substring(3, 7));
+            return i < syms.length ? syms[i] : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Сводка для status: соединения, отправлено сообщений, пампы и латентность. */
+    public synchronized String summary() {
+        long nowNanos = System.nanoTime();
+        long sent = server.sent();
+        double rate = (sent - rateSampleSent) * 1e9 / Math.max(1, nowNanos - rateSampleNanos);
+        rateSampleSent = sent;
+        rateSampleNanos = nowNanos;
+
+        long c = caught.get();
+        return String.format("[SIM] conns=%d sent=%d (%.0f msg/s, %.1f MB) | pumps=%d caught=%d false=%d | latency avg=%.1f s max=%.1f s",
+                server.connectionCount(), sent, rate, server.sentBytes() / 1e6,
+                pumps.get(), c, falseSignals.get(),
+                c > 0 ? latencySumMs.get() / 1000.0 / c : 0.0, latencyMaxMs / 1000.0);
+    }
+
+    // ==================== состояние символа ====================
+
+    private static final class Sym {
+        final String symbol;
+        final String tradeTopic;
+        final String tickerTopic;
+        final String klineTopic;
+        final String liqTopic;
+
+        double price;
+        double oi;
+        double funding = 0.0001;
+        double avgTradeUsd;
+        double barTurnover = 0.0;
+        double turnover24h = 0.0;
+        double barOpen;
+        double barHigh;
+        double barLow;
+        long tradeId = 0;
+
+        volatile long pumpStartMs = 0;
+        volatile long pumpUntilMs = 0;
+
+        Sym(String symbol, double price, double oi) {
+            this.symbol = symbol;
+            this.tradeTopic = "publicTrade." + symbol;
+            this.tickerTopic = "tickers." + symbol;
+            this.klineTopic = "kline.1." + symbol;
+            this.liqTopic = "allLiquidation." + symbol;
+            this.price = price;
+            this.barOpen = this.barHigh = this.barLow = price;
+            this.oi = oi;
+            this.avgTradeUsd = Math.max(50.0, oi / 50_000.0);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package state;
+
+/**
+ * Окно последних сделок агрессора: сторона — битами в long[], USD и биржевое время — кольцами
+ * примитивов. Вместо пары Deque&lt;Boolean&gt; / Deque&lt;Double&gt;, которые burst-фильтр обходил
+ * итераторами на каждом анализе.
+ *
+ * При каждом добавлении инкрементально ведутся:
+ * <pre>
+ *   - текущая серия подряд идущих сделок одной стороны с хвоста: длина и объём (не длиннее окна);
+ *   - объём покупок и общий объём за последние domWindow сделок.
+ * </pre>
+ * Так что фильтр читает готовые значения за O(1). Суммы точно пересчитываются раз в capacity
+ * добавлений, чтобы вычитания не копили ошибку.
+ *
+ * Не потокобезопасен. Писать — писателем {@link SymbolState} (воркер символа или держатель
+ * монитора) между beginWrite/endWrite; читать — им же или через {@link SymbolState#read}.
+ */
+public final class AggressorWindow {
+
+    private final int cap;
+    private final int domWindow;
+    private final long[] buyBits;
+    private final double[] usd;
+    private final long[] ts;
+    private int size;
+    private long seq;          // всего добавлено; следующая сделка ляжет в слот seq % cap
+
+    // серия одной стороны с хвоста
+    private boolean streakBuy;
+    private int streakLen;
+    private double streakUsd;
+
+    // последние domWindow сделок
+    private double domBuyUsd;
+    private double domTotalUsd;
+    private int untilRecalc;
+
+    public AggressorWindow(int capacity, int domWindow) {
+        this.cap = Math.max(1, capacity);
+        this.domWindow = Math.max(1, Math.min(domWindow, cap));
+        this.buyBits = new long[(cap + 63) >>> 6];
+        this.usd = new double[cap];
+        this.ts = new long[cap];
+        this.untilRecalc = cap;
+    }
+
+    public void add(boolean isBuy, double usdValue, long tsMs) {
+        // обе выпадающие сделки ещё в кольце: их слоты перезаписываются ниже
+        if (size >= domWindow) {
+            int o = slot(seq - domWindow);
+            domTotalUsd -= usd[o];
+            if (bit(o)) domBuyUsd -= usd[o];
+        }
+        if (size == cap) {
+            // самая старая сделка вытесняется: если серия занимала всё окно, она короче на одну
+            if (streakLen == size) {
+                streakLen--;
+                streakUsd -= usd[slot(seq - cap)];
+            }
+        } else {
+            size++;
+        }
+
+        int i = slot(seq);
+        if (isBuy) buyBits[i >>> 6] |= 1L << i;
+        else buyBits[i >>> 6] &= ~(1L << i);
+        usd[i] = usdValue;
+        ts[i] = tsMs;
+        seq++;
+
+        domTotalUsd += usdValue;
+        if (isBuy) domBuyUsd += usdValue;
+
+        if (streakLen > 0 && streakBuy == isBuy) {
+            streakLen++;
+            streakUsd += usdValue;
+        } else {
+            streakBuy = isBuy;
+            streakLen = 1;
+            streakUsd = usdValue;
+        }
+
+        if (--untilRecalc == 0) recalc();
+    }
+
+    private int slot(long n) {
+        return (int) (n % cap);
+    }
+
+    private boolean bit(int i) {
+        return (buyBits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private void recalc() {
+        double total = 0.0;
+        double buy = 0.0;
+        for (int k = 0, n = Math.min(domWindow, size); k < n; k++) {
+            int i = slot(seq - 1 - k);
+            total += usd[i];
+            if (bit(i)) buy += usd[i];
+        }
+        domTotalUsd = total;
+        domBuyUsd = buy;
+
+        double streak = 0.0;
+        for (int k = 0; k < streakLen; k++) streak += usd[slot(seq - 1 - k)];
+        streakUsd = streak;
+        untilRecalc = cap;
+    }
+
+    /** Стать копией other (снапшот для оценки без монитора). */
+    public void copyFrom(AggressorWindow other) {
+        if (other.cap != cap || other.domWindow != domWindow) {
+            clear();
+            for (int i = 0; i < other.size; i++) add(other.isBuy(i), other.usd(i), other.ts(i));
+            return;
+        }
+        System.arraycopy(other.buyBits, 0, buyBits, 0, buyBits.length);
+        System.arraycopy(other.usd, 0, usd, 0, cap);
+        System.arraycopy(other.ts, 0, ts, 0, cap);
+        size = other.size;
+        seq = other.seq;
+        streakBuy = other.streakBuy;
+        streakLen = other.streakLen;
+        streakUsd = other.streakUsd;
+        domBuyUsd = other.domBuyUsd;
+        domTotalUsd = other.domTotalUsd;
+        untilRecalc = other.untilRecalc;
+    }
+
+    public void clear() {
+        size = 0;
+        seq = 0;
+        streakLen = 0;
+        streakUsd = 0.0;
+        domBuyUsd = 0.0;
+        domTotalUsd = 0.0;
+        untilRecalc = cap;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // ===== серия с хвоста =====
+
+    /** Длина серии сделок стороны buy с хвоста окна; 0 — последняя сделка другой стороны. */
+    public int streakLength(boolean buy) {
+        return streakLen > 0 && streakBuy == buy ? streakLen : 0;
+    }
+
+    /** Объём той же серии, USD. */
+    public double streakUsd(boolean buy) {
+        return streakLen > 0 && streakBuy == buy ? streakUsd : 0.0;
+    }
+
+    // ===== доминанта =====
+
+    /** Объём стороны buy за последние domWindow сделок. */
+    public double domUsd(boolean buy) {
+        double v = buy ? domBuyUsd : domTotalUsd - domBuyUsd;
+        return Math.max(0.0, v);
+    }
+
+    public double domTotalUsd() {
+        return Math.max(0.0, domTotalUsd);
+    }
+
+    // ===== поэлементный доступ (чекпоинт) =====
+
+    /** i-я сделка от самой старой. */
+    public boolean isBuy(int i) {
+        return bit(slot(seq - size + i));
+    }
+
+    public double usd(int i) {
+        return usd[slot(seq - size + i)];
+    }
+
+    public long ts(int i) {
+        return ts[slot(seq - size + i)];
+    }
+}
@@ -0,0 +1,236 @@
+package state;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Ряд double фиксированной длины (последние capacity значений) на кольце примитивов — замена
+ * Deque&lt;Double&gt; для рядов баров: без упаковки на каждый бар и без циклов обрезки.
+ *
+ * Доступ по индексу с хвоста ({@link #fromEnd}) и окна-представления ({@link #window}) поверх
+ * того же массива, без копирования. По всему ряду ведутся сумма, сумма квадратов и min/max:
+ * сумма — инкрементально (с точным пересчётом раз в capacity добавлений, чтобы не копить
+ * ошибку вычитаний), min/max — монотонными очередями, O(1) амортизированно на добавление.
+ *
+ * Не потокобезопасен. Писать — писателем {@link SymbolState} (воркер символа или держатель
+ * монитора) между beginWrite/endWrite; читать — им же или через {@link SymbolState#read}.
+ */
+public final class DoubleSeries {
+
+    private final double[] data;
+    private int size;
+    private long seq;          // сколько значений добавлено всего; следующее ляжет в data[seq % cap]
+
+    private double sum;
+    private double sumSq;
+    private int untilRecalc;
+
+    // монотонные очереди номеров (seq) значений: у min — возрастающие значения, у max — убывающие
+    private final long[] minQ;
+    private int minHead;
+    private int minSize;
+    private final long[] maxQ;
+    private int maxHead;
+    private int maxSize;
+
+    public DoubleSeries(int capacity) {
+        int cap = Math.max(1, capacity);
+        this.data = new double[cap];
+        this.minQ = new long[cap];
+        this.maxQ = new long[cap];
+        this.untilRecalc = cap;
+    }
+
+    public void add(double v) {
+        int cap = data.length;
+        int slot = (int) (seq % cap);
+        if (size == cap) {
+            double old = data[slot];
+            sum -= old;
+            sumSq -= old * old;
+        } else {
+            size++;
+        }
+        data[slot] = v;
+        sum += v;
+        sumSq += v * v;
+
+        long oldest = seq - size + 1;
+        while (minSize > 0 && minQ[minHead] < oldest) { minHead = (minHead + 1) % cap; minSize--; }
+        while (minSize > 0 && valueAt(minQ[(minHead + minSize - 1) % cap]) >= v) minSize--;
+        minQ[(minHead + minSize++) % cap] = seq;
+
+        while (maxSize > 0 && maxQ[maxHead] < oldest) { maxHead = (maxHead + 1) % cap; maxSize--; }
+        while (maxSize > 0 && valueAt(maxQ[(maxHead + maxSize - 1) % cap]) <= v) maxSize--;
+        maxQ[(maxHead + maxSize++) % cap] = seq;
+
+        seq++;
+        if (--untilRecalc == 0) recalc();
+    }
+
+    private double valueAt(long n) {
+        return data[(int) (n % data.length)];
+    }
+
+    private void recalc() {
+        double s = 0.0;
+        double sq = 0.0;
+        for (int i = 0; i < size; i++) {
+            double v = get(i);
+            s += v;
+            sq += v * v;
+        }
+        sum = s;
+        sumSq = sq;
+        untilRecalc = data.length;
+    }
+
+    /** Стать копией other (снапшот для оценки без монитора). Ёмкости обычно равны — копия массивов. */
+    public void copyFrom(DoubleSeries other) {
+        if (other.data.length != data.length) {
+            clear();
+            for (int i = 0; i < other.size; i++) add(other.get(i));
+            return;
+        }
+        System.arraycopy(other.data, 0, data, 0, data.length);
+        System.arraycopy(other.minQ, 0, minQ, 0, minQ.length);
+        System.arraycopy(other.maxQ, 0, maxQ, 0, maxQ.length);
+        size = other.size;
+        seq = other.seq;
+        sum = other.sum;
+        sumSq = other.sumSq;
+        untilRecalc = other.untilRecalc;
+        minHead = other.minHead;
+        minSize = other.minSize;
+        maxHead = other.maxHead;
+        maxSize = other.maxSize;
+    }
+
+    public void clear() {
+        size = 0;
+        seq = 0;
+        sum = 0.0;
+        sumSq = 0.0;
+        minSize = minHead = 0;
+        maxSize = maxHead = 0;
+        untilRecalc = data.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int capacity() {
+        return data.length;
+    }
+
+    /** i-е значение от самого старого (0 — самое старое). */
+    public double get(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+        return valueAt(seq - size + i);
+    }
+
+    /** Значение с конца: 0 — последнее, 1 — предпоследнее и т.д. */
+    public double fromEnd(int k) {
+        if (k < 0 || k >= size) throw new IndexOutOfBoundsException("offset " + k + ", size " + size);
+        return valueAt(seq - 1 - k);
+    }
+
+    /** Последнее значение; пустой ряд — NoSuchElementException, как Deque.getLast(). */
+    public double last() {
+        if (size == 0) throw new NoSuchElementException();
+        return valueAt(seq - 1);
+    }
+
+    /** Последнее значение или def, если ряд пуст (вместо peekLast() != null). */
+    public double lastOr(double def) {
+        return size == 0 ? def : valueAt(seq - 1);
+    }
+
+    public double sum() {
+        return sum;
+    }
+
+    public double sumOfSquares() {
+        return sumSq;
+    }
+
+    public double mean() {
+        return size == 0 ? 0.0 : sum / size;
+    }
+
+    /** Дисперсия (генеральная) по всему ряду. */
+    public double variance() {
+        if (size == 0) return 0.0;
+        double m = sum / size;
+        return Math.max(0.0, sumSq / size - m * m);
+    }
+
+    public double min() {
+        if (size == 0) throw new NoSuchElementException();
+        return valueAt(minQ[minHead]);
+    }
+
+    public double max() {
+        if (size == 0) throw new NoSuchElementException();
+        return valueAt(maxQ[maxHead]);
+    }
+
+    /** Последние n значений (или все, если их меньше) — представление без копирования. */
+    public Window window(int n) {
+        return new Window(Math.max(0, Math.min(n, size)));
+    }
+
+    /** Копия ряда от старых к новым (для чекпоинта). */
+    public double[] toArray() {
+        double[] out = new double[size];
+        for (int i = 0; i < size; i++) out[i] = get(i);
+        return out;
+    }
+
+    /**
+     * Окно из последних значений ряда. Действительно до следующего add(): читает тот же массив.
+     */
+    public final class Window {
+        private final int n;
+        private final long from; // seq первого значения окна
+
+        private Window(int n) {
+            this.n = n;
+            this.from = seq - n;
+        }
+
+        public int size() {
+            return n;
+        }
+
+        /** i-е значение окна от старого (0 — первое). */
+        public double get(int i) {
+            if (i < 0 || i >= n) throw new IndexOutOfBoundsException("index " + i + ", size " + n);
+            return valueAt(from + i);
+        }
+
+        public double first() {
+            return get(0);
+        }
+
+        public double last() {
+            return get(n - 1);
+        }
+
+        public double min() {
+            double m = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < n; i++) m = Math.min(m, valueAt(from + i));
+            return m;
+        }
+
+        public double max() {
+            double m = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) m = Math.max(m, valueAt(from + i));
+            return m;
+        }
+    }
+}
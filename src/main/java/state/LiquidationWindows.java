@@ -0,0 +1,120 @@
+package state;
+
+/**
+ * Скользящие суммы ликвидаций (USD) по сторонам за 10 с, 1 мин и 5 мин.
+ *
+ * Секундные корзины в кольце на 5 минут и по одной текущей сумме на окно. Когда время
+ * сдвигается на секунду, из каждой суммы вычитается корзина, выпавшая из её окна, —
+ * событие и чтение стоят O(1), сдвиг — O(1) на прошедшую секунду (но не больше размера кольца).
+ * Без событий окна тоже стареют: перед чтением вызывать {@link #advanceTo}.
+ *
+ * Не потокобезопасен. Менять — писателем {@link SymbolState} (воркер символа или держатель
+ * монитора) между beginWrite/endWrite; читать — им же или через {@link SymbolState#read}.
+ */
+public final class LiquidationWindows {
+
+    public static final int W10S = 0;
+    public static final int W1M = 1;
+    public static final int W5M = 2;
+
+    private static final int[] SPAN_SEC = {10, 60, 300};
+    private static final int SLOTS = 300;
+
+    private final double[] longBuckets = new double[SLOTS];
+    private final double[] shortBuckets = new double[SLOTS];
+    private final double[] longSum = new double[SPAN_SEC.length];
+    private final double[] shortSum = new double[SPAN_SEC.length];
+    private long headSec = 0; // последняя учтённая секунда; 0 — событий ещё не было
+
+    /**
+     * @param longSide ликвидирован лонг (давление продаж)
+     * @param tsMs     биржевое время ликвидации
+     */
+    public void add(boolean longSide, double usd, long tsMs) {
+        long sec = tsMs / 1000L;
+        if (headSec == 0) headSec = sec;
+        if (sec > headSec) advance(sec);
+        long age = headSec - sec;
+        if (age >= SLOTS) return; // старше самого длинного окна
+
+        double[] buckets = longSide ? longBuckets : shortBuckets;
+        double[] sum = longSide ? longSum : shortSum;
+        buckets[(int) (sec % SLOTS)] += usd;
+        for (int w = 0; w < SPAN_SEC.length; w++) {
+            if (age < SPAN_SEC[w]) sum[w] += usd;
+        }
+    }
+
+    /** Стать копией other (снапшот для оценки без монитора). */
+    public void copyFrom(LiquidationWindows other) {
+        System.arraycopy(other.longBuckets, 0, longBuckets, 0, SLOTS);
+        System.arraycopy(other.shortBuckets, 0, shortBuckets, 0, SLOTS);
+        System.arraycopy(other.longSum, 0, longSum, 0, longSum.length);
+        System.arraycopy(other.shortSum, 0, shortSum, 0, shortSum.length);
+        headSec = other.headSec;
+    }
+
+    /** Размер в чекпоинте: headSec и, если события были, корзины и суммы. */
+    int checkpointBytes() {
+        return 8 + (headSec == 0 ? 0 : 8 * (2 * SLOTS + 2 * SPAN_SEC.length));
+    }
+
+    /** Записать в чекпоинт ({@link StateCheckpoint}). */
+    void writeTo(java.nio.ByteBuffer buf) {
+        buf.putLong(headSec);
+        if (headSec == 0) return;
+        for (double v : longBuckets) buf.putDouble(v);
+        for (double v : shortBuckets) buf.putDouble(v);
+        for (double v : longSum) buf.putDouble(v);
+        for (double v : shortSum) buf.putDouble(v);
+    }
+
+    /** Прочитать из чекпоинта; окна стареют до текущего времени при первом {@link #advanceTo}. */
+    void readFrom(java.nio.ByteBuffer buf) {
+        headSec = buf.getLong();
+        if (headSec == 0) return;
+        for (int i = 0; i < SLOTS; i++) longBuckets[i] = buf.getDouble();
+        for (int i = 0; i < SLOTS; i++) shortBuckets[i] = buf.getDouble();
+        for (int i = 0; i < longSum.length; i++) longSum[i] = buf.getDouble();
+        for (int i = 0; i < shortSum.length; i++) shortSum[i] = buf.getDouble();
+    }
+
+    /** Состарить окна до nowMs. */
+    public void advanceTo(long nowMs) {
+        long sec = nowMs / 1000L;
+        if (headSec != 0 && sec > headSec) advance(sec);
+    }
+
+    private void advance(long sec) {
+        if (sec - headSec >= SLOTS) {
+            java.util.Arrays.fill(longBuckets, 0.0);
+            java.util.Arrays.fill(shortBuckets, 0.0);
+            java.util.Arrays.fill(longSum, 0.0);
+            java.util.Arrays.fill(shortSum, 0.0);
+            headSec = sec;
+            return;
+        }
+        for (long s = headSec + 1; s <= sec; s++) {
+            // окно w теперь (s - span, s]: из него выпадает секунда s - span
+            for (int w = 0; w < SPAN_SEC.length; w++) {
+                int out = (int) ((s - SPAN_SEC[w]) % SLOTS);
+                longSum[w] -= longBuckets[out];
+                shortSum[w] -= shortBuckets[out];
+            }
+            int slot = (int) (s % SLOTS); // та же корзина, что выпала из 5-минутного окна
+            longBuckets[slot] = 0.0;
+            shortBuckets[slot] = 0.0;
+        }
+        headSec = sec;
+    }
+
+    /** Сумма ликвидированных лонгов за окно (W10S / W1M / W5M). */
+    public double longUsd(int window) {
+        return Math.max(0.0, longSum[window]); // вычитания копят ошибку округления около нуля
+    }
+
+    /** Сумма ликвидированных шортов за окно (W10S / W1M / W5M). */
+    public double shortUsd(int window) {
+        return Math.max(0.0, shortSum[window]);
+    }
+}
@@ -0,0 +1,273 @@
+package state;
+
+import store.SymbolRegistry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Колоночное (struct-of-arrays) off-heap хранилище рыночных чисел по всем символам.
+ *
+ * Строка символа — его ID из {@link SymbolRegistry}, у каждой колонки шаг 8 байт на символ,
+ * у ряда закрытий — seriesLen * 8. Проход по одной колонке через весь рынок — чтение
+ * подряд лежащей памяти вместо обхода CoinInfo/SymbolState по ссылкам, а размер не
+ * зависит от кучи: GC про эти данные не знает.
+ *
+ * Раскладка буфера:
+ * <pre>
+ *   заголовок (64 байта): MAGIC, VERSION, capacity, seriesLen, число double-колонок
+ *   имена символов:       capacity * 32 байта (ASCII, нуль-терминированные)
+ *   double-колонки:       DOUBLE_COLUMNS * capacity * 8
+ *   число баров (long):   capacity * 8
+ *   ряд закрытий:         capacity * seriesLen * 8 (кольцо на символ)
+ * </pre>
+ * С columns.file буфер отображается в файл (MappedByteBuffer): на рестарте строки
+ * восстанавливаются, если реестр символов ещё пуст и заголовок совпал, а {@link #force()}
+ * сбрасывает страницы на диск вместе с чекпоинтом.
+ *
+ * Писатели: тикерные колонки — только дренер TickerStore, барные — писатель состояния
+ * символа (воркер конвейера или анализатор под монитором). Чтение без синхронизации: сканам
+ * по рынку достаточно почти свежих значений.
+ */
+public final class MarketColumns {
+
+    // тикер (дренер TickerStore)
+    public static final int PRICE = 0;
+    public static final int OI = 1;
+    public static final int FUNDING = 2;
+    public static final int TURNOVER_24H = 3;
+    // закрытый бар (анализатор)
+    public static final int CLOSE = 4;
+    public static final int VOLUME_USD = 5;
+    public static final int AVG_VOL_USD = 6;
+    public static final int AVG_OI_USD = 7;
+    public static final int AVG_VOLATILITY = 8;
+    public static final int BUY_1M = 9;
+    public static final int SELL_1M = 10;
+    private static final int DOUBLE_COLUMNS = 11;
+
+    private static final int MAGIC = 0x4D434F4C; // 'MCOL'
+    private static final int VERSION = 1;
+    private static final int HEADER = 64;
+    private static final int NAME_BYTES = 32;
+
+    private static volatile ByteBuffer buf; // null — выключено
+    private static MappedByteBuffer mapped;
+    private static Path file;
+    private static int cap;
+    private static int seriesLen;
+    private static int columnsOff;
+    private static int barsOff;
+    private static int seriesOff;
+    private static volatile int named; // у строк [0, named) имя уже записано
+
+    private MarketColumns() {
+    }
+
+    /**
+     * Выделить хранилище: в памяти (path == null) или отображением файла.
+     * Вызывать до первой регистрации символов, иначе строки из файла не восстанавливаются.
+     */
+    public static synchronized void open(int capacity, int series, Path path) {
+        if (buf != null) return;
+        cap = Math.max(64, capacity);
+        seriesLen = Math.max(1, series);
+        int namesOff = HEADER;
+        columnsOff = namesOff + cap * NAME_BYTES;
+        barsOff = columnsOff + DOUBLE_COLUMNS * cap * 8;
+        seriesOff = barsOff + cap * 8;
+        long size = (long) seriesOff + (long) cap * seriesLen * 8;
+        if (size > Integer.MAX_VALUE) {
+            System.err.println("[Columns] too large: " + size + " bytes, capacity/series too big");
+            return;
+        }
+
+        ByteBuffer b = null;
+        boolean restored = false;
+        if (path != null) {
+            try {
+                if (path.getParent() != null) Files.createDirectories(path.getParent());
+                try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    mapped = ch.map(FileChannel.MapMode.READ_WRITE, 0, size); // живёт и после закрытия канала
+                }
+                mapped.order(ByteOrder.nativeOrder());
+                b = mapped;
+                file = path;
+                restored = restore(b);
+            } catch (IOException e) {
+                System.err.println("[Columns] file not mapped, in-memory: " + e.getMessage());
+                mapped = null;
+            }
+        }
+        if (b == null) {
+            b = ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+        }
+        if (!restored) {
+            named = 0;
+            for (int i = 0; i + 8 <= size; i += 8) b.putLong(i, 0L);
+            b.putInt(0, MAGIC);
+            b.putInt(4, VERSION);
+            b.putInt(8, cap);
+            b.putInt(12, seriesLen);
+            b.putInt(16, DOUBLE_COLUMNS);
+        }
+        buf = b;
+        System.out.println("▶ Market columns: " + cap + " symbols x " + DOUBLE_COLUMNS + " columns + "
+                + seriesLen + " closes, " + (size >> 10) + " KB off-heap"
+                + (file != null ? ", file " + file + (restored ? " (restored)" : "") : ""));
+    }
+
+    /** Строки из файла прошлого запуска: те же ID, если реестр пуст и раскладка совпала. */
+    private static boolean restore(ByteBuffer b) {
+        if (b.getInt(0) != MAGIC || b.getInt(4) != VERSION || b.getInt(8) != cap
+                || b.getInt(12) != seriesLen || b.getInt(16) != DOUBLE_COLUMNS) {
+            return false;
+        }
+        if (SymbolRegistry.size() > 0) return false;
+        byte[] name = new byte[NAME_BYTES];
+        for (int id = 0; id < cap; id++) {
+            int off = HEADER + id * NAME_BYTES;
+            int len = 0;
+            while (len < NAME_BYTES && b.get(off + len) != 0) len++;
+            if (len == 0) break;
+            b.get(off, name, 0, len);
+            if (SymbolRegistry.register(new String(name, 0, len, StandardCharsets.US_ASCII)) != id) return false;
+            named = id + 1;
+        }
+        return true;
+    }
+
+    public static boolean enabled() {
+        return buf != null;
+    }
+
+    // ==================== запись ====================
+
+    /** Последние значения тикера (только дренер TickerStore). */
+    public static void putTicker(int id, double price, double oi, double funding, double turnover) {
+        ByteBuffer b = buf;
+        if (b == null || id < 0 || id >= cap) return;
+        name(b, id);
+        b.putDouble(col(PRICE, id), price);
+        b.putDouble(col(OI, id), oi);
+        b.putDouble(col(FUNDING, id), funding);
+        b.putDouble(col(TURNOVER_24H, id), turnover);
+    }
+
+    /** Закрытый бар и EWMA символа. Вызывать писателем состояния символа. */
+    public static void putBar(String symbol, SymbolState s, double volumeUsd) {
+        ByteBuffer b = buf;
+        if (b == null) return;
+        int id = SymbolRegistry.idOf(symbol);
+        if (id < 0 || id >= cap) return;
+        name(b, id);
+        double close = s.closes.lastOr(0.0);
+        b.putDouble(col(CLOSE, id), close);
+        b.putDouble(col(VOLUME_USD, id), volumeUsd);
+        b.putDouble(col(AVG_VOL_USD, id), s.avgVolUsd);
+        b.putDouble(col(AVG_OI_USD, id), s.avgOiUsd);
+        b.putDouble(col(AVG_VOLATILITY, id), s.avgVolatility);
+        b.putDouble(col(BUY_1M, id), s.buyAgg1m);
+        b.putDouble(col(SELL_1M, id), s.sellAgg1m);
+
+        long n = b.getLong(barsOff + id * 8);
+        b.putDouble(seriesOff + (id * seriesLen + (int) (n % seriesLen)) * 8, close);
+        b.putLong(barsOff + id * 8, n + 1);
+    }
+
+    /**
+     * Имена строк для восстановления из файла. Пишутся подряд от 0 до id, без дыр: восстановление
+     * регистрирует символы по порядку и останавливается на первом пустом имени.
+     */
+    private static void name(ByteBuffer b, int id) {
+        if (id < named) return;
+        synchronized (MarketColumns.class) {
+            for (int k = named; k <= id; k++) {
+                String s = SymbolRegistry.symbol(k);
+                int off = HEADER + k * NAME_BYTES;
+                int len = Math.min(s.length(), NAME_BYTES - 1);
+                for (int i = 0; i < len; i++) b.put(off + i, (byte) s.charAt(i));
+            }
+            if (id >= named) named = id + 1;
+        }
+    }
+
+    private static int col(int column, int id) {
+        return columnsOff + (column * cap + id) * 8;
+    }
+
+    // ==================== чтение ====================
+
+    public static double get(int column, int id) {
+        ByteBuffer b = buf;
+        if (b == null || id < 0 || id >= cap) return 0.0;
+        return b.getDouble(col(column, id));
+    }
+
+    /** Сколько закрытых баров записано по символу. */
+    public static long bars(int id) {
+        ByteBuffer b = buf;
+        if (b == null || id < 0 || id >= cap) return 0L;
+        return b.getLong(barsOff + id * 8);
+    }
+
+    /** Закрытие k баров назад (0 — последнее); NaN — столько баров в ряду нет. */
+    public static double close(int id, int k) {
+        long n = bars(id);
+        if (k < 0 || k >= Math.min(n, seriesLen)) return Double.NaN;
+        return buf.getDouble(seriesOff + (id * seriesLen + (int) ((n - 1 - k) % seriesLen)) * 8);
+    }
+
+    /**
+     * Символы с наибольшим положительным column (или column / divisor, если divisor >= 0) —
+     * один последовательный проход по колонкам.
+     *
+     * @return сколько ID записано в out (по убыванию значения)
+     */
+    public static int topBy(int column, int divisor, int[] out) {
+        ByteBuffer b = buf;
+        if (b == null || out.length == 0) return 0;
+        double[] best = new double[out.length];
+        int found = 0;
+        int base = col(column, 0);
+        int divBase = divisor >= 0 ? col(divisor, 0) : -1;
+        for (int id = 0, n = Math.min(cap, SymbolRegistry.size()); id < n; id++) {
+            double v = b.getDouble(base + id * 8);
+            if (divBase >= 0) {
+                double d = b.getDouble(divBase + id * 8);
+                v = d > 0 ? v / d : 0.0;
+            }
+            if (!(v > 0)) continue;
+            if (found == out.length && v <= best[found - 1]) continue;
+            int i = found < out.length ? found++ : found - 1;
+            while (i > 0 && best[i - 1] < v) {
+                best[i] = best[i - 1];
+                out[i] = out[i - 1];
+                i--;
+            }
+            best[i] = v;
+            out[i] = id;
+        }
+        return found;
+    }
+
+    /** Сбросить отображённые страницы на диск (чекпоинт / stop). */
+    public static synchronized void force() {
+        if (mapped != null) mapped.force();
+    }
+
+    public static String summary() {
+        if (buf == null) return "[Columns] off";
+        int rows = Math.min(cap, SymbolRegistry.size());
+        return String.format("[Columns] rows=%d/%d, series=%d, %d KB %s", rows, cap, seriesLen,
+                buf.capacity() >> 10, file != null ? "mapped " + file : "in-memory");
+    }
+}
@@ -0,0 +1,325 @@
+package state;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Бинарный чекпоинт всех {@link SymbolState}: ряды баров, окна агрессора и ликвидаций,
+ * незакрытый бар, EWMA, cooldown / время последнего сигнала / стрики.
+ *
+ * Формат (little-endian, файл отображается в память целиком):
+ * <pre>
+ *   [0..64)  заголовок: magic 'BBS1', version, createdAt, symbols, payloadLen, crc32(payload)
+ *   [64..)   записи символов подряд:
+ *            short len + ASCII символ
+ *            SCALARS x double, 2 x long (cooldownUntil, lastSignalAtMs), 2 x int (стрики)
+ *            int n + n double — closes, volumes, oiList, объёмы окна агрессора
+ *            int n + n byte  — стороны окна агрессора (1 — покупка)
+ *            окна ликвидаций: long headSec; если не 0 — 2 x 300 double корзин и 2 x 3 double сумм
+ *            незакрытый бар: 3 x long (barStart, barClosedStart, barUpdatedAt),
+ *                            5 x double (open, high, low, last, turnover)
+ * </pre>
+ * Минутные buyAgg1m / sellAgg1m не сохраняются: после рестарта бар начинается заново.
+ * Скаляры liq* пересчитываются из окон ликвидаций, состаренных до текущего времени, а
+ * незакрытый бар старше intrabar.max.age.ms внутрибаровая оценка и так не берёт.
+ * Версия 1 (без окон ликвидаций и бара) не читается: старт с пустым состоянием.
+ *
+ * Запись идёт во временный файл с последующим атомарным переименованием, так что
+ * оборванная запись не портит прежний чекпоинт.
+ */
+public final class StateCheckpoint {
+
+    private static final int MAGIC = 0x42425331; // 'BBS1'
+    private static final int VERSION = 2;
+    private static final int HEADER = 64;
+    private static final int SCALARS = 13;
+    private static final int BAR_LONGS = 3;
+    private static final int BAR_DOUBLES = 5;
+
+    private static final int HDR_MAGIC = 0;
+    private static final int HDR_VERSION = 4;
+    private static final int HDR_CREATED = 8;
+    private static final int HDR_SYMBOLS = 16;
+    private static final int HDR_PAYLOAD = 24;
+    private static final int HDR_CRC = 32;
+
+    private StateCheckpoint() {
+    }
+
+    /** Снимок одного символа, снятый согласованно (SymbolState.read). */
+    private static final class Entry {
+        final byte[] symbol;
+        final double[] scalars = new double[SCALARS];
+        long cooldownUntil;
+        long lastSignalAtMs;
+        int watchStreak;
+        int enterStreak;
+        double[] closes;
+        double[] volumes;
+        double[] oi;
+        double[] aggVolumes;
+        byte[] aggDirections;
+        final LiquidationWindows liquidations = new LiquidationWindows();
+        final long[] barTimes = new long[BAR_LONGS];
+        final double[] barPrices = new double[BAR_DOUBLES];
+
+        Entry(String symbol) {
+            this.symbol = symbol.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        int size() {
+            return 2 + symbol.length
+                    + SCALARS * 8 + 16 + 8
+                    + 4 * 5
+                    + 8 * (closes.length + volumes.length + oi.length + aggVolumes.length)
+                    + aggDirections.length
+                    + liquidations.checkpointBytes()
+                    + 8 * (BAR_LONGS + BAR_DOUBLES);
+        }
+    }
+
+    // ==================== запись ====================
+
+    /**
+     * Записать состояние всех символов.
+     *
+     * @return число записанных символов
+     */
+    public static int write(Path file, Map<String, SymbolState> states, long nowMs) throws IOException {
+        List<Entry> entries = new ArrayList<>(states.size());
+        long payload = 0;
+        for (Map.Entry<String, SymbolState> e : states.entrySet()) {
+            SymbolState s = e.getValue();
+            Entry en = s.read(() -> capture(e.getKey(), s)); // без монитора: писатели сделок не ждут
+            entries.add(en);
+            payload += en.size();
+        }
+
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + payload);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+
+            buf.position(HEADER);
+            for (Entry en : entries) put(buf, en);
+
+            CRC32 crc = new CRC32();
+            ByteBuffer body = buf.duplicate();
+            body.position(HEADER).limit((int) (HEADER + payload));
+            crc.update(body);
+
+            buf.putInt(HDR_MAGIC, MAGIC);
+            buf.putInt(HDR_VERSION, VERSION);
+            buf.putLong(HDR_CREATED, nowMs);
+            buf.putLong(HDR_SYMBOLS, entries.size());
+            buf.putLong(HDR_PAYLOAD, payload);
+            buf.putLong(HDR_CRC, crc.getValue());
+            buf.force();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return entries.size();
+    }
+
+    private static Entry capture(String symbol, SymbolState s) {
+        Entry en = new Entry(symbol);
+        double[] d = en.scalars;
+        d[0] = s.liqBuy1m;
+        d[1] = s.liqSell1m;
+        d[2] = s.oiVelocity;
+        d[3] = s.oiAcceleration;
+        d[4] = s.liqLongUsd;
+        d[5] = s.liqShortUsd;
+        d[6] = s.avgVolUsd;
+        d[7] = s.avgVolatility;
+        d[8] = s.avgOiUsd;
+        d[9] = s.avgAggressorVol;
+        d[10] = s.lastPrice;
+        d[11] = s.lastFunding;
+        d[12] = s.avgDeltaBuy;
+        en.cooldownUntil = s.getCooldownUntil();
+        en.lastSignalAtMs = s.getLastSignalAtMs();
+        en.watchStreak = s.getWatchStreak();
+        en.enterStreak = s.getEnterStreak();
+        en.closes = s.closes.toArray();
+        en.volumes = s.volumes.toArray();
+        en.oi = s.oiList.toArray();
+        int n = s.aggressor.size();
+        en.aggVolumes = new double[n];
+        en.aggDirections = new byte[n];
+        for (int i = 0; i < n; i++) {
+            en.aggVolumes[i] = s.aggressor.usd(i);
+            en.aggDirections[i] = (byte) (s.aggressor.isBuy(i) ? 1 : 0);
+        }
+        en.liquidations.copyFrom(s.liquidations);
+        en.barTimes[0] = s.barStart;
+        en.barTimes[1] = s.barClosedStart;
+        en.barTimes[2] = s.barUpdatedAt;
+        en.barPrices[0] = s.barOpen;
+        en.barPrices[1] = s.barHigh;
+        en.barPrices[2] = s.barLow;
+        en.barPrices[3] = s.barLast;
+        en.barPrices[4] = s.barTurnover;
+        return en;
+    }
+
+    private static void put(ByteBuffer buf, Entry en) {
+        buf.putShort((short) en.symbol.length).put(en.symbol);
+        for (double v : en.scalars) buf.putDouble(v);
+        buf.putLong(en.cooldownUntil).putLong(en.lastSignalAtMs);
+        buf.putInt(en.watchStreak).putInt(en.enterStreak);
+        putSeries(buf, en.closes);
+        putSeries(buf, en.volumes);
+        putSeries(buf, en.oi);
+        putSeries(buf, en.aggVolumes);
+        buf.putInt(en.aggDirections.length).put(en.aggDirections);
+        en.liquidations.writeTo(buf);
+        for (long v : en.barTimes) buf.putLong(v);
+        for (double v : en.barPrices) buf.putDouble(v);
+    }
+
+    private static void putSeries(ByteBuffer buf, double[] v) {
+        buf.putInt(v.length);
+        for (double x : v) buf.putDouble(x);
+    }
+
+    /** Фоновая запись раз в intervalSec, пока приложение работает. */
+    public static void startPeriodic(Path file, Map<String, SymbolState> states, long intervalSec) {
+        Thread t = new Thread(() -> {
+            while (app.Settings.RUNNING) {
+                try {
+                    Thread.sleep(intervalSec * 1000L);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!app.Settings.RUNNING) return; // на stop пишет Main
+                try {
+                    write(file, states, System.currentTimeMillis());
+                    MarketColumns.force();
+                } catch (Exception e) {
+                    System.err.println("[Checkpoint] write error: " + e.getMessage());
+                }
+            }
+        }, "state-checkpoint");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // ==================== чтение ====================
+
+    /**
+     * Восстановить состояние в target, если чекпоинт есть, цел и не старше maxAgeMs.
+     *
+     * @return время создания чекпоинта или 0, если ничего не восстановлено
+     */
+    public static long restore(Path file, long maxAgeMs, long nowMs, Map<String, SymbolState> target) {
+        if (!Files.isReadable(file)) return 0L;
+        long t0 = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() < HEADER) return reject(file, "truncated");
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buf.getInt(HDR_MAGIC) != MAGIC) return reject(file, "bad magic");
+            int version = buf.getInt(HDR_VERSION);
+            if (version != VERSION) return reject(file, "version " + version + " != " + VERSION);
+            long created = buf.getLong(HDR_CREATED);
+            if (maxAgeMs > 0 && nowMs - created > maxAgeMs) {
+                return reject(file, "too old (" + (nowMs - created) / 60_000L + " min)");
+            }
+            long count = buf.getLong(HDR_SYMBOLS);
+            long payload = buf.getLong(HDR_PAYLOAD);
+            if (HEADER + payload > ch.size()) return reject(file, "truncated payload");
+
+            CRC32 crc = new CRC32();
+            ByteBuffer body = buf.duplicate();
+            body.position(HEADER).limit((int) (HEADER + payload));
+            crc.update(body);
+            if (crc.getValue() != buf.getLong(HDR_CRC)) return reject(file, "crc mismatch");
+
+            buf.position(HEADER);
+            for (long i = 0; i < count; i++) {
+                byte[] sym = new byte[buf.getShort()];
+                buf.get(sym);
+                SymbolState s = new SymbolState();
+                read(buf, s, created);
+                target.put(new String(sym, StandardCharsets.US_ASCII), s);
+            }
+            System.out.printf("✅ State checkpoint: %d symbols, age %ds, restored in %.1f ms%n",
+                    count, (nowMs - created) / 1000, (System.nanoTime() - t0) / 1e6);
+            return created;
+        } catch (Exception e) {
+            target.clear();
+            return reject(file, e.getClass().getSimpleName() + " " + e.getMessage());
+        }
+    }
+
+    private static void read(ByteBuffer buf, SymbolState s, long created) {
+        double[] d = new double[SCALARS];
+        for (int i = 0; i < SCALARS; i++) d[i] = buf.getDouble();
+        s.liqBuy1m = d[0];
+        s.liqSell1m = d[1];
+        s.oiVelocity = d[2];
+        s.oiAcceleration = d[3];
+        s.liqLongUsd = d[4];
+        s.liqShortUsd = d[5];
+        s.avgVolUsd = d[6];
+        s.avgVolatility = d[7];
+        s.avgOiUsd = d[8];
+        s.avgAggressorVol = d[9];
+        s.lastPrice = d[10];
+        s.lastFunding = d[11];
+        s.avgDeltaBuy = d[12];
+        s.setCooldownUntil(buf.getLong());
+        s.setLastSignalAtMs(buf.getLong());
+        s.setWatchStreak(buf.getInt());
+        s.setEnterStreak(buf.getInt());
+        readSeries(buf, s.closes);
+        readSeries(buf, s.volumes);
+        readSeries(buf, s.oiList);
+        // окно агрессора: объёмы, затем стороны; биржевое время сделок не хранится — берём время записи
+        int nv = buf.getInt();
+        double[] vols = new double[nv];
+        for (int i = 0; i < nv; i++) vols[i] = buf.getDouble();
+        int nd = buf.getInt();
+        for (int i = 0; i < nd; i++) {
+            boolean buy = buf.get() != 0;
+            if (i < nv) s.aggressor.add(buy, vols[i], created);
+        }
+        s.liquidations.readFrom(buf);
+        s.barStart = buf.getLong();
+        s.barClosedStart = buf.getLong();
+        s.barUpdatedAt = buf.getLong();
+        s.barOpen = buf.getDouble();
+        s.barHigh = buf.getDouble();
+        s.barLow = buf.getDouble();
+        s.barLast = buf.getDouble();
+        s.barTurnover = buf.getDouble();
+    }
+
+    /** Ряд длиннее кольца (настройки уменьшили) — остаются последние значения. */
+    private static void readSeries(ByteBuffer buf, DoubleSeries series) {
+        int n = buf.getInt();
+        for (int i = 0; i < n; i++) series.add(buf.getDouble());
+    }
+
+    private static long reject(Path file, String why) {
+        System.err.println("[Checkpoint] " + file + " skipped: " + why);
+        return 0L;
+    }
+}
@@ -1,35 +1,78 @@
 package state;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import app.Settings;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.Supplier;
+
+/**
+ * Состояние символа.
+ *
+ * Писатель у символа один: с конвейером — воркер его партиции (без монитора; прогрев и отметки
+ * сигнала он выполняет сам), без конвейера — кто угодно, но под монитором состояния. Изменения
+ * оборачиваются в {@link #beginWrite()} / {@link #endWrite()} — счётчик версии (seqlock):
+ * нечётный, пока идёт запись. Читатели монитор не берут: {@link #read} читает
+ * поля оптимистично и повторяет чтение, если версия за это время сменилась. analyze() оценивает
+ * фильтры по копии ({@link #copyFrom}), снятой так же. Писатель читателей не ждёт, сколько бы
+ * их ни было.
+ */
 public class SymbolState {
 
-    // === Price / volumes / OI series ===
-    public final Deque<Double> closes = new ArrayDeque<>();
-    public final Deque<Double> volumes = new ArrayDeque<>();
-    public final Deque<Double> oiList = new ArrayDeque<>();
+    private static final VarHandle VERSION;
+    private static final VarHandle BAR_CHANGED;
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(SymbolState.class, "version", long.class);
+            BAR_CHANGED = MethodHandles.lookup().findVarHandle(SymbolState.class, "barChanged", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final int OPTIMISTIC_TRIES = 8;
+
+    @SuppressWarnings("unused") // через VERSION
+    private volatile long version;
 
-    private long startMs = System.currentTimeMillis();
+    // === Price / volumes / OI series (кольца примитивов; длина — из настроек на момент создания) ===
+    public final DoubleSeries closes = new DoubleSeries(Math.min(Settings.MAX_BAR_HISTORY,
+            Math.max(Settings.WINDOW_MINUTES, Settings.MIN_BAR_HISTORY)));
+    public final DoubleSeries volumes = new DoubleSeries(Math.min(Settings.MAX_BAR_HISTORY, Settings.WINDOW_MINUTES));
+    public final DoubleSeries oiList = new DoubleSeries(Math.min(Settings.MAX_BAR_HISTORY, Settings.WINDOW_MINUTES));
+
+    private long startMs = app.Clock.now();
 
 
     // === Aggressor streams (last N trades) ===
-    public final Deque<Boolean> aggressorDirections = new ArrayDeque<>();
-    public final Deque<Double> aggressorVolumes = new ArrayDeque<>();
+    public final AggressorWindow aggressor = new AggressorWindow(Settings.MAX_TRADE_WINDOW, Settings.AGGR_DOM_WINDOW);
 
     // === One-minute live flows ===
     public double buyAgg1m = 0.0;
     public double sellAgg1m = 0.0;
 
-    public double liqBuy1m = 0.0; // сумма ликвидаций шортов (buy pressure)
-    public double liqSell1m = 0.0; // сумма ликвидаций лонгов (sell pressure)
+    // === Intrabar: текущий незакрытый бар (kline confirm=false); ряды не трогает ===
+    public long barStart = 0;          // 0 — слота нет (бар закрылся, частичных ещё не было)
+    public long barClosedStart = 0;    // start последнего закрытого бара со слотом — поздние кадры мимо
+    public double barOpen = 0.0;
+    public double barHigh = 0.0;
+    public double barLow = 0.0;
+    public double barLast = 0.0;
+    public double barTurnover = 0.0;
+    public long barUpdatedAt = 0;      // Clock.now() последнего обновления
+    // обновлён после последней внутрибаровой оценки; вне seqlock — см. takeBarChanged()
+    private volatile boolean barChanged = false;
+
+    public double liqBuy1m = 0.0; // сумма ликвидаций шортов за минуту (buy pressure)
+    public double liqSell1m = 0.0; // сумма ликвидаций лонгов за минуту (sell pressure)
 
     public double oiVelocity = 0.0;
     public double oiAcceleration = 0.0;
 
-    // === Liquidation EWMA ===
+    // === Liquidations, 5 min ===
     public double liqLongUsd = 0.0;
     public double liqShortUsd = 0.0;
+    public final LiquidationWindows liquidations = new LiquidationWindows(); // 10 с / 1 мин / 5 мин
 
     // === Smoothed metrics ===
     public double avgVolUsd = 0.0;
@@ -87,9 +130,131 @@ public class SymbolState {
     private int watchStreak = 0;
     private int enterStreak = 0;
 
+    /**
+     * Стать копией other: ряды, окна и все поля. Вызывать через other.read(...) — копия
+     * согласована, только если версия не сменилась. Копию читает один поток, монитор не нужен.
+     */
+    public void copyFrom(SymbolState other) {
+        closes.copyFrom(other.closes);
+        volumes.copyFrom(other.volumes);
+        oiList.copyFrom(other.oiList);
+        startMs = other.startMs;
+        aggressor.copyFrom(other.aggressor);
+        buyAgg1m = other.buyAgg1m;
+        sellAgg1m = other.sellAgg1m;
+        barStart = other.barStart;
+        barClosedStart = other.barClosedStart;
+        barOpen = other.barOpen;
+        barHigh = other.barHigh;
+        barLow = other.barLow;
+        barLast = other.barLast;
+        barTurnover = other.barTurnover;
+        barUpdatedAt = other.barUpdatedAt;
+        liqBuy1m = other.liqBuy1m;
+        liqSell1m = other.liqSell1m;
+        oiVelocity = other.oiVelocity;
+        oiAcceleration = other.oiAcceleration;
+        liqLongUsd = other.liqLongUsd;
+        liqShortUsd = other.liqShortUsd;
+        liquidations.copyFrom(other.liquidations);
+        avgVolUsd = other.avgVolUsd;
+        avgVolatility = other.avgVolatility;
+        avgOiUsd = other.avgOiUsd;
+        avgAggressorVol = other.avgAggressorVol;
+        lastPrice = other.lastPrice;
+        lastFunding = other.lastFunding;
+        avgDeltaBuy = other.avgDeltaBuy;
+        cooldownUntil = other.cooldownUntil;
+        lastSignalAtMs = other.lastSignalAtMs;
+        watchStreak = other.watchStreak;
+        enterStreak = other.enterStreak;
+    }
+
+    // ===== флаг внутрибаровой оценки =====
+
+    /** Пришёл частичный бар (писатель состояния). */
+    public void markBarChanged() {
+        if (!barChanged) barChanged = true;
+    }
+
+    /** Бар закрылся — оценивать внутри него больше нечего (писатель состояния). */
+    public void clearBarChanged() {
+        if (barChanged) barChanged = false;
+    }
+
+    /**
+     * Снять флаг и вернуть, был ли он. Внутрибаровый проход зовёт это по всем символам каждые
+     * intrabar.eval.ms, поэтому ни монитора, ни версии seqlock: иначе писатель и оптимистичные
+     * читатели спотыкались бы о проход даже там, где флаг не стоит. Сброшенный флаг — одна CAS.
+     */
+    public boolean takeBarChanged() {
+        return barChanged && (boolean) BAR_CHANGED.getAndSet(this, false);
+    }
+
+    // ===== seqlock =====
+
+    /** Начало изменения полей. Только писателем состояния (воркер символа или держатель монитора). */
+    public void beginWrite() {
+        VERSION.setOpaque(this, (long) VERSION.getOpaque(this) + 1);
+        VarHandle.storeStoreFence(); // записи полей не обгоняют нечётную версию
+    }
+
+    /** Конец изменения: release-запись чётной версии публикует поля. */
+    public void endWrite() {
+        VERSION.setRelease(this, (long) VERSION.getOpaque(this) + 1);
+    }
+
+    /** Версия для оптимистичного чтения; нечётная — запись идёт, читать бесполезно. */
+    public long readBegin() {
+        return (long) VERSION.getAcquire(this);
+    }
+
+    /** Прочитанное после readBegin согласовано: записей за это время не было. */
+    public boolean readValid(long stamp) {
+        VarHandle.loadLoadFence(); // чтения полей не переезжают за повторное чтение версии
+        return (stamp & 1) == 0 && stamp == (long) VERSION.getOpaque(this);
+    }
+
+    /**
+     * Согласованное чтение без монитора: reader повторяется, пока версия не совпадёт. Посреди
+     * записи reader может увидеть рассогласованные ряды и упасть — такое исключение означает
+     * повтор. После OPTIMISTIC_TRIES неудач (символ под сплошным потоком записей) — дальше под
+     * монитором с уступкой процессора между попытками: писателей без конвейера монитор
+     * останавливает, а воркер конвейера его не берёт и лишь пропускает окно между записями.
+     * reader не должен ничего менять.
+     */
+    public <T> T read(Supplier<T> reader) {
+        for (int i = 0; i < OPTIMISTIC_TRIES; i++) {
+            long stamp = readBegin();
+            if ((stamp & 1) == 0) {
+                try {
+                    T r = reader.get();
+                    if (readValid(stamp)) return r;
+                } catch (RuntimeException e) {
+                    if (readValid(stamp)) throw e; // ошибка не из-за гонки
+                }
+            }
+            Thread.onSpinWait();
+        }
+        synchronized (this) {
+            while (true) {
+                long stamp = readBegin();
+                if ((stamp & 1) == 0) {
+                    try {
+                        T r = reader.get();
+                        if (readValid(stamp)) return r;
+                    } catch (RuntimeException e) {
+                        if (readValid(stamp)) throw e;
+                    }
+                }
+                Thread.yield();
+            }
+        }
+    }
+
     @Override
     public String toString() {
-        return "SymbolState{oi=" + (oiList.isEmpty() ? 0 : oiList.getLast()) +
-                ", vol=" + (volumes.isEmpty() ? 0 : volumes.getLast()) + "}";
+        return "SymbolState{oi=" + oiList.lastOr(0) +
+                ", vol=" + volumes.lastOr(0) + "}";
     }
 }
@@ -14,21 +14,22 @@ public class AnalyzerMetricsProvider implements SignalStatsService.ICurrentMetri
     @Override
     public SignalStatsService.CurrentMetrics getMetricsFor(String symbol) {
         SymbolState s = analyzer.getSymbolState(symbol);
-        if (s == null || s.closes.isEmpty()) return null;
+        if (s == null) return null;
 
-        synchronized (s) {
+        // оптимистичное чтение: снапшоты статистики не держат монитор символа
+        return s.read(() -> {
+            if (s.closes.isEmpty()) return null;
             double price = s.lastPrice;
-            double oiNow = (s.oiList.peekLast() != null) ? s.oiList.peekLast() : 0.0;
-            double volNow = (s.volumes.peekLast() != null) ? s.volumes.peekLast() : 0.0;
+            double oiNow = s.oiList.lastOr(0.0);
+            double volNow = s.volumes.lastOr(0.0);
 
             double flow = s.buyAgg1m + s.sellAgg1m;
             double buyRatio = (flow > 0) ? s.buyAgg1m / flow : 0.5;
 
             double volt = 0.0;
             if (s.closes.size() >= 2) {
-                var it = s.closes.descendingIterator();
-                double last = it.next();
-                double prev = it.next();
+                double last = s.closes.fromEnd(0);
+                double prev = s.closes.fromEnd(1);
                 volt = Math.abs(last / prev - 1.0);
             }
             double voltRel = (s.avgVolatility > 0) ? volt / s.avgVolatility : 1.0;
@@ -36,7 +37,6 @@ public class AnalyzerMetricsProvider implements SignalStatsService.ICurrentMetri
             return new SignalStatsService.CurrentMetrics(
                     price, oiNow, volNow, buyRatio, voltRel, s.lastFunding
             );
-
-        }
+        });
     }
 }
@@ -15,6 +15,9 @@ import java.util.concurrent.*;
 /**
  * Singleton service for signal tracking + periodic snapshots + export (JSON/CSV).
  * SQL/AutoTuner здесь не трогаем — только файловый экспорт и in-memory трекинг.
+ *
+ * Снимки идут по app.Clock: {@link #tick(long)} раз в секунду в live
+ * и из ReplayRunner при воспроизведении журнала.
  */
 public class SignalStatsService {
 
@@ -29,15 +32,20 @@ public class SignalStatsService {
     private final Path DIR_SIGNAL_FAKE = Paths.get("./signal_fake");
     // ---------------------
 
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
     private final Map<String, SignalRecord> records = new ConcurrentHashMap<>();
-    private final Map<String, ScheduledFuture<?>> scheduledTasks = new ConcurrentHashMap<>();
+    private final Map<String, SnapshotTask> scheduledTasks = new ConcurrentHashMap<>();
 
     private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
     private final SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss");
 
     private SignalStatsService() {
         try { Files.createDirectories(DIR_SIGNAL_COIN); } catch (IOException ignored) {}
+
+        // live-часы; в replay тикает ReplayRunner
+        scheduler.scheduleAtFixedRate(() -> {
+            if (!app.Clock.isReplay()) tick(app.Clock.now());
+        }, 1, 1, TimeUnit.SECONDS);
     }
 
     // === ПУБЛИЧНЫЙ метод установки провайдера метрик ===
@@ -58,7 +66,7 @@ public class SignalStatsService {
         }
 
         SignalSnapshot snap = new SignalSnapshot(
-                System.currentTimeMillis(),
+                app.Clock.now(),
                 ts.price(),
                 ts.oiNow(),
                 ts.volNow(),
@@ -98,31 +106,42 @@ public class SignalStatsService {
                               double score,
                               boolean isMicro,
                               SignalSnapshot initialSnapshot) {
-        long now = System.currentTimeMillis();
+        long now = app.Clock.now();
         String id = symbol + "_" + now;
 
         SignalRecord r = new SignalRecord(id, symbol, now, stage, direction, price, score, isMicro);
         if (initialSnapshot != null) r.addSnapshot(initialSnapshot);
         records.put(id, r);
 
-        // планируем периодические снимки
-        Runnable task = new SnapshotTask(id);
-        ScheduledFuture<?> f = scheduler.scheduleAtFixedRate(
-                task,
-                SNAPSHOT_INTERVAL_SECONDS,
-                SNAPSHOT_INTERVAL_SECONDS,
-                TimeUnit.SECONDS
-        );
-        scheduledTasks.put(id, f);
-
-        // финализация после N раундов (+ небольшой запас один интервал)
-        scheduler.schedule(() -> finishTracking(id),
-                (long) SNAPSHOT_INTERVAL_SECONDS * SNAPSHOT_ROUNDS,
-                TimeUnit.SECONDS);
+        // периодические снимки и финализация после N раундов — по часам в tick()
+        scheduledTasks.put(id, new SnapshotTask(id, now));
 
         return id;
     }
 
+    /**
+     * Выполнить все снимки/финализации, срок которых наступил к моменту now.
+     */
+    public synchronized void tick(long now) {
+        long intervalMs = SNAPSHOT_INTERVAL_SECONDS * 1000L;
+        for (SnapshotTask t : scheduledTasks.values()) {
+            try {
+                while (now >= t.nextDueMs && scheduledTasks.containsKey(t.id)) {
+                    t.run();
+                    t.nextDueMs += intervalMs;
+                }
+                if (now >= t.finishAtMs) finishTracking(t.id);
+            } catch (Exception e) {
+                System.err.println("[Stats] snapshot error " + t.id + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** Завершить все незакрытые сигналы (конец воспроизведения журнала). */
+    public void finishAll() {
+        for (String id : new ArrayList<>(scheduledTasks.keySet())) finishTracking(id);
+    }
+
     // добавить снимок вручную
     public boolean addManualSnapshot(String id, SignalSnapshot snap) {
         SignalRecord r = records.get(id);
@@ -154,7 +173,7 @@ public class SignalStatsService {
         r.minReturn = Math.min(r.minReturn, ret);
 
         SignalSnapshot snap = new SignalSnapshot(
-                System.currentTimeMillis(),
+                app.Clock.now(),
                 price,
                 oiNow,
                 volNow,
@@ -176,8 +195,7 @@ public class SignalStatsService {
         if (r == null) return;
         if (r.completed) return; // защита от двойного завершения
 
-        ScheduledFuture<?> f = scheduledTasks.remove(id);
-        if (f != null) f.cancel(false);
+        scheduledTasks.remove(id);
 
         r.completed = true;
 
@@ -353,21 +371,24 @@ public class SignalStatsService {
     private class SnapshotTask implements Runnable {
         private final String id;
         private int rounds = 0;
+        long nextDueMs;          // время следующего снимка (по app.Clock)
+        final long finishAtMs;   // финализация после N раундов
 
-        SnapshotTask(String id) { this.id = id; }
+        SnapshotTask(String id, long createdAtMs) {
+            this.id = id;
+            this.nextDueMs = createdAtMs + SNAPSHOT_INTERVAL_SECONDS * 1000L;
+            this.finishAtMs = createdAtMs + (long) SNAPSHOT_INTERVAL_SECONDS * SNAPSHOT_ROUNDS * 1000L;
+        }
 
         @Override
         public void run() {
             SignalRecord r = records.get(id);
             if (r == null) {
-                ScheduledFuture<?> f = scheduledTasks.remove(id);
-                if (f != null) f.cancel(false);
+                scheduledTasks.remove(id);
                 return;
             }
             if (rounds >= SNAPSHOT_ROUNDS) {
                 finishTracking(id);
-                ScheduledFuture<?> f = scheduledTasks.remove(id);
-                if (f != null) f.cancel(false);
                 return;
             }
 
@@ -386,7 +407,7 @@ public class SignalStatsService {
             r.minReturn = Math.min(r.minReturn, ret);
 
             SignalSnapshot snap = new SignalSnapshot(
-                    System.currentTimeMillis(),
+                    app.Clock.now(),
                     currPrice,
                     m.oiNow,
                     m.volNow,
@@ -8,30 +8,48 @@ import java.util.concurrent.ConcurrentHashMap;
 
 public class MarketDataStore {
 
-    private static final Map<String, CoinInfo> coins = new ConcurrentHashMap<>();
+    private static final Map<String, CoinInfo> coins = new ConcurrentHashMap<>(); // для allSymbols()
+    private static final SymbolTable<CoinInfo> byId = new SymbolTable<>();        // горячий путь
 
     public static CoinInfo get(String symbol) {
-        return coins.get(symbol);
+        return byId.get(symbol);
+    }
+
+    /** Запись по ID из {@link SymbolRegistry} или null. */
+    public static CoinInfo get(int id) {
+        return byId.get(id);
     }
 
     public static void update(String symbol, double price, double oi, double funding) {
-        coins.computeIfAbsent(symbol, k -> { CoinInfo c = new CoinInfo(); c.symbol = symbol; return c; });
-        CoinInfo c = coins.get(symbol);
+        CoinInfo c = byId.computeIfAbsent(symbol, MarketDataStore::create);
         c.lastPrice = price;
         c.openInterest = oi;
         c.fundingRate = funding;
         c.updatedAt = System.currentTimeMillis();
     }
 
-    public static void updateOI(String symbol, double oi) {
-        coins.computeIfAbsent(symbol, k -> { CoinInfo c = new CoinInfo(); c.symbol = symbol; return c; });
-        CoinInfo c = coins.get(symbol);
-        c.openInterest = oi;
-        c.updatedAt = System.currentTimeMillis();
+    /** Завести пустую запись символа (replay / новые листинги), если её ещё нет. */
+    public static void register(String symbol) {
+        byId.computeIfAbsent(symbol, MarketDataStore::create);
+    }
+
+    /**
+     * Убрать снятый с торгов символ: он выпадает из allSymbols() (проход анализа, OI по REST,
+     * уровни подписок), а get() по нему возвращает null. Повторный листинг заведёт запись заново.
+     */
+    public static void remove(String symbol) {
+        byId.remove(symbol);
+        coins.remove(symbol);
+    }
+
+    private static CoinInfo create(String symbol) {
+        CoinInfo c = new CoinInfo();
+        c.symbol = symbol;
+        coins.put(symbol, c);
+        return c;
     }
 
     public static Set<String> allSymbols() {
         return coins.keySet();
     }
 }
-
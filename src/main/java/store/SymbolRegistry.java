@@ -0,0 +1,122 @@
+package store;
+
+import java.util.Arrays;
+
+/**
+ * Реестр символов: плотные int-ID (0, 1, 2, ...) в порядке регистрации.
+ *
+ * ID выдаются при загрузке каталога (MarketDataStore.register) и не переиспользуются —
+ * снятый с торгов символ сохраняет свой ID. По ID подсистемы держат состояние символа
+ * в массивах ({@link SymbolTable}) вместо Map&lt;String, ...&gt;.
+ *
+ * Поиск — открытая адресация по String.hashCode, без блокировок: таблица неизменна после
+ * публикации, регистрация нового символа копирует её под монитором (символов сотни,
+ * регистрация — старт и новые листинги). {@link #idOf(char[], int, int)} находит ID прямо
+ * по буферу парсера, не создавая String.
+ */
+public final class SymbolRegistry {
+
+    private static final class Table {
+        final String[] names;  // по ID
+        final int[] hashes;    // по ID
+        final int[] slots;     // ID + 1 по слоту хэша; 0 — пусто
+        final int size;
+
+        Table(String[] names, int[] hashes, int[] slots, int size) {
+            this.names = names;
+            this.hashes = hashes;
+            this.slots = slots;
+            this.size = size;
+        }
+    }
+
+    private static volatile Table table = new Table(new String[0], new int[0], new int[64], 0);
+
+    private SymbolRegistry() {
+    }
+
+    /** ID символа; новый символ получает следующий свободный ID. */
+    public static int register(String symbol) {
+        int id = idOf(symbol);
+        if (id >= 0) return id;
+        synchronized (SymbolRegistry.class) {
+            id = idOf(symbol);
+            if (id >= 0) return id;
+
+            Table t = table;
+            id = t.size;
+            int n = id + 1;
+            String[] names = Arrays.copyOf(t.names, n);
+            int[] hashes = Arrays.copyOf(t.hashes, n);
+            names[id] = symbol;
+            hashes[id] = symbol.hashCode();
+
+            int[] slots;
+            if (n * 2 > t.slots.length) { // заполнение не выше 1/2
+                slots = new int[t.slots.length * 2];
+                for (int k = 0; k < id; k++) put(slots, hashes[k], k);
+            } else {
+                slots = t.slots.clone();
+            }
+            put(slots, hashes[id], id);
+            table = new Table(names, hashes, slots, n);
+            return id;
+        }
+    }
+
+    private static void put(int[] slots, int hash, int id) {
+        int mask = slots.length - 1;
+        int i = spread(hash) & mask;
+        while (slots[i] != 0) i = (i + 1) & mask;
+        slots[i] = id + 1;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /** ID символа или -1, если не зарегистрирован. */
+    public static int idOf(String symbol) {
+        Table t = table;
+        int h = symbol.hashCode();
+        int mask = t.slots.length - 1;
+        for (int i = spread(h) & mask; ; i = (i + 1) & mask) {
+            int e = t.slots[i];
+            if (e == 0) return -1;
+            int id = e - 1;
+            if (t.hashes[id] == h && t.names[id].equals(symbol)) return id;
+        }
+    }
+
+    /** ID символа прямо из буфера парсера, без создания String; -1 — не зарегистрирован. */
+    public static int idOf(char[] buf, int off, int len) {
+        int h = 0;
+        for (int i = off, end = off + len; i < end; i++) h = 31 * h + buf[i]; // как String.hashCode
+        Table t = table;
+        int mask = t.slots.length - 1;
+        for (int i = spread(h) & mask; ; i = (i + 1) & mask) {
+            int e = t.slots[i];
+            if (e == 0) return -1;
+            int id = e - 1;
+            if (t.hashes[id] == h && same(t.names[id], buf, off, len)) return id;
+        }
+    }
+
+    private static boolean same(String s, char[] buf, int off, int len) {
+        if (s.length() != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (s.charAt(i) != buf[off + i]) return false;
+        }
+        return true;
+    }
+
+    /** Канонический String символа (тот же экземпляр на весь процесс). */
+    public static String symbol(int id) {
+        return table.names[id];
+    }
+
+    /** Сколько ID выдано; все ID лежат в [0, size). */
+    public static int size() {
+        return table.size;
+    }
+}
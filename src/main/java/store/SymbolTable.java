@@ -0,0 +1,83 @@
+package store;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Значения по ID символа из {@link SymbolRegistry} — массив вместо Map&lt;String, T&gt;.
+ *
+ * Чтение без блокировок: volatile-ссылка на массив и acquire-чтение элемента. Новый элемент
+ * создаётся под монитором таблицы и публикуется release-записью, так что читатель видит
+ * его уже полностью собранным. Массив растёт копированием, старый остаётся корректным
+ * снимком: промах по нему уводит на медленный путь под монитором.
+ */
+public final class SymbolTable<T> {
+
+    private static final VarHandle ITEMS = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private volatile Object[] items = new Object[64];
+    private int count; // под монитором
+
+    /** Значение по ID или null. */
+    @SuppressWarnings("unchecked")
+    public T get(int id) {
+        Object[] a = items;
+        return id >= 0 && id < a.length ? (T) ITEMS.getAcquire(a, id) : null;
+    }
+
+    /** Значение символа или null (символ не зарегистрирован или значения нет). */
+    public T get(String symbol) {
+        return get(SymbolRegistry.idOf(symbol));
+    }
+
+    /** Значение символа; нет — создаётся factory (символ при этом регистрируется). */
+    public T computeIfAbsent(String symbol, Function<String, ? extends T> factory) {
+        int id = SymbolRegistry.register(symbol);
+        T v = get(id);
+        return v != null ? v : create(id, factory);
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized T create(int id, Function<String, ? extends T> factory) {
+        Object[] a = items;
+        if (id < a.length) {
+            Object v = a[id];
+            if (v != null) return (T) v;
+        } else {
+            a = Arrays.copyOf(a, Math.max(a.length * 2, id + 1));
+            items = a;
+        }
+        T v = factory.apply(SymbolRegistry.symbol(id));
+        ITEMS.setRelease(a, id, v);
+        count++;
+        return v;
+    }
+
+    /** Положить значение (замена существующего). */
+    public synchronized void put(String symbol, T value) {
+        int id = SymbolRegistry.register(symbol);
+        Object[] a = items;
+        if (id >= a.length) {
+            a = Arrays.copyOf(a, Math.max(a.length * 2, id + 1));
+            items = a;
+        }
+        if (a[id] == null) count++;
+        ITEMS.setRelease(a, id, value);
+    }
+
+    /** Убрать значение символа; ID за символом остаётся (см. {@link SymbolRegistry}). */
+    public synchronized void remove(String symbol) {
+        int id = SymbolRegistry.idOf(symbol);
+        Object[] a = items;
+        if (id < 0 || id >= a.length || a[id] == null) return;
+        ITEMS.setRelease(a, id, null);
+        count--;
+    }
+
+    /** Сколько символов имеют значение. */
+    public synchronized int count() {
+        return count;
+    }
+}
@@ -0,0 +1,235 @@
+package store;
+
+import app.Clock;
+import app.Settings;
+import model.CoinInfo;
+import state.MarketColumns;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Конфлюэнтное (latest-value) хранилище тикеров.
+ *
+ * Поток tickers.* присылает по несколько обновлений в секунду на символ, а анализатору
+ * нужен только последний OI/funding на закрытии бара. Поэтому WS-поток пишет значения
+ * в примитивный слот символа и помечает символ в dirty-битсете, а дренер раз в
+ * ticker.drain.ms переносит в CoinInfo только изменившиеся символы — одна запись
+ * volatile-полей на символ за интервал вместо записи на каждое обновление.
+ *
+ * Слот символа пишет только один поток (символ живёт в одном тикер-шарде).
+ * Бит ставится после записи слота атомарным OR (один lock-инструкцией, без CAS-цикла):
+ * это же и release записи слота для дренера, который снимает слово битов getAndSet.
+ * Проверять бит перед OR нельзя — дренер мог уже снять его и прочитать слот до нашей записи.
+ *
+ * OI несёт биржевое время: WS-значение из кадра с ts не новее уже принятого отбрасывается,
+ * а REST-дозагрузка (OiRestUpdater) пишет в отдельный слот со своим писателем. Дренер —
+ * единственный писатель CoinInfo — берёт более свежее из двух и никогда не откатывает
+ * CoinInfo.openInterest на более старое значение.
+ */
+public final class TickerStore {
+
+    private static final int CAPACITY = 8192;
+
+    private static final double[] price = new double[CAPACITY];
+    private static final double[] oi = new double[CAPACITY];
+    private static final double[] funding = new double[CAPACITY];
+    private static final double[] turnover24h = new double[CAPACITY];
+    private static final long[] oiTs = new long[CAPACITY];       // ts кадра WS с последним OI
+    private static final double[] restOi = new double[CAPACITY]; // пишет только поток OiRestUpdater
+    private static final long[] restOiTs = new long[CAPACITY];
+    private static final long[] appliedOiTs = new long[CAPACITY]; // только дренер
+    private static final long[] dirty = new long[CAPACITY / 64];
+    private static final VarHandle DIRTY = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // метрики
+    private static final LongAdder updates = new LongAdder();
+    private static final AtomicLong drained = new AtomicLong();
+    private static final AtomicLong drains = new AtomicLong();
+    private static final LongAdder staleOiDropped = new LongAdder();
+    private static final LongAdder restOiApplied = new LongAdder();
+
+    private static volatile Thread drainer;
+
+    private TickerStore() {
+    }
+
+    /** Слот символа — его ID в {@link SymbolRegistry}; -1 — ID за пределами CAPACITY. */
+    private static int slotOf(String symbol) {
+        int i = SymbolRegistry.register(symbol);
+        return i < CAPACITY ? i : -1;
+    }
+
+    /**
+     * Новое значение тикера (из потока чтения WS). Нулевые/пустые поля не затирают прежние,
+     * как и раньше при прямой записи в CoinInfo.
+     *
+     * @param turnover оборот за 24 ч (turnover24h, USD); 0 — поля нет в дельте
+     * @param ts биржевое время кадра (ms); 0 — неизвестно, берём текущее
+     */
+    public static void update(String symbol, double lastPrice, double openInterest, double fundingRate,
+                              double turnover, long ts) {
+        if (ts <= 0) ts = Clock.now();
+        int i = slotOf(symbol);
+        if (i < 0) {
+            // переполнение — пишем напрямую
+            CoinInfo c = MarketDataStore.get(symbol);
+            if (c == null) return;
+            if (lastPrice > 0) c.lastPrice = lastPrice;
+            if (openInterest > 0 && ts >= c.openInterestTs) {
+                c.openInterest = openInterest;
+                c.openInterestTs = ts;
+            }
+            if (fundingRate != 0) c.fundingRate = fundingRate;
+            if (turnover > 0) c.turnover24h = turnover;
+            return;
+        }
+
+        if (lastPrice > 0) price[i] = lastPrice;
+        if (openInterest > 0) {
+            if (ts >= oiTs[i]) {
+                oi[i] = openInterest;
+                oiTs[i] = ts;
+            } else {
+                staleOiDropped.increment();
+            }
+        }
+        if (fundingRate != 0) funding[i] = fundingRate;
+        if (turnover > 0) turnover24h[i] = turnover;
+        updates.increment();
+        markDirty(i);
+    }
+
+    /**
+     * OI из REST (только поток OiRestUpdater). В CoinInfo попадёт, только если новее WS-значения.
+     */
+    public static void updateOiFromRest(String symbol, double openInterest, long ts) {
+        if (openInterest <= 0) return;
+        int i = slotOf(symbol);
+        if (i < 0) {
+            CoinInfo c = MarketDataStore.get(symbol);
+            if (c != null && ts > c.openInterestTs) {
+                c.openInterest = openInterest;
+                c.openInterestTs = ts;
+            }
+            return;
+        }
+        if (ts <= restOiTs[i]) return;
+        restOi[i] = openInterest;
+        restOiTs[i] = ts;
+        markDirty(i);
+    }
+
+    /**
+     * Биржевое время самого свежего известного OI по символу (WS или REST); 0 — OI ещё не было.
+     * Читается с чужого потока без синхронизации — для оценки свежести этого достаточно.
+     */
+    public static long oiTimestamp(String symbol) {
+        int i = SymbolRegistry.idOf(symbol);
+        if (i >= 0 && i < CAPACITY) {
+            long ts = Math.max(oiTs[i], restOiTs[i]);
+            if (ts > 0) return ts;
+        }
+        CoinInfo c = MarketDataStore.get(symbol);
+        return c != null ? c.openInterestTs : 0L;
+    }
+
+    /**
+     * Обнулить слот снятого с торгов символа, чтобы повторный листинг не унаследовал старые
+     * цену и OI. Вызывать после отписки: запоздавший кадр просто снова заполнит слот.
+     */
+    public static void clear(String symbol) {
+        int i = SymbolRegistry.idOf(symbol);
+        if (i < 0 || i >= CAPACITY) return;
+        price[i] = 0.0;
+        oi[i] = 0.0;
+        funding[i] = 0.0;
+        turnover24h[i] = 0.0;
+        oiTs[i] = 0L;
+        restOi[i] = 0.0;
+        restOiTs[i] = 0L;
+        appliedOiTs[i] = 0L;
+    }
+
+    private static void markDirty(int i) {
+        int w = i >>> 6;
+        long bit = 1L << (i & 63);
+        DIRTY.getAndBitwiseOr(dirty, w, bit);
+    }
+
+    /** Перенести изменившиеся символы в CoinInfo. Вызывает один поток (дренер или replay). */
+    public static int drain() {
+        int n = 0;
+        int words = (Math.min(CAPACITY, SymbolRegistry.size()) + 63) >>> 6;
+        for (int w = 0; w < words; w++) {
+            if ((long) DIRTY.getVolatile(dirty, w) == 0L) continue;
+            long bits = (long) DIRTY.getAndSet(dirty, w, 0L);
+            while (bits != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                CoinInfo c = MarketDataStore.get(i);
+                if (c == null) continue;
+                double p = price[i];
+                double f = funding[i];
+                if (p > 0) c.lastPrice = p;
+                if (f != 0) c.fundingRate = f;
+                double v = turnover24h[i];
+                if (v > 0) c.turnover24h = v;
+
+                // OI: более свежее из WS и REST, и только вперёд по времени
+                long wsTs = oiTs[i];
+                long restTs = restOiTs[i];
+                boolean rest = restTs > wsTs;
+                long ts = rest ? restTs : wsTs;
+                if (ts > appliedOiTs[i]) {
+                    double o = rest ? restOi[i] : oi[i];
+                    if (o > 0) {
+                        c.openInterest = o;
+                        c.openInterestTs = ts;
+                        appliedOiTs[i] = ts;
+                        if (rest) restOiApplied.increment();
+                    }
+                }
+                if (MarketColumns.enabled()) {
+                    MarketColumns.putTicker(i, c.lastPrice, c.openInterest, c.fundingRate, c.turnover24h);
+                }
+                n++;
+            }
+        }
+        drains.incrementAndGet();
+        drained.addAndGet(n);
+        return n;
+    }
+
+    /** Запустить фоновый дренер (live / sim). */
+    public static synchronized void start(long drainMs) {
+        if (drainer != null) return;
+        Thread t = new Thread(() -> {
+            while (Settings.RUNNING) {
+                try {
+                    drain();
+                    Thread.sleep(drainMs);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    System.err.println("[Tickers] drain error: " + e.getMessage());
+                }
+            }
+        }, "ticker-drain");
+        t.setDaemon(true);
+        t.start();
+        drainer = t;
+    }
+
+    /** Сводка для status: обновлений пришло / символов перенесено (степень склейки). */
+    public static String summary() {
+        long u = updates.sum();
+        long d = drained.get();
+        return String.format("[Tickers] slots=%d updates=%d drained=%d (x%.1f conflation) drains=%d, OI: restApplied=%d staleDropped=%d",
+                Math.min(SymbolRegistry.size(), CAPACITY), u, d, d > 0 ? (double) u / d : 0.0, drains.get(),
+                restOiApplied.sum(), staleOiDropped.sum());
+    }
+}